@@ -0,0 +1,46 @@
+package com.github.simplejpatemplate.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options. Unless another
+ * result format is given, the results are written as JSON to
+ * <code>jmh-result.json</code>, so the results of two releases can be
+ * compared, e.g.
+ * 
+ * <pre>
+ * java -jar target/benchmarks.jar -rff simplejpatemplate-0.0.1.json
+ * java -jar target/benchmarks.jar RowMapping -p shape=WIDE
+ * </pre>
+ */
+public final class BenchmarkMain {
+	static final String RESULT_FILE = "jmh-result.json";
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if (options.shouldHelp()) {
+			options.showHelp();
+			return;
+		}
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (options.getResultFormat().hasValue() == false) {
+			builder.resultFormat(ResultFormatType.JSON);
+			if (options.getResult().hasValue() == false) {
+				builder.result(RESULT_FILE);
+			}
+		}
+		Runner runner = new Runner(builder.build());
+		if (options.shouldList()) {
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
@@ -0,0 +1,45 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.util.Arrays;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * An entity with a BLOB column of {@link #PAYLOAD_SIZE} bytes
+ */
+@Entity
+@Table(name = "bench_blob")
+public class BlobEntity {
+	static final int PAYLOAD_SIZE = 4096;
+
+	static final String CREATE_TABLE = "create table bench_blob (idCol int primary key,"
+			+ " name varchar(40), quantity int, payload blob(64K))";
+
+	@Id
+	@Column(name = "idCol")
+	Integer id;
+
+	@Column(name = "name")
+	String name;
+
+	@Column(name = "quantity")
+	int quantity;
+
+	@Lob
+	@Column(name = "payload")
+	byte[] payload;
+
+	static BlobEntity create(int id) {
+		BlobEntity entity = new BlobEntity();
+		entity.id = id;
+		entity.name = "blob " + id;
+		entity.quantity = id % 100;
+		entity.payload = new byte[PAYLOAD_SIZE];
+		Arrays.fill(entity.payload, (byte) id);
+		return entity;
+	}
+}
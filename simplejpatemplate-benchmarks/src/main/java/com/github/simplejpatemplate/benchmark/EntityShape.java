@@ -0,0 +1,67 @@
+package com.github.simplejpatemplate.benchmark;
+
+/**
+ * The entity classes the benchmarks are parameterized with
+ */
+public enum EntityShape {
+	/**
+	 * Four columns of simple types
+	 */
+	NARROW(NarrowEntity.class, NarrowEntity.CREATE_TABLE) {
+		@Override
+		Object newEntity(int id) {
+			return NarrowEntity.create(id);
+		}
+	},
+	/**
+	 * Sixteen columns of strings, numbers, booleans and timestamps
+	 */
+	WIDE(WideEntity.class, WideEntity.CREATE_TABLE) {
+		@Override
+		Object newEntity(int id) {
+			return WideEntity.create(id);
+		}
+	},
+	/**
+	 * Four columns, one of them a BLOB
+	 */
+	BLOB(BlobEntity.class, BlobEntity.CREATE_TABLE) {
+		@Override
+		Object newEntity(int id) {
+			return BlobEntity.create(id);
+		}
+	},
+	/**
+	 * Four columns, one of them the foreign key of a many to one reference
+	 */
+	REFERENCE(ReferenceEntity.class, ReferenceEntity.CREATE_TABLE) {
+		@Override
+		Object newEntity(int id) {
+			return ReferenceEntity.create(id);
+		}
+	};
+
+	private final Class<?> entityClass;
+	private final String createTable;
+
+	private EntityShape(Class<?> entityClass, String createTable) {
+		this.entityClass = entityClass;
+		this.createTable = createTable;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * The Derby DDL of the table of the entity
+	 */
+	String getCreateTable() {
+		return createTable;
+	}
+
+	/**
+	 * Creates an entity with the given id and values derived from it
+	 */
+	abstract Object newEntity(int id);
+}
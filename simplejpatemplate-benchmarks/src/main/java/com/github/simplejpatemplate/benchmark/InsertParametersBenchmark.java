@@ -0,0 +1,56 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * Extracts the insert parameters of an entity with
+ * {@link JdbcJpaHelper#getInsertParameters(Object)}, with reflection or the
+ * generated mapper
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertParametersBenchmark {
+	@Param
+	public EntityShape shape;
+
+	/**
+	 * True to read the entity with the generated mapper
+	 */
+	@Param({ "true", "false" })
+	public boolean generated;
+
+	private JdbcJpaHelper helper;
+	private Object entity;
+
+	@Setup
+	public void setUp() {
+		EntityMappers.setEnabled(generated);
+		helper = new JdbcJpaHelper();
+		entity = shape.newEntity(1);
+	}
+
+	@Benchmark
+	public Map<String, Object> insertParameters() throws Exception {
+		return helper.getInsertParameters(entity);
+	}
+}
@@ -0,0 +1,38 @@
+package com.github.simplejpatemplate.benchmark;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * An entity with four columns
+ */
+@Entity
+@Table(name = "bench_narrow")
+public class NarrowEntity {
+	static final String CREATE_TABLE = "create table bench_narrow (idCol int primary key,"
+			+ " name varchar(40), quantity int, price double)";
+
+	@Id
+	@Column(name = "idCol")
+	Integer id;
+
+	@Column(name = "name")
+	String name;
+
+	@Column(name = "quantity")
+	int quantity;
+
+	@Column(name = "price")
+	double price;
+
+	static NarrowEntity create(int id) {
+		NarrowEntity entity = new NarrowEntity();
+		entity.id = id;
+		entity.name = "narrow " + id;
+		entity.quantity = id % 100;
+		entity.price = id * 0.5;
+		return entity;
+	}
+}
@@ -0,0 +1,130 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.github.simplejpatemplate.SimpleJpaEntityManager;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
+/**
+ * Persists and finds entities with a {@link SimpleJpaEntityManager} on an
+ * embedded in-memory Derby database, one statement per transaction. The
+ * persistence context is cleared before every operation, so every find reads
+ * the row. References are fetched for {@link EntityShape#REFERENCE} only,
+ * with one more query; those finds map with reflection, as the generated
+ * mappers do not collect foreign keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+	/**
+	 * The number of rows inserted before the benchmark, read by
+	 * {@link #find()}
+	 */
+	static final int ROWS = 1000;
+
+	/**
+	 * The first id of the rows inserted by {@link #persist()}, which are
+	 * deleted after every iteration
+	 */
+	private static final int FIRST_PERSISTED_ID = 1000000;
+
+	@Param
+	public EntityShape shape;
+
+	/**
+	 * True to map with the generated mapper
+	 */
+	@Param({ "true", "false" })
+	public boolean generated;
+
+	private NamedParameterJdbcTemplate template;
+	private SimpleJpaEntityManager manager;
+	private String tableName;
+	private int nextId;
+	private int findId;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		EntityMappers.setEnabled(generated);
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource
+				.setDriverClassName(org.apache.derby.jdbc.EmbeddedDriver.class
+						.getName());
+		dataSource.setUrl("jdbc:derby:memory:benchmark;create=true");
+		template = new NamedParameterJdbcTemplate(dataSource);
+		manager = new SimpleJpaEntityManager(template);
+		manager.setFetchReferences(shape == EntityShape.REFERENCE);
+		tableName = EntityMetadata.forClass(shape.getEntityClass())
+				.getQualifiedTableName(null);
+
+		// References point to a row of the narrow table
+		update(NarrowEntity.CREATE_TABLE);
+		if (shape != EntityShape.NARROW) {
+			update(shape.getCreateTable());
+			manager.persist(NarrowEntity.create(ReferenceEntity.PARENT_ID));
+		}
+		for (int id = 1; id <= ROWS; id++) {
+			manager.persist(shape.newEntity(id));
+		}
+		manager.clear();
+		nextId = FIRST_PERSISTED_ID;
+	}
+
+	@TearDown(Level.Iteration)
+	public void deletePersisted() {
+		manager.clear();
+		template.update("DELETE FROM " + tableName + " WHERE idCol >= :id",
+				new MapSqlParameterSource("id", FIRST_PERSISTED_ID));
+		nextId = FIRST_PERSISTED_ID;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (shape != EntityShape.NARROW) {
+			update("drop table " + tableName);
+		}
+		update("drop table bench_narrow");
+	}
+
+	private void update(String sql) {
+		template.update(sql, new MapSqlParameterSource());
+	}
+
+	/**
+	 * Inserts a new entity, including the creation of the entity
+	 */
+	@Benchmark
+	public void persist() {
+		manager.clear();
+		manager.persist(shape.newEntity(nextId++));
+	}
+
+	@Benchmark
+	public Object find() {
+		manager.clear();
+		findId = findId % ROWS + 1;
+		return manager.find(shape.getEntityClass(), findId);
+	}
+}
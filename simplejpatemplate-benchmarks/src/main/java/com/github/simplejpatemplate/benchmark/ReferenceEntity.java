@@ -0,0 +1,47 @@
+package com.github.simplejpatemplate.benchmark;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * An entity with a many to one reference to a {@link NarrowEntity}, which is
+ * loaded with every find
+ */
+@Entity
+@Table(name = "bench_reference")
+public class ReferenceEntity {
+	/**
+	 * The id of the {@link NarrowEntity} referenced by all instances
+	 */
+	static final int PARENT_ID = 1;
+
+	static final String CREATE_TABLE = "create table bench_reference (idCol int primary key,"
+			+ " name varchar(40), quantity int, narrowId int)";
+
+	@Id
+	@Column(name = "idCol")
+	Integer id;
+
+	@Column(name = "name")
+	String name;
+
+	@Column(name = "quantity")
+	int quantity;
+
+	@ManyToOne
+	@JoinColumn(name = "narrowId")
+	NarrowEntity narrow;
+
+	static ReferenceEntity create(int id) {
+		ReferenceEntity entity = new ReferenceEntity();
+		entity.id = id;
+		entity.name = "reference " + id;
+		entity.quantity = id % 100;
+		entity.narrow = NarrowEntity.create(PARENT_ID);
+		return entity;
+	}
+}
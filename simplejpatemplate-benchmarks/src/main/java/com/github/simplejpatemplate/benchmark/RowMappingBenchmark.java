@@ -0,0 +1,82 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.github.simplejpatemplate.mapper.EntityMapper;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.rowmapper.GeneratedRowMapper;
+import com.github.simplejpatemplate.rowmapper.JpaRowMapper;
+
+/**
+ * Maps the rows of an in-memory result set, with the reflective
+ * {@link JpaRowMapper} or the {@link GeneratedRowMapper} of the mapper
+ * generated by the annotation processor. The score is in rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+	static final int ROWS = 100;
+
+	@Param
+	public EntityShape shape;
+
+	/**
+	 * True to map with the generated mapper
+	 */
+	@Param({ "true", "false" })
+	public boolean generated;
+
+	private CachedRowSet rs;
+	private RowMapper<?> rowMapper;
+
+	@Setup
+	public void setUp() throws SQLException {
+		EntityMappers.setEnabled(generated);
+		rs = SyntheticResultSets.create(shape, ROWS);
+		rowMapper = createRowMapper(shape.getEntityClass());
+	}
+
+	private <T> RowMapper<T> createRowMapper(Class<T> entityClass) {
+		if (generated == false) {
+			return new JpaRowMapper<T>(entityClass);
+		}
+		EntityMapper<T> mapper = EntityMappers.forClass(entityClass);
+		if (mapper == null) {
+			throw new IllegalStateException("No generated mapper for "
+					+ entityClass.getName());
+		}
+		return new GeneratedRowMapper<T>(mapper);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void mapRows(Blackhole blackhole) throws SQLException {
+		rs.beforeFirst();
+		int rowNum = 0;
+		while (rs.next()) {
+			blackhole.consume(rowMapper.mapRow(rs, rowNum++));
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.simplejpatemplate.dialect.Dialect;
+import com.github.simplejpatemplate.dialect.PostgreSQLDialect;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * Creates the statements of an entity with {@link JdbcJpaHelper}, as the
+ * entity manager does for every operation. The entity statements are cached
+ * per class, so most benchmarks measure the lookup; the page query is built
+ * on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlGenerationBenchmark {
+	private static final int MULTI_ROW_INSERT_ROWS = 10;
+
+	@Param
+	public EntityShape shape;
+
+	private JdbcJpaHelper helper;
+	private Dialect dialect;
+	private Class<?> entityClass;
+	private Object entity;
+	private String selectSql;
+
+	@Setup
+	public void setUp() throws Exception {
+		helper = new JdbcJpaHelper();
+		dialect = new PostgreSQLDialect();
+		entityClass = shape.getEntityClass();
+		entity = shape.newEntity(1);
+		selectSql = helper.createSelectQuery(entityClass, null, null);
+	}
+
+	@Benchmark
+	public String insert() {
+		return helper.createInsertQuery(null, entity, null);
+	}
+
+	@Benchmark
+	public String select() throws Exception {
+		return helper.createSelectQuery(entityClass, null, null);
+	}
+
+	@Benchmark
+	public String update() {
+		return helper.createUpdateQuery(entityClass, null);
+	}
+
+	@Benchmark
+	public String delete() throws Exception {
+		return helper.createDeleteQuery(entityClass, null, null);
+	}
+
+	@Benchmark
+	public String selectWithCatalog() throws Exception {
+		return helper.createSelectQuery(entityClass, null, "catalog");
+	}
+
+	@Benchmark
+	public String multiRowInsert() {
+		return helper.createMultiRowInsertQuery(entityClass, null,
+				MULTI_ROW_INSERT_ROWS);
+	}
+
+	@Benchmark
+	public String upsert() {
+		return helper.createUpsertQuery(entityClass, null, dialect);
+	}
+
+	@Benchmark
+	public String page() {
+		return dialect.createPageQuery(selectSql, true, true);
+	}
+}
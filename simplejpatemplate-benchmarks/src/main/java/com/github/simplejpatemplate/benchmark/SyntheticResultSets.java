@@ -0,0 +1,113 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * Creates in-memory result sets with the rows of entities, so row mapping can
+ * be measured without a database and a driver. The result sets have the
+ * columns of the SELECT statements of the entity and are
+ * <code>CachedRowSet</code>s of the JDK.
+ */
+final class SyntheticResultSets {
+	private SyntheticResultSets() {
+	}
+
+	/**
+	 * Creates a result set holding the entities with the ids 1 to rows,
+	 * positioned before the first row
+	 * 
+	 * @param shape
+	 * @param rows
+	 * @return
+	 * @throws SQLException
+	 */
+	static CachedRowSet create(EntityShape shape, int rows)
+			throws SQLException {
+		List<ColumnMetadata> columns = EntityMetadata.forClass(
+				shape.getEntityClass()).getSelectedColumns();
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+
+		CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+		for (int row = 1; row <= rows; row++) {
+			Object entity = shape.newEntity(row);
+			Object[] values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = getValue(helper, columns.get(i), entity);
+			}
+			if (row == 1) {
+				rs.setMetaData(createMetaData(columns, values));
+			}
+			rs.moveToInsertRow();
+			for (int i = 0; i < values.length; i++) {
+				rs.updateObject(i + 1, values[i]);
+			}
+			rs.insertRow();
+			rs.moveToCurrentRow();
+		}
+		rs.beforeFirst();
+		return rs;
+	}
+
+	/**
+	 * The column value as the database returns it: the id of a referenced
+	 * entity, else the field value
+	 */
+	private static Object getValue(JdbcJpaHelper helper,
+			ColumnMetadata column, Object entity) {
+		Object value = column.getValue(entity);
+		if (column.isReference() == false) {
+			return value;
+		}
+		try {
+			return helper.getEntityID(value);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private static RowSetMetaDataImpl createMetaData(
+			List<ColumnMetadata> columns, Object[] values) throws SQLException {
+		RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+		metaData.setColumnCount(columns.size());
+		for (int i = 0; i < values.length; i++) {
+			String columnName = columns.get(i).getColumnName();
+			metaData.setColumnName(i + 1, columnName);
+			metaData.setColumnLabel(i + 1, columnName);
+			metaData.setColumnType(i + 1, getSqlType(values[i]));
+		}
+		return metaData;
+	}
+
+	private static int getSqlType(Object value) {
+		if (value instanceof Integer) {
+			return Types.INTEGER;
+		} else if (value instanceof Long) {
+			return Types.BIGINT;
+		} else if (value instanceof Double) {
+			return Types.DOUBLE;
+		} else if (value instanceof Boolean) {
+			return Types.BOOLEAN;
+		} else if (value instanceof BigDecimal) {
+			return Types.DECIMAL;
+		} else if (value instanceof Timestamp) {
+			return Types.TIMESTAMP;
+		} else if (value instanceof byte[]) {
+			return Types.VARBINARY;
+		} else if (value instanceof String) {
+			return Types.VARCHAR;
+		}
+		throw new IllegalArgumentException("No SQL type for " + value);
+	}
+}
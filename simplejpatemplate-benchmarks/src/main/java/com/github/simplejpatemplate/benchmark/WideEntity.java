@@ -0,0 +1,93 @@
+package com.github.simplejpatemplate.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * An entity with sixteen columns of the common column types
+ */
+@Entity
+@Table(name = "bench_wide")
+public class WideEntity {
+	static final String CREATE_TABLE = "create table bench_wide (idCol int primary key,"
+			+ " name varchar(40), description varchar(200), code varchar(10),"
+			+ " category varchar(20), quantity int, score int, total bigint,"
+			+ " flags bigint, price double, ratio double, weight double,"
+			+ " amount decimal(12,2), active boolean, created timestamp,"
+			+ " updated timestamp)";
+
+	@Id
+	@Column(name = "idCol")
+	Integer id;
+
+	@Column(name = "name")
+	String name;
+
+	@Column(name = "description")
+	String description;
+
+	@Column(name = "code")
+	String code;
+
+	@Column(name = "category")
+	String category;
+
+	@Column(name = "quantity")
+	int quantity;
+
+	@Column(name = "score")
+	Integer score;
+
+	@Column(name = "total")
+	long total;
+
+	@Column(name = "flags")
+	Long flags;
+
+	@Column(name = "price")
+	double price;
+
+	@Column(name = "ratio")
+	Double ratio;
+
+	@Column(name = "weight")
+	Double weight;
+
+	@Column(name = "amount")
+	BigDecimal amount;
+
+	@Column(name = "active")
+	boolean active;
+
+	@Column(name = "created")
+	Timestamp created;
+
+	@Column(name = "updated")
+	Timestamp updated;
+
+	static WideEntity create(int id) {
+		WideEntity entity = new WideEntity();
+		entity.id = id;
+		entity.name = "wide " + id;
+		entity.description = "a wide entity with sixteen columns, number " + id;
+		entity.code = "W" + (id % 1000);
+		entity.category = id % 2 == 0 ? "even" : "odd";
+		entity.quantity = id % 100;
+		entity.score = id % 10;
+		entity.total = id * 1000L;
+		entity.flags = Long.valueOf(id & 0xff);
+		entity.price = id * 0.5;
+		entity.ratio = id / 3.0;
+		entity.weight = id * 1.25;
+		entity.amount = BigDecimal.valueOf(id, 2);
+		entity.active = id % 3 == 0;
+		entity.created = new Timestamp(1300000000000L + id);
+		entity.updated = new Timestamp(1300000000000L + id * 2L);
+		return entity;
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.simplejpatemplate.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.persistence.Entity;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates an <code>EntityMapper</code> for every <code>@Entity</code> class
+ * of the compilation: a class in the package of the entity, named after it
+ * with a <code>_Mapper</code> suffix, holding its INSERT, SELECT and DELETE
+ * statements and code that reads rows and insert parameters without
+ * reflection. The runtime picks the mappers up by name.
+ * <p>
+ * The mapper accesses the fields directly when they are not private, and
+ * otherwise through their getters and setters. Entities that cannot be
+ * mapped that way, e.g. because a field has no setter, are skipped with a
+ * note and mapped with reflection at runtime.
+ * <p>
+ * Add the processor to the compiler's annotation processor path, or as a
+ * <code>provided</code> dependency.
+ */
+@SupportedAnnotationTypes("javax.persistence.Entity")
+public class EntityMapperProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(Entity.class)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				continue;
+			}
+			TypeElement type = (TypeElement) element;
+			EntityModel model;
+			try {
+				model = EntityModel.resolve(type, processingEnv);
+			} catch (UnsupportedEntityException e) {
+				processingEnv.getMessager().printMessage(Kind.NOTE,
+						type.getQualifiedName() + " is mapped with reflection: "
+								+ e.getMessage(), type);
+				continue;
+			}
+			try {
+				write(model, type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"Could not write the mapper of " + type + ": "
+								+ e.getMessage(), type);
+			}
+		}
+		// Other processors may handle @Entity as well
+		return false;
+	}
+
+	private void write(EntityModel model, TypeElement type) throws IOException {
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(
+				model.getMapperName(), type);
+		Writer writer = file.openWriter();
+		try {
+			new MapperWriter(model).write(writer);
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package com.github.simplejpatemplate.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+
+/**
+ * The mapping of an entity class as seen by the compiler. The rules are the
+ * ones of <code>EntityMetadata</code> and <code>ColumnMetadata</code> at
+ * runtime, so the generated statements are the same text as the ones built
+ * with reflection.
+ */
+final class EntityModel {
+	private final String packageName;
+	private final String entityName;
+	private final String mapperName;
+	private final String tableName;
+	private final String idColumnName;
+	private final List<ColumnModel> columns;
+
+	private EntityModel(String packageName, String entityName,
+			String mapperName, String tableName, String idColumnName,
+			List<ColumnModel> columns) {
+		this.packageName = packageName;
+		this.entityName = entityName;
+		this.mapperName = mapperName;
+		this.tableName = tableName;
+		this.idColumnName = idColumnName;
+		this.columns = columns;
+	}
+
+	/**
+	 * Resolves the mapping of an entity class
+	 * 
+	 * @param type
+	 * @param env
+	 * @return
+	 * @throws UnsupportedEntityException
+	 *             when the mapper could not access the entity
+	 */
+	static EntityModel resolve(TypeElement type, ProcessingEnvironment env)
+			throws UnsupportedEntityException {
+		Elements elements = env.getElementUtils();
+		Types types = env.getTypeUtils();
+
+		checkClass(type);
+		Table table = type.getAnnotation(Table.class);
+		if (table == null || table.name().equals("")) {
+			throw new UnsupportedEntityException("no @Table name");
+		}
+
+		List<ColumnModel> columns = new ArrayList<ColumnModel>();
+		ColumnModel id = null;
+		for (VariableElement field : ElementFilter.fieldsIn(type
+				.getEnclosedElements())) {
+			if (isPersistent(field) == false) {
+				continue;
+			}
+			ColumnModel column = createColumn(type, field, elements, types);
+			columns.add(column);
+			if (id == null && column.id) {
+				id = column;
+			}
+		}
+		if (id == null) {
+			throw new UnsupportedEntityException("no @Id field");
+		}
+
+		PackageElement pkg = elements.getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName()
+				.toString();
+		String binaryName = elements.getBinaryName(type).toString();
+		return new EntityModel(packageName, type.getQualifiedName()
+				.toString(), binaryName + "_Mapper", qualify(table),
+				id.columnName, Collections.unmodifiableList(columns));
+	}
+
+	/**
+	 * The mapper is created in the package of the entity, so the entity,
+	 * its enclosing classes and its no-argument constructor must not be
+	 * private
+	 */
+	private static void checkClass(TypeElement type)
+			throws UnsupportedEntityException {
+		if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+			throw new UnsupportedEntityException("the class is abstract");
+		} else if (type.getTypeParameters().isEmpty() == false) {
+			throw new UnsupportedEntityException("the class is generic");
+		}
+		for (Element e = type; e.getKind().isClass() || e.getKind().isInterface(); e = e
+				.getEnclosingElement()) {
+			TypeElement enclosing = (TypeElement) e;
+			if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+				throw new UnsupportedEntityException("the class is private");
+			} else if (enclosing.getNestingKind() == NestingKind.MEMBER
+					&& enclosing.getModifiers().contains(Modifier.STATIC) == false) {
+				throw new UnsupportedEntityException(
+						"the class is an inner class");
+			} else if (enclosing.getNestingKind() == NestingKind.LOCAL
+					|| enclosing.getNestingKind() == NestingKind.ANONYMOUS) {
+				throw new UnsupportedEntityException("the class is local");
+			}
+		}
+		for (ExecutableElement constructor : ElementFilter
+				.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty()
+					&& constructor.getModifiers().contains(Modifier.PRIVATE) == false) {
+				return;
+			}
+		}
+		throw new UnsupportedEntityException("no accessible constructor");
+	}
+
+	private static boolean isPersistent(VariableElement field) {
+		Set<Modifier> modifiers = field.getModifiers();
+		if (modifiers.contains(Modifier.STATIC)
+				|| modifiers.contains(Modifier.TRANSIENT)) {
+			return false;
+		}
+		return field.getAnnotation(Transient.class) == null;
+	}
+
+	private static String qualify(Table table) {
+		StringBuilder builder = new StringBuilder();
+		if (table.catalog().equals("") == false) {
+			builder.append(table.catalog()).append('.');
+		}
+		if (table.schema().equals("") == false) {
+			builder.append(table.schema()).append('.');
+		}
+		builder.append(table.name());
+		return builder.toString();
+	}
+
+	private static ColumnModel createColumn(TypeElement type,
+			VariableElement field, Elements elements, Types types)
+			throws UnsupportedEntityException {
+		Column col = field.getAnnotation(Column.class);
+		JoinColumn join = field.getAnnotation(JoinColumn.class);
+		GeneratedValue generated = field.getAnnotation(GeneratedValue.class);
+		ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+		OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+		boolean collection = field.getAnnotation(OneToMany.class) != null
+				|| field.getAnnotation(ManyToMany.class) != null;
+
+		ColumnModel column = new ColumnModel();
+		column.fieldName = field.getSimpleName().toString();
+		column.type = types.erasure(field.asType());
+		column.typeName = column.type.toString();
+		column.id = field.getAnnotation(Id.class) != null;
+		boolean version = field.getAnnotation(Version.class) != null;
+		if (col != null && col.name().equals("") == false) {
+			column.columnName = col.name();
+		} else if (join != null && join.name().equals("") == false) {
+			column.columnName = join.name();
+		} else {
+			column.columnName = column.fieldName;
+		}
+
+		GenerationType strategy = generated != null ? generated.strategy()
+				: null;
+		if (join != null) {
+			column.insertable = join.insertable();
+		} else if (col != null) {
+			column.insertable = col.insertable();
+		} else {
+			column.insertable = column.id || version;
+		}
+		if (strategy == GenerationType.IDENTITY) {
+			column.insertable = false;
+		}
+
+		boolean relation = manyToOne != null || oneToOne != null
+				|| collection;
+		column.reference = join != null || manyToOne != null
+				|| oneToOne != null;
+		column.mapped = relation == false;
+		Basic basic = field.getAnnotation(Basic.class);
+		if (basic != null) {
+			column.lazy = basic.fetch() == FetchType.LAZY;
+		} else if (manyToOne != null) {
+			column.lazy = manyToOne.fetch() == FetchType.LAZY;
+		} else if (oneToOne != null) {
+			column.lazy = oneToOne.fetch() == FetchType.LAZY;
+		}
+		boolean foreignKey = join != null || manyToOne != null
+				|| (oneToOne != null && oneToOne.mappedBy().equals(""));
+		column.stream = isAssignable(column.type, "java.io.InputStream",
+				elements, types)
+				|| isAssignable(column.type, "java.io.Reader", elements,
+						types);
+		column.selected = column.mapped ? column.lazy == false
+				&& column.stream == false : foreignKey;
+		Enumerated enumerated = field.getAnnotation(Enumerated.class);
+		column.enumByName = enumerated != null
+				&& enumerated.value() == EnumType.STRING;
+
+		if (version && isVersionType(column.type) == false) {
+			throw new UnsupportedEntityException("the @Version field "
+					+ column.fieldName + " is not an int, long or short");
+		}
+		if (column.mapped || column.insertable) {
+			checkType(column);
+			resolveAccess(type, field, column, types);
+		}
+		return column;
+	}
+
+	private static boolean isAssignable(TypeMirror type, String className,
+			Elements elements, Types types) {
+		TypeElement element = elements.getTypeElement(className);
+		return element != null
+				&& types.isAssignable(type, types.erasure(element.asType()));
+	}
+
+	private static boolean isVersionType(TypeMirror type) {
+		String name = type.toString();
+		return name.equals("int") || name.equals("long")
+				|| name.equals("short") || name.equals("java.lang.Integer")
+				|| name.equals("java.lang.Long")
+				|| name.equals("java.lang.Short");
+	}
+
+	/**
+	 * The field type is named in the generated source, so it must not be
+	 * private
+	 */
+	private static void checkType(ColumnModel column)
+			throws UnsupportedEntityException {
+		TypeMirror type = column.type;
+		while (type.getKind() == TypeKind.ARRAY) {
+			type = ((ArrayType) type).getComponentType();
+		}
+		if (type.getKind() != TypeKind.DECLARED) {
+			if (type.getKind().isPrimitive()) {
+				return;
+			}
+			throw new UnsupportedEntityException("the type of the field "
+					+ column.fieldName + " is not supported");
+		}
+		for (Element e = ((DeclaredType) type).asElement(); e.getKind()
+				.isClass() || e.getKind().isInterface(); e = e
+				.getEnclosingElement()) {
+			if (e.getModifiers().contains(Modifier.PRIVATE)) {
+				throw new UnsupportedEntityException("the type of the field "
+						+ column.fieldName + " is private");
+			}
+		}
+	}
+
+	/**
+	 * Uses the field when it is not private, else its getter and setter
+	 */
+	private static void resolveAccess(TypeElement type, VariableElement field,
+			ColumnModel column, Types types) throws UnsupportedEntityException {
+		if (field.getModifiers().contains(Modifier.PRIVATE) == false) {
+			if (field.getModifiers().contains(Modifier.FINAL)
+					&& column.mapped) {
+				throw new UnsupportedEntityException("the field "
+						+ column.fieldName + " is final");
+			}
+			return;
+		}
+		String property = Character.toUpperCase(column.fieldName.charAt(0))
+				+ column.fieldName.substring(1);
+		for (ExecutableElement method : ElementFilter.methodsIn(type
+				.getEnclosedElements())) {
+			Set<Modifier> modifiers = method.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE)
+					|| modifiers.contains(Modifier.STATIC)) {
+				continue;
+			}
+			String name = method.getSimpleName().toString();
+			if (method.getParameters().isEmpty()
+					&& types.isSameType(
+							types.erasure(method.getReturnType()),
+							column.type)
+					&& (name.equals("get" + property) || (name.equals("is"
+							+ property) && column.type.getKind() == TypeKind.BOOLEAN))) {
+				column.getter = name;
+			} else if (method.getParameters().size() == 1
+					&& types.isSameType(types.erasure(method.getParameters()
+							.get(0).asType()), column.type)
+					&& name.equals("set" + property)) {
+				column.setter = name;
+			}
+		}
+		if (column.mapped && column.setter == null) {
+			throw new UnsupportedEntityException("the field "
+					+ column.fieldName + " is private and has no setter");
+		} else if (column.insertable && column.getter == null) {
+			throw new UnsupportedEntityException("the field "
+					+ column.fieldName + " is private and has no getter");
+		}
+	}
+
+	String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * The canonical name of the entity class
+	 */
+	String getEntityName() {
+		return entityName;
+	}
+
+	/**
+	 * The qualified name of the mapper: the binary name of the entity
+	 * followed by <code>_Mapper</code>
+	 */
+	String getMapperName() {
+		return mapperName;
+	}
+
+	String getMapperSimpleName() {
+		return packageName.equals("") ? mapperName : mapperName
+				.substring(packageName.length() + 1);
+	}
+
+	/**
+	 * The table name qualified with the @Table catalog and schema
+	 */
+	String getTableName() {
+		return tableName;
+	}
+
+	String getIdColumnName() {
+		return idColumnName;
+	}
+
+	/**
+	 * All persistent fields, in declaration order
+	 */
+	List<ColumnModel> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * A persistent field of an entity
+	 */
+	static final class ColumnModel {
+		String fieldName;
+		String columnName;
+		TypeMirror type;
+		/**
+		 * The erased type as written in the source
+		 */
+		String typeName;
+		boolean id;
+		boolean insertable;
+		/**
+		 * False for relations, which are not read from the row
+		 */
+		boolean mapped;
+		boolean reference;
+		boolean lazy;
+		boolean stream;
+		boolean selected;
+		boolean enumByName;
+		/**
+		 * The accessor methods of a private field, else null
+		 */
+		String getter;
+		String setter;
+
+		/**
+		 * True for the types read without converter and boxing, as by the
+		 * primitive bindings of <code>ColumnBinding</code>
+		 */
+		boolean isFastPrimitive() {
+			TypeKind kind = type.getKind();
+			return kind == TypeKind.INT || kind == TypeKind.LONG
+					|| kind == TypeKind.DOUBLE || kind == TypeKind.BOOLEAN;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.github.simplejpatemplate.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.type.TypeKind;
+
+import com.github.simplejpatemplate.processor.EntityModel.ColumnModel;
+
+/**
+ * Writes the source of the mapper of an {@link EntityModel}. All types are
+ * written with their qualified names, so the source does not depend on the
+ * names of the entity and its field types.
+ */
+final class MapperWriter {
+	private static final String BASE_CLASS = "com.github.simplejpatemplate.mapper.GeneratedEntityMapper";
+	private static final String CONVERTER = "com.github.simplejpatemplate.convert.Converter<java.lang.Object>";
+
+	private final EntityModel model;
+	private final List<ColumnModel> readColumns;
+	private final List<ColumnModel> insertColumns;
+
+	MapperWriter(EntityModel model) {
+		this.model = model;
+		this.readColumns = new ArrayList<ColumnModel>();
+		this.insertColumns = new ArrayList<ColumnModel>();
+		int streams = 0;
+		for (ColumnModel column : model.getColumns()) {
+			if (column.mapped) {
+				// Reading another column may close an open stream
+				if (column.stream) {
+					readColumns.add(column);
+					streams++;
+				} else {
+					readColumns.add(readColumns.size() - streams, column);
+				}
+			}
+			if (column.insertable) {
+				insertColumns.add(column);
+			}
+		}
+	}
+
+	/**
+	 * The INSERT statement, built like the one of
+	 * <code>EntityStatements</code>
+	 */
+	String buildInsertSql() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("INSERT INTO ");
+		builder.append(model.getTableName());
+		builder.append(" ( ");
+		for (ColumnModel column : insertColumns) {
+			builder.append(column.columnName).append(" , ");
+		}
+		builder.setLength(builder.length() - 2);
+		builder.append(" ) VALUES ");
+		builder.append("( ");
+		for (ColumnModel column : insertColumns) {
+			builder.append(':').append(column.columnName).append(" , ");
+		}
+		builder.setLength(builder.length() - 2);
+		builder.append(" )");
+		return builder.toString();
+	}
+
+	String buildSelectSql() {
+		StringBuilder builder = new StringBuilder("SELECT ");
+		boolean first = true;
+		for (ColumnModel column : model.getColumns()) {
+			if (column.selected) {
+				if (first == false) {
+					builder.append(", ");
+				}
+				builder.append(column.columnName);
+				first = false;
+			}
+		}
+		builder.append(" FROM ").append(model.getTableName())
+				.append(" WHERE ").append(model.getIdColumnName())
+				.append(" = :id");
+		return builder.toString();
+	}
+
+	String buildDeleteSql() {
+		return "DELETE FROM " + model.getTableName() + " WHERE "
+				+ model.getIdColumnName() + " = :id";
+	}
+
+	void write(Writer writer) throws IOException {
+		PrintWriter out = new PrintWriter(writer);
+		String entity = model.getEntityName();
+		String mapper = model.getMapperSimpleName();
+
+		if (model.getPackageName().equals("") == false) {
+			out.println("package " + model.getPackageName() + ";");
+			out.println();
+		}
+		out.println("/**");
+		out.println(" * Maps {@link " + entity + "} without reflection.");
+		out.println(" * Generated by the simplejpatemplate annotation processor, do not edit.");
+		out.println(" */");
+		out.println("public final class " + mapper + " extends " + BASE_CLASS
+				+ "<" + entity + "> {");
+		out.println("\tpublic static final java.lang.String TABLE = "
+				+ literal(model.getTableName()) + ";");
+		out.println("\tpublic static final java.lang.String INSERT_SQL = "
+				+ literal(buildInsertSql()) + ";");
+		out.println("\tpublic static final java.lang.String SELECT_SQL = "
+				+ literal(buildSelectSql()) + ";");
+		out.println("\tpublic static final java.lang.String DELETE_SQL = "
+				+ literal(buildDeleteSql()) + ";");
+		out.print("\tprivate static final java.lang.String[] COLUMNS = {");
+		for (int i = 0; i < readColumns.size(); i++) {
+			out.print((i > 0 ? ", " : " ")
+					+ literal(readColumns.get(i).columnName));
+		}
+		out.println(" };");
+		out.println();
+		writeConverters(out);
+
+		out.println("\tpublic " + mapper + "() {");
+		out.println("\t\tsuper(" + entity
+				+ ".class, COLUMNS, INSERT_SQL, SELECT_SQL, DELETE_SQL);");
+		out.println("\t}");
+		out.println();
+		out.println("\tpublic " + entity + " newInstance() {");
+		out.println("\t\treturn new " + entity + "();");
+		out.println("\t}");
+		out.println();
+		writeRead(out, entity);
+		out.println();
+		writeInsertParameters(out, entity);
+		out.println("}");
+		out.flush();
+		if (out.checkError()) {
+			throw new IOException("Could not write " + model.getMapperName());
+		}
+	}
+
+	private void writeConverters(PrintWriter out) {
+		boolean any = false;
+		for (ColumnModel column : model.getColumns()) {
+			if (needsConverter(column)) {
+				out.println("\tprivate static final " + CONVERTER + " "
+						+ converterName(column) + " = converter("
+						+ column.typeName + ".class, " + column.enumByName
+						+ ");");
+				any = true;
+			}
+		}
+		if (any) {
+			out.println();
+		}
+	}
+
+	private void writeRead(PrintWriter out, String entity) {
+		out.println("\t@java.lang.SuppressWarnings(\"unchecked\")");
+		out.println("\tpublic void read(java.sql.ResultSet rs, int[] indexes, "
+				+ entity + " entity)");
+		out.println("\t\t\tthrows java.sql.SQLException {");
+		out.println("\t\tint index;");
+		for (int i = 0; i < readColumns.size(); i++) {
+			ColumnModel column = readColumns.get(i);
+			out.println("\t\tindex = indexes[" + i + "];");
+			out.println("\t\tif (index != 0) {");
+			TypeKind kind = column.type.getKind();
+			if (column.isFastPrimitive()) {
+				String getter = "get"
+						+ Character.toUpperCase(column.typeName.charAt(0))
+						+ column.typeName.substring(1);
+				String notNull = kind == TypeKind.BOOLEAN ? "value"
+						: "value != 0";
+				out.println("\t\t\t" + column.typeName + " value = rs."
+						+ getter + "(index);");
+				out.println("\t\t\tif (" + notNull
+						+ " || rs.wasNull() == false) {");
+				out.println("\t\t\t\t" + assign(column, "value") + ";");
+				out.println("\t\t\t}");
+			} else if (kind.isPrimitive()) {
+				// The field keeps its value when the column is NULL
+				out.println("\t\t\tjava.lang.Object value = " + converterName(column)
+						+ ".read(rs, index);");
+				out.println("\t\t\tif (value != null) {");
+				out.println("\t\t\t\t"
+						+ assign(column, "(" + wrapper(kind) + ") value")
+						+ ";");
+				out.println("\t\t\t}");
+			} else {
+				out.println("\t\t\t"
+						+ assign(column, "(" + column.typeName + ") "
+								+ converterName(column) + ".read(rs, index)")
+						+ ";");
+			}
+			out.println("\t\t}");
+		}
+		out.println("\t}");
+	}
+
+	private void writeInsertParameters(PrintWriter out, String entity) {
+		out.println("\tpublic void writeInsertParameters(" + entity
+				+ " entity, java.util.Map<java.lang.String, java.lang.Object> values) {");
+		for (ColumnModel column : insertColumns) {
+			String value = column.getter != null ? "entity." + column.getter
+					+ "()" : "entity." + column.fieldName;
+			if (column.reference) {
+				value = "bindReference(" + value + ")";
+			} else if (needsConverter(column)) {
+				value = "bind(" + converterName(column) + ", " + value + ")";
+			}
+			out.println("\t\tvalues.put(" + literal(column.columnName) + ", "
+					+ value + ");");
+		}
+		out.println("\t}");
+	}
+
+	private static boolean needsConverter(ColumnModel column) {
+		return column.mapped && column.isFastPrimitive() == false;
+	}
+
+	private static String converterName(ColumnModel column) {
+		return "C_" + column.fieldName;
+	}
+
+	private static String assign(ColumnModel column, String value) {
+		if (column.setter != null) {
+			return "entity." + column.setter + "(" + value + ")";
+		}
+		return "entity." + column.fieldName + " = " + value;
+	}
+
+	private static String wrapper(TypeKind kind) {
+		switch (kind) {
+		case SHORT:
+			return "java.lang.Short";
+		case BYTE:
+			return "java.lang.Byte";
+		case FLOAT:
+			return "java.lang.Float";
+		case CHAR:
+			return "java.lang.Character";
+		default:
+			throw new IllegalArgumentException(kind.toString());
+		}
+	}
+
+	private static String literal(String value) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if (c < ' ' || c > '~') {
+				builder.append(String.format("\\u%04x", Integer.valueOf(c)));
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+}
@@ -0,0 +1,13 @@
+package com.github.simplejpatemplate.processor;
+
+/**
+ * Thrown when no mapper can be generated for an entity, which is then mapped
+ * with reflection
+ */
+class UnsupportedEntityException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	UnsupportedEntityException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,258 @@
+package com.github.simplejpatemplate.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Entity;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.github.simplejpatemplate.SimpleJpaEntityManager;
+import com.github.simplejpatemplate.mapper.EntityMapper;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.mapper.GeneratedEntityMapper;
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.rowmapper.GeneratedRowMapper;
+import com.github.simplejpatemplate.rowmapper.JpaRowMapper;
+import com.github.simplejpatemplate.util.EntityStatements;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * Compiles sample entities with the processor and compares the generated
+ * mappers with the reflective mapping
+ */
+public class EntityMapperProcessorTest {
+	private static final String SAMPLE = "package sample;\n"
+			+ "import javax.persistence.*;\n"
+			+ "@Entity\n"
+			+ "@Table(name = \"sample\")\n"
+			+ "public class Sample {\n"
+			+ "	public enum Status { NEW, DONE }\n"
+			+ "	@Id @Column(name = \"idCol\") private int id;\n"
+			+ "	@Column(name = \"name\") String name;\n"
+			+ "	@Enumerated(EnumType.STRING) @Column(name = \"status\") Status status;\n"
+			+ "	@Column(name = \"small\") short small;\n"
+			+ "	@Column(name = \"amount\") Double amount;\n"
+			+ "	@Column(name = \"active\") boolean active;\n"
+			+ "	@Column(name = \"data\") byte[] data;\n"
+			+ "	@Transient String ignored;\n"
+			+ "	public int getId() { return id; }\n"
+			+ "	public void setId(int id) { this.id = id; }\n"
+			+ "}\n";
+
+	private static final String HIDDEN = "package sample;\n"
+			+ "import javax.persistence.*;\n"
+			+ "@Entity\n"
+			+ "@Table(name = \"hidden\")\n"
+			+ "public class Hidden {\n"
+			+ "	@Id @Column(name = \"idCol\") private int id;\n"
+			+ "	public int getId() { return id; }\n"
+			+ "}\n";
+
+	private static final String AUTO = "package sample;\n"
+			+ "import javax.persistence.*;\n"
+			+ "@Entity\n"
+			+ "@Table(name = \"auto\")\n"
+			+ "public class Auto {\n"
+			+ "	@Id @GeneratedValue @Column(name = \"idCol\") Integer id;\n"
+			+ "}\n";
+
+	private File directory;
+	private NamedParameterJdbcTemplate template;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = File.createTempFile("processor", "");
+		directory.delete();
+		directory.mkdirs();
+
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+		dataSource
+				.setDriverClassName(org.apache.derby.jdbc.EmbeddedDriver.class
+						.getName());
+		dataSource.setUrl("jdbc:derby:memory:ProcessorDb;create=true");
+		template = new NamedParameterJdbcTemplate(dataSource);
+		template.update("create table sample (idCol int, name varchar(25),"
+				+ " status varchar(10), small smallint, amount double,"
+				+ " active smallint, data varchar(10) for bit data)",
+				new MapSqlParameterSource());
+	}
+
+	@After
+	public void tearDown() {
+		template.update("drop table sample", new MapSqlParameterSource());
+		delete(directory);
+		EntityMappers.setEnabled(true);
+	}
+
+	@Test
+	public void testGeneratedMapper() throws Exception {
+		List<Diagnostic<? extends JavaFileObject>> diagnostics = compile();
+		Assert.assertTrue(new File(directory, "sample/Sample_Mapper.class")
+				.exists());
+		Assert.assertFalse(new File(directory, "sample/Hidden_Mapper.class")
+				.exists());
+		Assert.assertTrue(diagnostics.toString(),
+				diagnostics.toString().contains("sample.Hidden is mapped with reflection"));
+		Assert.assertTrue(new File(directory, "sample/Auto_Mapper.class")
+				.exists());
+
+		ClassLoader loader = new URLClassLoader(new URL[] { directory.toURI()
+				.toURL() }, getClass().getClassLoader());
+		Class<?> sampleClass = loader.loadClass("sample.Sample");
+		Assert.assertNull(EntityMappers.forClass(loader
+				.loadClass("sample.Hidden")));
+		EntityMapper<?> mapper = EntityMappers.forClass(sampleClass);
+		Assert.assertTrue(mapper instanceof GeneratedEntityMapper);
+
+		Object sample = sampleClass.newInstance();
+		EntityMetadata metadata = EntityMetadata.forClass(sampleClass);
+		metadata.getColumnByField("id").setValue(sample, 1);
+		metadata.getColumnByField("name").setValue(sample, "one");
+		metadata.getColumnByField("status").setValue(sample,
+				sampleClass.getClasses()[0].getEnumConstants()[1]);
+		metadata.getColumnByField("small").setValue(sample, (short) 3);
+		metadata.getColumnByField("active").setValue(sample, true);
+		metadata.getColumnByField("data").setValue(sample,
+				new byte[] { 1, 2 });
+
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		Map<String, Object> generated = helper.getInsertParameters(sample);
+
+		// The reflective mapping
+		EntityMappers.setEnabled(false);
+		EntityStatements statements = EntityStatements.forClass(sampleClass,
+				null);
+		Assert.assertEquals(statements.getInsertSql(), mapper.getInsertSql());
+		Assert.assertEquals(statements.getSelectSql(), mapper.getSelectSql());
+		Assert.assertEquals(statements.getDeleteSql(), mapper.getDeleteSql());
+		Map<String, Object> reflected = helper.getInsertParameters(sample);
+		Assert.assertEquals(reflected.keySet().toString(), generated.keySet()
+				.toString());
+		for (String key : reflected.keySet()) {
+			assertValueEquals(key, reflected.get(key), generated.get(key));
+		}
+		EntityMappers.setEnabled(true);
+
+		new SimpleJpaEntityManager(template).persist(sample);
+		List<?> generatedRows = template.query("SELECT * FROM sample",
+				new MapSqlParameterSource(), new GeneratedRowMapper<Object>(
+						cast(mapper)));
+		List<?> reflectedRows = template.query("SELECT * FROM sample",
+				new MapSqlParameterSource(),
+				new JpaRowMapper<Object>(cast(sampleClass)));
+		Assert.assertEquals(1, generatedRows.size());
+		for (ColumnMetadata column : metadata.getMappedColumns()) {
+			assertValueEquals(column.getColumnName(),
+					column.getValue(reflectedRows.get(0)),
+					column.getValue(generatedRows.get(0)));
+		}
+	}
+
+	private List<Diagnostic<? extends JavaFileObject>> compile()
+			throws IOException {
+		File sources = new File(directory, "sample");
+		sources.mkdirs();
+		File sample = write(new File(sources, "Sample.java"), SAMPLE);
+		File hidden = write(new File(sources, "Hidden.java"), HIDDEN);
+		File auto = write(new File(sources, "Auto.java"), AUTO);
+
+		// The locations of the processor, the JPA annotations and the runtime
+		String classPath = location(EntityMapperProcessor.class)
+				+ File.pathSeparator + location(Entity.class)
+				+ File.pathSeparator + location(GeneratedEntityMapper.class);
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+				diagnostics, null, null);
+		try {
+			boolean success = compiler.getTask(
+					null,
+					fileManager,
+					diagnostics,
+					Arrays.asList("-d", directory.getPath(), "-classpath",
+							classPath, "-processor",
+							EntityMapperProcessor.class.getName()),
+					null,
+					fileManager.getJavaFileObjects(sample, hidden, auto)).call()
+					.booleanValue();
+			Assert.assertTrue(diagnostics.getDiagnostics().toString(), success);
+		} finally {
+			fileManager.close();
+		}
+		return diagnostics.getDiagnostics();
+	}
+
+	private static void assertValueEquals(String message, Object expected,
+			Object actual) {
+		if (expected instanceof SqlParameterValue) {
+			Assert.assertTrue(message, actual instanceof SqlParameterValue);
+			SqlParameterValue value = (SqlParameterValue) expected;
+			Assert.assertEquals(message, value.getSqlType(),
+					((SqlParameterValue) actual).getSqlType());
+			expected = value.getValue();
+			actual = ((SqlParameterValue) actual).getValue();
+		}
+		Assert.assertTrue(message + ": " + expected + " != " + actual,
+				Arrays.deepEquals(new Object[] { expected },
+						new Object[] { actual }));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T cast(Object value) {
+		return (T) value;
+	}
+
+	private static String location(Class<?> cl) {
+		try {
+			return new File(cl.getProtectionDomain().getCodeSource()
+					.getLocation().toURI()).getPath();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private static File write(File file, String source) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,311 @@
+package com.github.simplejpatemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.simplejpatemplate.PersistenceContext.EntityKey;
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
+/**
+ * The inserts, updates and deletes queued by a {@link SimpleJpaEntityManager}
+ * in write-behind mode, at most one per entity. Redundant operations are
+ * coalesced as they are queued: an insert followed by a delete cancels out,
+ * an update of a queued insert is part of the insert, a delete replaces an
+ * update and the columns of several updates are combined. An insert of an id
+ * whose delete is queued replaces the row: the delete moves to
+ * {@link #getReplacedDeletes()}, which are executed before the inserts.
+ * <p>
+ * {@link #getInserts()} and {@link #getDeletes()} order the entity classes by
+ * their foreign keys, so rows are inserted after the rows they reference and
+ * deleted before them. Not thread safe, like the entity manager that owns it.
+ */
+final class ActionQueue {
+	enum ActionType {
+		INSERT, UPDATE, DELETE
+	}
+
+	static final class Action {
+		private final Object entity;
+		private ActionType type;
+		private final Object primaryKey;
+		private Number version;
+		private final Set<ColumnMetadata> columns = new LinkedHashSet<ColumnMetadata>();
+
+		Action(Object entity, ActionType type, Object primaryKey) {
+			this.entity = entity;
+			this.type = type;
+			this.primaryKey = primaryKey;
+		}
+
+		Object getEntity() {
+			return entity;
+		}
+
+		ActionType getType() {
+			return type;
+		}
+
+		/**
+		 * The id of the entity when the action was queued
+		 */
+		Object getPrimaryKey() {
+			return primaryKey;
+		}
+
+		/**
+		 * The version a versioned entity had when its delete was queued, or
+		 * null when the delete is not checked against the version
+		 */
+		Number getVersion() {
+			return version;
+		}
+
+		/**
+		 * The columns to update, in the order of the updatable columns
+		 */
+		List<ColumnMetadata> getColumns() {
+			List<ColumnMetadata> ordered = new ArrayList<ColumnMetadata>();
+			for (ColumnMetadata column : EntityMetadata.forClass(
+					entity.getClass()).getUpdatableColumns()) {
+				if (columns.contains(column)) {
+					ordered.add(column);
+				}
+			}
+			return ordered;
+		}
+	}
+
+	private final Map<Object, Action> actions = new IdentityHashMap<Object, Action>();
+	private final Map<EntityKey, Action> deletes = new HashMap<EntityKey, Action>();
+	private final List<Action> order = new ArrayList<Action>();
+	private final Map<EntityKey, Action> replacedDeletes = new LinkedHashMap<EntityKey, Action>();
+
+	/**
+	 * Queues the insert of a new entity. When the delete of an entity with the
+	 * same id is queued, the old row is deleted before the new one is
+	 * inserted.
+	 */
+	void insert(Object entity, Object primaryKey) {
+		EntityKey key = primaryKey != null ? new EntityKey(entity.getClass(),
+				primaryKey) : null;
+		Action deleted = key != null ? deletes.remove(key) : null;
+		if (deleted != null) {
+			remove(deleted);
+			replacedDeletes.put(key, deleted);
+		}
+		if (actions.containsKey(entity) == false) {
+			add(new Action(entity, ActionType.INSERT, primaryKey));
+		}
+	}
+
+	/**
+	 * Queues the update of the given columns, unless the entity is inserted
+	 */
+	void update(Object entity, Object primaryKey,
+			List<ColumnMetadata> columns) {
+		Action action = actions.get(entity);
+		if (action == null) {
+			action = new Action(entity, ActionType.UPDATE, primaryKey);
+			add(action);
+		}
+		if (action.type == ActionType.UPDATE) {
+			action.columns.addAll(columns);
+		}
+	}
+
+	/**
+	 * Queues the delete of the entity. A queued insert is dropped instead,
+	 * together with the row it replaces, whose delete is queued again.
+	 * 
+	 * @param version
+	 *            the version the row must have, or null
+	 */
+	void delete(Object entity, Object primaryKey, Number version) {
+		Action action = actions.get(entity);
+		if (action != null && action.type == ActionType.INSERT) {
+			remove(action);
+			EntityKey key = new EntityKey(entity.getClass(),
+					action.primaryKey);
+			Action replaced = action.primaryKey != null ? replacedDeletes
+					.remove(key) : null;
+			if (replaced != null) {
+				add(replaced);
+				deletes.put(key, replaced);
+			}
+			return;
+		}
+		if (action == null) {
+			action = new Action(entity, ActionType.DELETE, primaryKey);
+			add(action);
+		}
+		action.type = ActionType.DELETE;
+		action.version = version;
+		action.columns.clear();
+		if (primaryKey != null) {
+			deletes.put(new EntityKey(entity.getClass(), primaryKey), action);
+		}
+	}
+
+	/**
+	 * True when the row with the given id is queued for deletion
+	 */
+	boolean isDeleted(Class<?> entityClass, Object primaryKey) {
+		return primaryKey != null
+				&& deletes.containsKey(new EntityKey(entityClass, primaryKey));
+	}
+
+	boolean isEmpty() {
+		return order.isEmpty() && replacedDeletes.isEmpty();
+	}
+
+	int size() {
+		return order.size() + replacedDeletes.size();
+	}
+
+	void clear() {
+		actions.clear();
+		deletes.clear();
+		order.clear();
+		replacedDeletes.clear();
+	}
+
+	/**
+	 * The entities to insert, grouped by class; referenced classes first
+	 */
+	List<Object> getInserts() {
+		List<Object> entities = new ArrayList<Object>();
+		for (List<Action> group : groupByClass(ActionType.INSERT, false)) {
+			for (Action action : group) {
+				entities.add(action.entity);
+			}
+		}
+		return entities;
+	}
+
+	/**
+	 * The updates, grouped by class in the order the classes were queued
+	 */
+	List<Action> getUpdates() {
+		List<Action> updates = new ArrayList<Action>();
+		for (Action action : order) {
+			if (action.type == ActionType.UPDATE) {
+				updates.add(action);
+			}
+		}
+		List<Action> grouped = new ArrayList<Action>();
+		for (List<Action> group : group(updates).values()) {
+			grouped.addAll(group);
+		}
+		return grouped;
+	}
+
+	/**
+	 * The deletes, grouped by class; referencing classes first
+	 */
+	List<List<Action>> getDeletes() {
+		return groupByClass(ActionType.DELETE, true);
+	}
+
+	/**
+	 * The deletes of rows that are inserted again, grouped by class like
+	 * {@link #getDeletes()}
+	 */
+	List<List<Action>> getReplacedDeletes() {
+		return sortGroups(new ArrayList<Action>(replacedDeletes.values()),
+				true);
+	}
+
+	private void add(Action action) {
+		actions.put(action.entity, action);
+		order.add(action);
+	}
+
+	private void remove(Action action) {
+		actions.remove(action.entity);
+		order.remove(action);
+	}
+
+	private List<List<Action>> groupByClass(ActionType type, boolean reverse) {
+		List<Action> selected = new ArrayList<Action>();
+		for (Action action : order) {
+			if (action.type == type) {
+				selected.add(action);
+			}
+		}
+		return sortGroups(selected, reverse);
+	}
+
+	private static List<List<Action>> sortGroups(List<Action> selected,
+			boolean reverse) {
+		Map<Class<?>, List<Action>> groups = group(selected);
+		List<List<Action>> sorted = new ArrayList<List<Action>>();
+		for (Class<?> entityClass : sortByReferences(groups.keySet())) {
+			sorted.add(groups.get(entityClass));
+		}
+		if (reverse) {
+			Collections.reverse(sorted);
+		}
+		return sorted;
+	}
+
+	private static Map<Class<?>, List<Action>> group(List<Action> actions) {
+		Map<Class<?>, List<Action>> groups = new LinkedHashMap<Class<?>, List<Action>>();
+		for (Action action : actions) {
+			List<Action> group = groups.get(action.entity.getClass());
+			if (group == null) {
+				group = new ArrayList<Action>();
+				groups.put(action.entity.getClass(), group);
+			}
+			group.add(action);
+		}
+		return groups;
+	}
+
+	/**
+	 * Orders the classes so every class comes after the classes its foreign
+	 * keys reference. Classes in a reference cycle keep their queue order.
+	 */
+	static List<Class<?>> sortByReferences(Set<Class<?>> classes) {
+		List<Class<?>> sorted = new ArrayList<Class<?>>();
+		Set<Class<?>> remaining = new LinkedHashSet<Class<?>>(classes);
+		while (remaining.isEmpty() == false) {
+			Class<?> next = null;
+			for (Class<?> candidate : remaining) {
+				if (referencesAny(candidate, remaining) == false) {
+					next = candidate;
+					break;
+				}
+			}
+			if (next == null) {
+				next = remaining.iterator().next();
+			}
+			remaining.remove(next);
+			sorted.add(next);
+		}
+		return sorted;
+	}
+
+	private static boolean referencesAny(Class<?> entityClass,
+			Set<Class<?>> classes) {
+		for (ColumnMetadata column : EntityMetadata.forClass(entityClass)
+				.getReferences()) {
+			Class<?> target = column.getTargetEntity();
+			if (column.hasForeignKey() && target != entityClass) {
+				for (Class<?> other : classes) {
+					if (other != entityClass && target.isAssignableFrom(other)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
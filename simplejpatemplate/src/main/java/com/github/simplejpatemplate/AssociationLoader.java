@@ -0,0 +1,173 @@
+package com.github.simplejpatemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.proxy.LazyReferences;
+import com.github.simplejpatemplate.rowmapper.ForeignKeyCollector;
+import com.github.simplejpatemplate.rowmapper.ForeignKeyCollector.ForeignKey;
+import com.github.simplejpatemplate.rowmapper.JpaRowMapper;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * Resolves the <code>@ManyToOne</code> and <code>@OneToOne</code> references
+ * of the entities mapped by its row mappers. The foreign keys of all mapped
+ * rows are collected. References declared with <code>fetch = LAZY</code> are
+ * set to a reference holding only the primary key: a {@link LazyReferences}
+ * proxy when the field type is an interface, otherwise the entity returned by
+ * {@link SimpleJpaEntityManager#getReference(Class, Object)}. When eager
+ * fetching is enabled, every other referenced class is loaded with
+ * {@link SimpleJpaEntityManager#findAll(Class, java.util.Collection)}, so
+ * entities shared by several rows are loaded once and entities already managed
+ * by the entity manager are not loaded again.
+ * <p>
+ * A loader is used for one query at a time and is not thread safe.
+ */
+public class AssociationLoader {
+	private final SimpleJpaEntityManager entityManager;
+	private final boolean fetchEager;
+	private final ForeignKeyCollector foreignKeys = new ForeignKeyCollector();
+
+	/**
+	 * @param entityManager
+	 * @param fetchEager
+	 *            true to load the references that are not lazy, false to
+	 *            leave them null
+	 */
+	public AssociationLoader(SimpleJpaEntityManager entityManager,
+			boolean fetchEager) {
+		this.entityManager = entityManager;
+		this.fetchEager = fetchEager;
+	}
+
+	/**
+	 * Creates a row mapper that collects the foreign keys of the mapped rows
+	 * for {@link #load()}
+	 */
+	public <T> RowMapper<T> createRowMapper(Class<T> entityClass) {
+		return new JpaRowMapper<T>(entityClass, foreignKeys);
+	}
+
+	/**
+	 * Receives the foreign keys of entities that are not read with
+	 * {@link #createRowMapper(Class)}, such as cached entities
+	 */
+	ForeignKeyCollector getForeignKeyCollector() {
+		return foreignKeys;
+	}
+
+	/**
+	 * The foreign keys collected since the last {@link #load()}, by entity
+	 */
+	Map<Object, Map<ColumnMetadata, Object>> getForeignKeys() {
+		return foreignKeys.getForeignKeysByEntity();
+	}
+
+	/**
+	 * Loads the entities referenced by the rows mapped since the last call and
+	 * sets the references. Foreign keys without a row leave the reference
+	 * null.
+	 */
+	public void load() {
+		if (foreignKeys.isEmpty()) {
+			return;
+		}
+		Map<ColumnMetadata, List<ForeignKey>> pending = new LinkedHashMap<ColumnMetadata, List<ForeignKey>>();
+		Map<ColumnMetadata, List<ForeignKey>> lazy = new LinkedHashMap<ColumnMetadata, List<ForeignKey>>();
+		for (ColumnMetadata column : foreignKeys.getReferences()) {
+			if (column.isLazy()) {
+				lazy.put(column, foreignKeys.getForeignKeys(column));
+			} else if (fetchEager) {
+				pending.put(column, foreignKeys.getForeignKeys(column));
+			}
+		}
+		foreignKeys.clear();
+
+		for (Map.Entry<ColumnMetadata, List<ForeignKey>> entry : lazy
+				.entrySet()) {
+			ColumnMetadata column = entry.getKey();
+			ColumnMetadata idColumn = getTargetIdColumn(column
+					.getTargetEntity());
+			if (idColumn == null) {
+				continue;
+			}
+			for (ForeignKey foreignKey : entry.getValue()) {
+				Object id = JdbcJpaHelper.convertId(foreignKey.getValue(),
+						idColumn.getType());
+				column.setValue(foreignKey.getEntity(), createReference(column,
+						id));
+			}
+		}
+
+		Map<Class<?>, Set<Object>> ids = new LinkedHashMap<Class<?>, Set<Object>>();
+		for (Map.Entry<ColumnMetadata, List<ForeignKey>> entry : pending
+				.entrySet()) {
+			Class<?> targetClass = entry.getKey().getTargetEntity();
+			ColumnMetadata idColumn = getTargetIdColumn(targetClass);
+			if (idColumn == null) {
+				continue;
+			}
+			Set<Object> targetIds = ids.get(targetClass);
+			if (targetIds == null) {
+				targetIds = new LinkedHashSet<Object>();
+				ids.put(targetClass, targetIds);
+			}
+			for (ForeignKey foreignKey : entry.getValue()) {
+				targetIds.add(JdbcJpaHelper.convertId(foreignKey.getValue(),
+						idColumn.getType()));
+			}
+		}
+
+		Map<Class<?>, Map<Object, ?>> targets = new HashMap<Class<?>, Map<Object, ?>>();
+		for (Map.Entry<Class<?>, Set<Object>> entry : ids.entrySet()) {
+			targets.put(entry.getKey(), entityManager.findAll(entry.getKey(),
+					new ArrayList<Object>(entry.getValue())));
+		}
+
+		for (Map.Entry<ColumnMetadata, List<ForeignKey>> entry : pending
+				.entrySet()) {
+			ColumnMetadata column = entry.getKey();
+			Map<Object, ?> loaded = targets.get(column.getTargetEntity());
+			if (loaded == null) {
+				continue;
+			}
+			Class<?> idType = getTargetIdColumn(column.getTargetEntity())
+					.getType();
+			for (ForeignKey foreignKey : entry.getValue()) {
+				Object id = JdbcJpaHelper.convertId(foreignKey.getValue(),
+						idType);
+				column.setValue(foreignKey.getEntity(), loaded.get(id));
+			}
+		}
+	}
+
+	private Object createReference(ColumnMetadata column, Object primaryKey) {
+		Class<?> targetClass = column.getTargetEntity();
+		if (column.getType().isInterface()) {
+			Object managed = entityManager.getManaged(targetClass, primaryKey);
+			if (managed != null) {
+				return managed;
+			}
+			return LazyReferences.createProxy(column.getType(), targetClass,
+					primaryKey, entityManager);
+		}
+		return entityManager.getReference(targetClass, primaryKey);
+	}
+
+	private ColumnMetadata getTargetIdColumn(Class<?> targetClass) {
+		EntityMetadata metadata = EntityMetadata.forClass(targetClass);
+		if (metadata.isEntity() == false) {
+			return null;
+		}
+		return metadata.getIdColumn();
+	}
+}
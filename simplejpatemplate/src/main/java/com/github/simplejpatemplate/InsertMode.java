@@ -0,0 +1,19 @@
+package com.github.simplejpatemplate;
+
+/**
+ * How {@link SimpleJpaEntityManager#persistAll(java.util.Collection)} sends
+ * inserts to the database
+ */
+public enum InsertMode {
+	/**
+	 * One INSERT per entity, grouped in JDBC batches
+	 */
+	BATCH,
+
+	/**
+	 * One INSERT with many VALUES tuples per statement. Supported by most
+	 * databases (PostgreSQL, MySQL, SQL Server, Derby, H2, DB2), not by
+	 * Oracle.
+	 */
+	MULTI_ROW_VALUES
+}
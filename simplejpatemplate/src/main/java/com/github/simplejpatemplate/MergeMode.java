@@ -0,0 +1,18 @@
+package com.github.simplejpatemplate;
+
+/**
+ * How {@link SimpleJpaEntityManager#merge(Object)} writes an entity
+ */
+public enum MergeMode {
+	/**
+	 * Reads the row first, unless the entity is known to the entity manager,
+	 * then inserts it or updates the changed columns
+	 */
+	FIND_THEN_WRITE,
+
+	/**
+	 * A single upsert statement of the database dialect, e.g.
+	 * <code>MERGE INTO</code> or <code>INSERT ... ON CONFLICT DO UPDATE</code>
+	 */
+	UPSERT
+}
@@ -0,0 +1,187 @@
+package com.github.simplejpatemplate;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The first level cache of a {@link SimpleJpaEntityManager}: every entity
+ * loaded or written by the entity manager, keyed by class and primary key, and
+ * the snapshot of its column values used for dirty checking. A persistence
+ * context is not thread safe, like the entity manager that owns it.
+ */
+public class PersistenceContext {
+	private final Map<EntityKey, Object> entities = new HashMap<EntityKey, Object>();
+	private final Map<Object, ManagedEntry> entries = new IdentityHashMap<Object, ManagedEntry>();
+
+	/**
+	 * Returns the managed entity with the given class and primary key, or null
+	 */
+	public <T> T get(Class<T> entityClass, Object primaryKey) {
+		if (primaryKey == null) {
+			return null;
+		}
+		return entityClass.cast(entities.get(new EntityKey(entityClass,
+				primaryKey)));
+	}
+
+	/**
+	 * Adds the entity, or replaces the snapshot of an entity that is already
+	 * managed. An entity without primary key only gets a snapshot.
+	 *
+	 * @param entity
+	 * @param primaryKey
+	 * @param snapshot
+	 */
+	public void put(Object entity, Object primaryKey, Object[] snapshot) {
+		ManagedEntry entry = entries.get(entity);
+		if (entry != null) {
+			entry.snapshot = snapshot;
+			entry.reference = false;
+			if (entry.key == null && primaryKey != null) {
+				entry.key = new EntityKey(entity.getClass(), primaryKey);
+				entities.put(entry.key, entity);
+			}
+			return;
+		}
+
+		EntityKey key = null;
+		if (primaryKey != null) {
+			key = new EntityKey(entity.getClass(), primaryKey);
+			Object previous = entities.put(key, entity);
+			if (previous != null && previous != entity) {
+				entries.remove(previous);
+			}
+		}
+		entries.put(entity, new ManagedEntry(key, snapshot));
+	}
+
+	/**
+	 * Adds an entity of which only the primary key is known, as returned by
+	 * {@link SimpleJpaEntityManager#getReference(Class, Object)}. The entity
+	 * has no snapshot until its state is loaded and it is
+	 * {@link #put(Object, Object, Object[]) put} again.
+	 */
+	public void putReference(Object entity, Object primaryKey) {
+		put(entity, primaryKey, null);
+		entries.get(entity).reference = true;
+	}
+
+	/**
+	 * True when the entity was added with
+	 * {@link #putReference(Object, Object)} and its state was not loaded since
+	 */
+	public boolean isReference(Object entity) {
+		ManagedEntry entry = entries.get(entity);
+		return entry != null && entry.reference;
+	}
+
+	/**
+	 * True when this exact instance is managed
+	 */
+	public boolean contains(Object entity) {
+		return entries.containsKey(entity);
+	}
+
+	/**
+	 * The column values of the entity when it was last loaded or written, or
+	 * null when the entity is not managed
+	 */
+	public Object[] getSnapshot(Object entity) {
+		ManagedEntry entry = entries.get(entity);
+		return entry != null ? entry.snapshot : null;
+	}
+
+	/**
+	 * Replaces one value of the snapshot of a managed entity, after a lazy
+	 * column was loaded
+	 * 
+	 * @param entity
+	 * @param index
+	 *            the index of the column in the updatable columns
+	 * @param value
+	 */
+	public void updateSnapshot(Object entity, int index, Object value) {
+		ManagedEntry entry = entries.get(entity);
+		if (entry != null && entry.snapshot != null) {
+			entry.snapshot[index] = value;
+		}
+	}
+
+	/**
+	 * Stops managing the entity
+	 */
+	public void remove(Object entity) {
+		ManagedEntry entry = entries.remove(entity);
+		if (entry != null && entry.key != null) {
+			entities.remove(entry.key);
+		}
+	}
+
+	/**
+	 * The number of managed entities
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Releases all managed entities
+	 */
+	public void clear() {
+		entities.clear();
+		entries.clear();
+	}
+
+	private static final class ManagedEntry {
+		private EntityKey key;
+		private Object[] snapshot;
+		private boolean reference;
+
+		ManagedEntry(EntityKey key, Object[] snapshot) {
+			this.key = key;
+			this.snapshot = snapshot;
+		}
+	}
+
+	/**
+	 * Identifies an entity by its class and primary key
+	 */
+	public static final class EntityKey {
+		private final Class<?> entityClass;
+		private final Object primaryKey;
+
+		public EntityKey(Class<?> entityClass, Object primaryKey) {
+			this.entityClass = entityClass;
+			this.primaryKey = primaryKey;
+		}
+
+		public Class<?> getEntityClass() {
+			return entityClass;
+		}
+
+		public Object getPrimaryKey() {
+			return primaryKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return entityClass.hashCode() * 31 + primaryKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof EntityKey == false) {
+				return false;
+			}
+			EntityKey other = (EntityKey) obj;
+			return entityClass == other.entityClass
+					&& primaryKey.equals(other.primaryKey);
+		}
+
+		@Override
+		public String toString() {
+			return entityClass.getSimpleName() + "#" + primaryKey;
+		}
+	}
+}
@@ -1,19 +1,70 @@
 package com.github.simplejpatemplate;
 
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
 import javax.persistence.EntityTransaction;
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcAccessor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.github.simplejpatemplate.batch.BatchPersistException;
+import com.github.simplejpatemplate.batch.BatchResult;
+import com.github.simplejpatemplate.cache.EntityCache;
+import com.github.simplejpatemplate.dialect.Dialect;
+import com.github.simplejpatemplate.dialect.Dialects;
+import com.github.simplejpatemplate.dialect.GenericDialect;
+import com.github.simplejpatemplate.generator.GeneratedKeys;
+import com.github.simplejpatemplate.generator.SequenceAllocator;
+import com.github.simplejpatemplate.mapper.EntityMapper;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.proxy.LazyReference;
+import com.github.simplejpatemplate.proxy.LazyReferences;
+import com.github.simplejpatemplate.query.CloseableIterator;
+import com.github.simplejpatemplate.query.NativeQuery;
+import com.github.simplejpatemplate.query.ResultSetIterator;
+import com.github.simplejpatemplate.rowmapper.DtoRowMapper;
+import com.github.simplejpatemplate.rowmapper.GeneratedRowMapper;
 import com.github.simplejpatemplate.rowmapper.JpaRowMapper;
+import com.github.simplejpatemplate.rowmapper.ScalarRowMapper;
+import com.github.simplejpatemplate.util.EntityStatements;
 import com.github.simplejpatemplate.util.JdbcJpaHelper;
 
 /**
@@ -24,97 +75,1625 @@ import com.github.simplejpatemplate.util.JdbcJpaHelper;
  * 
  */
 public class SimpleJpaEntityManager implements EntityManager {
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	public static final int DEFAULT_MAX_PARAMETERS = 2000;
+	public static final int DEFAULT_FETCH_SIZE = 500;
+	public static final int DEFAULT_ID_CHUNK_SIZE = 128;
+
 	private final NamedParameterJdbcTemplate template;
 	private final JdbcJpaHelper helper;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int maxParameters = DEFAULT_MAX_PARAMETERS;
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private int idChunkSize = DEFAULT_ID_CHUNK_SIZE;
+	private boolean fetchReferences;
+	private InsertMode insertMode = InsertMode.BATCH;
+	private MergeMode mergeMode = MergeMode.FIND_THEN_WRITE;
+	private Dialect dialect;
+	private final PersistenceContext context = new PersistenceContext();
+	private final EntityCache entityCache;
+	private final Set<PersistenceContext.EntityKey> writtenKeys = new HashSet<PersistenceContext.EntityKey>();
+	private SequenceAllocator sequenceAllocator = new SequenceAllocator();
+	private final ActionQueue actionQueue = new ActionQueue();
+	private boolean writeBehind;
+	private FlushModeType flushMode = FlushModeType.AUTO;
+	private PlatformTransactionManager transactionManager;
+	private SimpleJpaEntityTransaction transaction;
+	private boolean joined;
 
 	public SimpleJpaEntityManager(NamedParameterJdbcTemplate template) {
+		this(template, null);
+	}
+
+	/**
+	 * @param template
+	 * @param entityCache
+	 *            the second level cache shared with other entity managers, or
+	 *            null
+	 */
+	public SimpleJpaEntityManager(NamedParameterJdbcTemplate template,
+			EntityCache entityCache) {
 		this.template = template;
 		this.helper = new JdbcJpaHelper();
+		this.entityCache = entityCache;
 	}
 
+	/**
+	 * Creates a row mapper for one query. Row mappers only hold the shared
+	 * {@link EntityMetadata} and the column plan of their own result set.
+	 * Entities with a generated {@link EntityMapper} are mapped without
+	 * reflection; classes without @Entity annotation are mapped as DTOs.
+	 */
+	private <T> RowMapper<T> createRowMapper(Class<T> entityClass) {
+		EntityMapper<T> mapper = EntityMappers.forClass(entityClass);
+		if (mapper != null) {
+			return new GeneratedRowMapper<T>(mapper);
+		}
+		if (EntityMetadata.forClass(entityClass).isEntity() == false) {
+			return new DtoRowMapper<T>(entityClass);
+		}
+		return new JpaRowMapper<T>(entityClass);
+	}
+
+	/**
+	 * Inserts the entity. A SEQUENCE id is allocated before the insert; an
+	 * IDENTITY id is read from the generated keys of the insert. An unset AUTO
+	 * id is allocated like a SEQUENCE id when the dialect supports sequences. In
+	 * {@link #setWriteBehind(boolean) write-behind} mode the insert is queued
+	 * until the next {@link #flush()}, except for ids generated on insert.
+	 */
 	public void persist(Object entity) {
 		try {
+			EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+			List<Object> entities = Collections.singletonList(entity);
+			generateIds(metadata, entities);
+			initializeVersions(metadata, entities);
+			if (writeBehind && metadata.isIdGeneratedOnInsert() == false) {
+				actionQueue.insert(entity, helper.getEntityID(entity));
+				takeSnapshot(entity);
+				return;
+			}
+			flush();
 			Map<String, Object> values = helper.getInsertParameters(entity);
 			String sql = helper.createInsertQuery(null, entity, values);
-			template.update(sql, values);
+			if (metadata.isIdGeneratedOnInsert()) {
+				insertReturningKeys(metadata, sql, entities);
+			} else {
+				template.update(sql, values);
+			}
+			invalidateCache(entity);
+			takeSnapshot(entity);
+		} catch (PersistenceException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Inserts all entities using JDBC batch updates or multi-row inserts,
+	 * depending on the {@link #getInsertMode()}. Entities are grouped by class,
+	 * in the order each class is first encountered. In {@link InsertMode#BATCH}
+	 * mode every group is sent in batches of at most {@link #getBatchSize()}
+	 * statements; in {@link InsertMode#MULTI_ROW_VALUES} mode every statement
+	 * inserts at most {@link #getBatchSize()} rows and binds at most
+	 * {@link #getMaxParameters()} parameters.
+	 * <p>
+	 * Ids are generated as in {@link #persist(Object)}. Entities with an id
+	 * generated on insert are never inserted with multi-row statements, and
+	 * are inserted one statement at a time unless
+	 * {@link Dialect#supportsBatchGeneratedKeys()}; their keys are read from
+	 * the inserts either way. The entities of every completed batch are
+	 * managed.
+	 * 
+	 * @param entities
+	 * @return the update counts of every executed batch
+	 * @throws BatchPersistException
+	 *             when a batch fails. The exception holds the completed
+	 *             batches and the entities that were not written
+	 */
+	public BatchResult persistAll(Collection<?> entities) {
+		if (insertMode == InsertMode.MULTI_ROW_VALUES) {
+			return writeAll(entities, BatchOperation.MULTI_ROW_INSERT);
+		}
+		return writeAll(entities, BatchOperation.INSERT);
+	}
+
+	/**
+	 * Inserts or updates all entities with the upsert statement of the
+	 * {@link #getDialect()}, using JDBC batch updates of at most
+	 * {@link #getBatchSize()} statements. Entities are grouped by class, in the
+	 * order each class is first encountered. Upserts neither compare nor
+	 * increment the version of versioned entities. The entities of every
+	 * completed batch are managed; when another instance with the same id is
+	 * already managed, the state is copied to that instance.
+	 * 
+	 * @param entities
+	 * @return the update counts of every executed batch
+	 * @throws BatchPersistException
+	 *             when a batch fails. The exception holds the completed
+	 *             batches and the entities that were not written
+	 * @throws UnsupportedOperationException
+	 *             when the dialect has no upsert statement
+	 */
+	public BatchResult mergeAll(Collection<?> entities) {
+		return writeAll(entities, BatchOperation.UPSERT);
+	}
+
+	private enum BatchOperation {
+		INSERT, MULTI_ROW_INSERT, UPSERT
+	}
+
+	private BatchResult writeAll(Collection<?> entities,
+			BatchOperation operation) {
+		BatchResult result = new BatchResult();
+		if (entities == null || entities.isEmpty()) {
+			return result;
+		}
+		flush();
+
+		Map<Class<?>, List<Object>> groups = groupByClass(entities);
+		List<Object> pending = new ArrayList<Object>(entities.size());
+		for (List<Object> group : groups.values()) {
+			pending.addAll(group);
+		}
+
+		int processed = 0;
+		for (Map.Entry<Class<?>, List<Object>> group : groups.entrySet()) {
+			Class<?> entityClass = group.getKey();
+			List<Object> groupEntities = group.getValue();
+			EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+			try {
+				generateIds(metadata, groupEntities);
+				initializeVersions(metadata, groupEntities);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+			boolean generatedKeys = operation != BatchOperation.UPSERT
+					&& metadata.isIdGeneratedOnInsert();
+			boolean multiRow = operation == BatchOperation.MULTI_ROW_INSERT
+					&& generatedKeys == false;
+
+			for (List<Object> chunk : chunk(entityClass, groupEntities,
+					multiRow)) {
+				processed += chunk.size();
+
+				String sql;
+				if (multiRow) {
+					sql = helper.createMultiRowInsertQuery(entityClass, null,
+							chunk.size());
+				} else if (operation == BatchOperation.UPSERT) {
+					sql = helper.createUpsertQuery(entityClass, null,
+							getDialect());
+				} else {
+					sql = helper.createInsertQuery(null, chunk.get(0), null);
+				}
+				try {
+					int[] counts;
+					if (multiRow) {
+						counts = executeMultiRowInsert(sql, chunk);
+					} else if (generatedKeys) {
+						counts = insertReturningKeys(metadata, sql, chunk);
+					} else {
+						counts = template.batchUpdate(sql,
+								getBatchParameters(chunk));
+					}
+					result.add(new BatchResult.Batch(entityClass, sql, chunk,
+							counts));
+					manageAll(chunk, operation == BatchOperation.UPSERT);
+				} catch (DataAccessException e) {
+					// A multi-row insert is a single statement: all rows failed
+					BatchUpdateException batchException = findBatchUpdateException(e);
+					int[] counts = batchException != null ? batchException
+							.getUpdateCounts() : new int[0];
+					BatchResult.Batch failed = new BatchResult.Batch(
+							entityClass, sql, chunk, counts);
+					throw new BatchPersistException(e.getMessage(), e, result,
+							failed, pending.subList(processed, pending.size()));
+				} finally {
+					// Part of a failed batch may have been written
+					for (Object entity : chunk) {
+						invalidateCache(entity);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the entities of one class into JDBC batches or multi-row
+	 * inserts. Multi-row inserts are split into full chunks and a remainder of
+	 * descending powers of two, which bounds the number of distinct statements
+	 * the database has to prepare.
+	 */
+	private List<List<Object>> chunk(Class<?> entityClass,
+			List<Object> entities, boolean multiRow) {
+		List<List<Object>> chunks = new ArrayList<List<Object>>();
+		if (multiRow == false) {
+			for (int from = 0; from < entities.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, entities.size());
+				chunks.add(entities.subList(from, to));
+			}
+			return chunks;
+		}
+
+		int columns = Math.max(1, EntityMetadata.forClass(entityClass)
+				.getInsertableColumns().size());
+		int rowsPerStatement = Math.max(1,
+				Math.min(batchSize, maxParameters / columns));
+
+		int from = 0;
+		while (entities.size() - from >= rowsPerStatement) {
+			chunks.add(entities.subList(from, from + rowsPerStatement));
+			from += rowsPerStatement;
+		}
+		int remaining = entities.size() - from;
+		while (remaining > 0) {
+			int size = Integer.highestOneBit(remaining);
+			chunks.add(entities.subList(from, from + size));
+			from += size;
+			remaining -= size;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Assigns ids allocated from the sequence of the entity class to the
+	 * entities without id. AUTO ids use the sequence when the dialect supports
+	 * sequences, and are otherwise inserted as they are.
+	 */
+	private void generateIds(EntityMetadata metadata, List<Object> entities)
+			throws IllegalAccessException {
+		if (metadata.isIdFromSequence() == false
+				&& (metadata.isIdAuto() == false || getDialect()
+						.supportsSequences() == false)) {
+			return;
+		}
+		String sequenceQuery = getDialect().createSequenceQuery(
+				metadata.getSequenceName());
+		for (Object entity : entities) {
+			if (hasId(entity)) {
+				continue;
+			}
+			long id = sequenceAllocator.next(metadata.getSequenceName(),
+					metadata.getAllocationSize(), template.getJdbcOperations(),
+					sequenceQuery);
+			helper.setEntityID(entity, Long.valueOf(id));
+		}
+	}
+
+	/**
+	 * Sets the version of new versioned entities to 0, unless it is set
+	 */
+	private void initializeVersions(EntityMetadata metadata,
+			List<Object> entities) {
+		if (metadata.isVersioned() == false) {
+			return;
+		}
+		for (Object entity : entities) {
+			helper.initializeVersion(entity);
+		}
+	}
+
+	/**
+	 * True when the id is set; a primitive id of 0 counts as unset
+	 */
+	private boolean hasId(Object entity) throws IllegalAccessException {
+		Object id = helper.getEntityID(entity);
+		if (id instanceof Number
+				&& EntityMetadata.forClass(entity.getClass()).getIdColumn()
+						.getType().isPrimitive()) {
+			return ((Number) id).longValue() != 0;
+		}
+		return id != null;
+	}
+
+	/**
+	 * Inserts the entities of one class and copies the generated keys to
+	 * their id fields
+	 */
+	private int[] insertReturningKeys(EntityMetadata metadata, String sql,
+			List<Object> entities) {
+		Object[] keys = new Object[entities.size()];
+		int[] counts = GeneratedKeys.insert(template.getJdbcOperations(), sql,
+				Arrays.asList(getBatchParameters(entities)), metadata
+						.requireIdColumn().getColumnName(), entities.size() > 1
+						&& getDialect().supportsBatchGeneratedKeys(), keys);
+		for (int i = 0; i < keys.length; i++) {
+			helper.setEntityID(entities.get(i), keys[i]);
+		}
+		return counts;
+	}
+
+	private int[] executeMultiRowInsert(String sql, List<Object> chunk) {
+		Map<String, Object> values;
+		try {
+			values = helper.getMultiRowInsertParameters(chunk);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		int count = template.update(sql, values);
+
+		int[] counts = new int[chunk.size()];
+		Arrays.fill(counts, count == chunk.size() ? 1
+				: Statement.SUCCESS_NO_INFO);
+		return counts;
+	}
+
+	/**
+	 * Makes the entities of a written chunk managed. Upserted entities update
+	 * the instances already managed with their ids.
+	 */
+	private void manageAll(List<Object> entities, boolean merged) {
+		try {
+			for (Object entity : entities) {
+				if (merged) {
+					manage(entity);
+				} else {
+					takeSnapshot(entity);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Map<String, ?>[] getBatchParameters(List<Object> chunk) {
+		Map<String, ?>[] batchValues = new Map[chunk.size()];
+		for (int i = 0; i < batchValues.length; i++) {
+			try {
+				batchValues[i] = helper.getInsertParameters(chunk.get(i));
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+		}
+		return batchValues;
+	}
+
+	private Map<Class<?>, List<Object>> groupByClass(Collection<?> entities) {
+		Map<Class<?>, List<Object>> groups = new LinkedHashMap<Class<?>, List<Object>>();
+		for (Object entity : entities) {
+			if (entity == null) {
+				throw new IllegalArgumentException("Cannot persist null");
+			}
+			List<Object> group = groups.get(entity.getClass());
+			if (group == null) {
+				group = new ArrayList<Object>();
+				groups.put(entity.getClass(), group);
+			}
+			group.add(entity);
+		}
+		return groups;
+	}
+
+	private BatchUpdateException findBatchUpdateException(Throwable e) {
+		while (e != null) {
+			if (e instanceof BatchUpdateException) {
+				return (BatchUpdateException) e;
+			}
+			e = e.getCause();
+		}
+		return null;
+	}
+
+	public SequenceAllocator getSequenceAllocator() {
+		return sequenceAllocator;
+	}
+
+	/**
+	 * Sets the allocator of SEQUENCE ids, which should be shared by the entity
+	 * managers of one database so their id blocks are not wasted
+	 */
+	public void setSequenceAllocator(SequenceAllocator sequenceAllocator) {
+		if (sequenceAllocator == null) {
+			throw new IllegalArgumentException("sequenceAllocator is required");
+		}
+		this.sequenceAllocator = sequenceAllocator;
+	}
+
+	/**
+	 * The maximum number of statements in one JDBC batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public InsertMode getInsertMode() {
+		return insertMode;
+	}
+
+	/**
+	 * Chooses between JDBC batching and multi-row inserts for
+	 * {@link #persistAll(Collection)}
+	 */
+	public void setInsertMode(InsertMode insertMode) {
+		if (insertMode == null) {
+			throw new IllegalArgumentException("insertMode is null");
+		}
+		this.insertMode = insertMode;
+	}
+
+	/**
+	 * The maximum number of bind parameters of one multi-row insert
+	 */
+	public int getMaxParameters() {
+		return maxParameters;
+	}
+
+	/**
+	 * Limits the number of bind parameters of one multi-row insert to the
+	 * limit of the JDBC driver, e.g. 2100 for SQL Server or 32767 for
+	 * PostgreSQL
+	 */
+	public void setMaxParameters(int maxParameters) {
+		if (maxParameters < 1) {
+			throw new IllegalArgumentException("maxParameters must be positive");
+		}
+		this.maxParameters = maxParameters;
+	}
+
+	/**
+	 * The JDBC fetch size of {@link #iterate(Class, String, Map)},
+	 * {@link #stream(Class, String, Map)} and native queries
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows the JDBC driver fetches at once when streaming,
+	 * 0 for the driver default
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 0) {
+			throw new IllegalArgumentException("fetchSize must not be negative");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * The maximum number of ids in the IN list of one query of
+	 * {@link #findAll(Class, Collection)}
+	 */
+	public int getIdChunkSize() {
+		return idChunkSize;
+	}
+
+	public void setIdChunkSize(int idChunkSize) {
+		if (idChunkSize < 1) {
+			throw new IllegalArgumentException("idChunkSize must be positive");
+		}
+		this.idChunkSize = idChunkSize;
+	}
+
+	public boolean isFetchReferences() {
+		return fetchReferences;
+	}
+
+	/**
+	 * When enabled, {@link #find(Class, Object)},
+	 * {@link #findAll(Class, Collection)} and native queries with a result
+	 * class also load the <code>@ManyToOne</code> and <code>@OneToOne</code>
+	 * references of the entities they return, with one query per referenced
+	 * class. Disabled by default.
+	 * 
+	 * @see AssociationLoader
+	 */
+	public void setFetchReferences(boolean fetchReferences) {
+		this.fetchReferences = fetchReferences;
+	}
+
+	public MergeMode getMergeMode() {
+		return mergeMode;
+	}
+
+	/**
+	 * Chooses how {@link #merge(Object)} writes an entity
+	 */
+	public void setMergeMode(MergeMode mergeMode) {
+		if (mergeMode == null) {
+			throw new IllegalArgumentException("mergeMode is null");
+		}
+		this.mergeMode = mergeMode;
+	}
+
+	/**
+	 * The dialect of the database, detected from the data source of the
+	 * template on first use unless set explicitly
+	 */
+	public Dialect getDialect() {
+		if (dialect == null) {
+			dialect = detectDialect(template);
+		}
+		return dialect;
+	}
+
+	/**
+	 * Detects the dialect of the data source of the template, or returns a
+	 * {@link GenericDialect} when the template has no data source
+	 */
+	static Dialect detectDialect(NamedParameterJdbcTemplate template) {
+		JdbcOperations operations = template.getJdbcOperations();
+		if (operations instanceof JdbcAccessor) {
+			return Dialects.detect(((JdbcAccessor) operations).getDataSource());
+		}
+		return new GenericDialect();
+	}
+
+	public void setDialect(Dialect dialect) {
+		this.dialect = dialect;
+	}
+
+	/**
+	 * Writes the state of the entity to the database. In
+	 * {@link MergeMode#UPSERT} mode this is a single upsert statement of the
+	 * {@link #getDialect()}. Otherwise an entity that was loaded or written by
+	 * this entity manager is compared with the snapshot taken at that time and
+	 * only the changed columns are updated. Any other entity is looked up
+	 * first, inserted when it does not exist and otherwise updated with the
+	 * columns that differ from the database row.
+	 */
 	public <T> T merge(T entity) {
 		try {
+			if (mergeMode == MergeMode.UPSERT) {
+				flush();
+				String sql = helper.createUpsertQuery(entity.getClass(), null,
+						getDialect());
+				template.update(sql, helper.getInsertParameters(entity));
+				invalidateCache(entity);
+				return manage(entity);
+			}
+
+			initialize(entity);
+			if (context.contains(entity)) {
+				executeUpdate(entity,
+						helper.getDirtyColumns(entity, context.getSnapshot(entity)));
+				takeSnapshot(entity);
+				return entity;
+			}
+
 			Object primaryKey = helper.getEntityID(entity);
+			@SuppressWarnings("unchecked")
 			Class<T> cl = (Class<T>) entity.getClass();
-			T existing = (T) find(cl, primaryKey);
-			if (existing == null) {
+			T managed = find(cl, primaryKey);
+			if (managed == null) {
 				persist(entity);
 				return entity;
-			} else {
-				throw new RuntimeException("Not implemented: update");
 			}
+			// Write the changes of the detached entity and copy its state to
+			// the managed instance, which is returned
+			executeUpdate(entity,
+					helper.getDirtyColumns(entity, context.getSnapshot(managed)));
+			copyState(entity, managed);
+			takeSnapshot(managed);
+			return managed;
+		} catch (PersistenceException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Makes the state of a freshly written entity the managed state. When
+	 * another instance with the same id is managed, the state is copied to
+	 * that instance and it is returned.
+	 */
+	private <T> T manage(T entity) throws IllegalAccessException {
+		@SuppressWarnings("unchecked")
+		T managed = (T) context.get(entity.getClass(),
+				helper.getEntityID(entity));
+		if (managed != null && managed != entity) {
+			copyState(entity, managed);
+			takeSnapshot(managed);
+			return managed;
+		}
+		takeSnapshot(entity);
+		return entity;
+	}
+
+	private void copyState(Object source, Object target) {
+		for (ColumnMetadata column : EntityMetadata.forClass(source.getClass())
+				.getColumns()) {
+			column.setValue(target, column.getValue(source));
+		}
+	}
+
+	/**
+	 * Updates an entity that is known to exist, with a single UPDATE and
+	 * without reading the row first. When the entity was loaded or written by
+	 * this entity manager only the changed columns are written, otherwise all
+	 * updatable columns are.
+	 * 
+	 * @param entity
+	 * @throws EntityNotFoundException
+	 *             when no row was updated
+	 * @throws OptimisticLockException
+	 *             when the version of a versioned entity has changed
+	 */
+	public void update(Object entity) {
+		List<ColumnMetadata> columns;
+		initialize(entity);
+		Object[] snapshot = context.getSnapshot(entity);
+		try {
+			if (snapshot != null) {
+				columns = helper.getDirtyColumns(entity, snapshot);
+			} else {
+				columns = EntityMetadata.forClass(entity.getClass())
+						.getUpdatableColumns();
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		if (executeUpdate(entity, columns) == 0 && columns.isEmpty() == false) {
+			throw new EntityNotFoundException("No row updated for " + entity);
+		}
+		try {
+			manage(entity);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Updates the given columns. The version of a versioned entity is
+	 * incremented once its row is updated.
+	 * 
+	 * @return the number of updated rows, 0 when there was nothing to update
+	 * @throws OptimisticLockException
+	 *             when the version of a versioned entity has changed
+	 */
+	private int executeUpdate(Object entity, List<ColumnMetadata> columns) {
+		try {
+			if (writeBehind) {
+				if (columns.isEmpty()) {
+					return 0;
+				}
+				actionQueue.update(entity, helper.getEntityID(entity), columns);
+				return 1;
+			}
+			String sql = helper.createUpdateQuery(entity.getClass(), null,
+					columns);
+			int count = 0;
+			if (sql != null) {
+				count = template.update(sql,
+						helper.getUpdateParameters(entity, columns));
+				invalidateCache(entity);
+				checkVersionedCount(entity, count);
+			}
+			return count;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Checks the update count of a statement that compared the version of the
+	 * entity, and increments the version once the row was written. A count of
+	 * <code>SUCCESS_NO_INFO</code>, returned by some drivers for batches,
+	 * cannot be checked and counts as written.
+	 * 
+	 * @throws OptimisticLockException
+	 *             when no row was written
+	 */
+	private void checkVersionedCount(Object entity, int count) {
+		if (EntityMetadata.forClass(entity.getClass()).isVersioned() == false) {
+			return;
+		}
+		if (count == 0) {
+			throw staleVersion(entity, helper.getVersion(entity));
+		}
+		helper.incrementVersion(entity);
+	}
+
+	private static OptimisticLockException staleVersion(Object entity,
+			Object version) {
+		return new OptimisticLockException("Version " + version + " of "
+				+ entity + " is not current", null, entity);
+	}
+
+	private void invalidateCache(Object entity) {
+		try {
+			invalidateCache(entity.getClass(), helper.getEntityID(entity));
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Removes a written row from the second level cache. Inside a Spring
+	 * transaction the row is removed again after the transaction completes,
+	 * since other entity managers may cache its uncommitted state until then,
+	 * and this entity manager stops caching it.
+	 */
+	private void invalidateCache(Class<?> entityClass, Object primaryKey) {
+		if (entityCache == null || primaryKey == null) {
+			return;
+		}
+		entityCache.invalidate(entityClass, primaryKey);
+		if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+			return;
+		}
+		if (writtenKeys.isEmpty()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(int status) {
+							for (PersistenceContext.EntityKey key : writtenKeys) {
+								entityCache.invalidate(key.getEntityClass(),
+										key.getPrimaryKey());
+							}
+							writtenKeys.clear();
+						}
+					});
+		}
+		writtenKeys.add(new PersistenceContext.EntityKey(entityClass,
+				primaryKey));
+	}
+
+	/**
+	 * Adds the entity to the persistence context, with a snapshot of its
+	 * current column values
+	 */
+	private void takeSnapshot(Object entity) throws IllegalAccessException {
+		context.put(entity, helper.getEntityID(entity),
+				helper.getUpdatableState(entity));
+	}
+
+	/**
+	 * Deletes the row of the entity, or queues the delete in
+	 * {@link #setWriteBehind(boolean) write-behind} mode. The row of a
+	 * versioned entity is only deleted when its version is unchanged.
+	 * 
+	 * @throws OptimisticLockException
+	 *             when the version of a versioned entity has changed
+	 */
 	public void remove(Object entity) {
 		try {
 			Object primaryKey = helper.getEntityID(entity);
-			String sql = helper.createDeleteQuery(entity.getClass(),
-					primaryKey, null);
-			SqlParameterSource params = new MapSqlParameterSource("id",
-					primaryKey);
-
-			template.update(sql, params);
+			if (writeBehind) {
+				invalidateCache(entity);
+				actionQueue.delete(entity, primaryKey,
+						isVersionChecked(entity) ? helper.getVersion(entity)
+								: null);
+				context.remove(entity);
+				return;
+			}
+			if (isVersionChecked(entity)) {
+				int count = template.update(helper.createVersionedDeleteQuery(
+						entity.getClass(), null), helper
+						.getVersionParameters(entity));
+				if (count == 0) {
+					throw staleVersion(entity, helper.getVersion(entity));
+				}
+			} else {
+				String sql = helper.createDeleteQuery(entity.getClass(),
+						primaryKey, null);
+				SqlParameterSource params = new MapSqlParameterSource("id",
+						helper.getIdParameter(entity.getClass(), primaryKey));
+				template.update(sql, params);
+			}
+			invalidateCache(entity);
+			context.remove(entity);
+		} catch (PersistenceException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * True when the entity is versioned and its version is known, so writes
+	 * of its row compare the version. A reference that was never loaded has
+	 * no version and is deleted by id only.
+	 */
+	private boolean isVersionChecked(Object entity) {
+		return EntityMetadata.forClass(entity.getClass()).isVersioned()
+				&& context.isReference(entity) == false
+				&& helper.getVersion(entity) != null;
+	}
+
+	/**
+	 * Returns the entity with the given primary key, or null when there is no
+	 * such row. Entities already loaded or written by this entity manager are
+	 * returned from the persistence context without a query, cached entities
+	 * are copied from the second level cache. A reference returned by
+	 * {@link #getReference(Class, Object)} is loaded and returned. The primary
+	 * key is converted to the type of the @Id field first.
+	 */
 	public <T> T find(Class<T> entityClass, Object primaryKey) {
+		primaryKey = JdbcJpaHelper.convertId(primaryKey, EntityMetadata
+				.forClass(entityClass).requireIdColumn().getType());
+		T managed = context.get(entityClass, primaryKey);
+		if (managed != null && context.isReference(managed) == false) {
+			return managed;
+		}
 		try {
-			String sql = helper
-					.createSelectQuery(entityClass, primaryKey, null);
-			SqlParameterSource params = new MapSqlParameterSource("id",
-					primaryKey);
-			RowMapper<T> rowMapper = new JpaRowMapper<T>(entityClass);
-			return template.queryForObject(sql, params, rowMapper);
+			T result = load(entityClass, primaryKey, managed);
+			if (result == null && managed != null) {
+				context.remove(managed);
+			}
+			return result;
 		} catch (Exception e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 
 	}
 
+	/**
+	 * Reads an entity from the second level cache or the database and adds it
+	 * to the persistence context
+	 * 
+	 * @param into
+	 *            a reference to load the state into, or null to return a new
+	 *            instance
+	 * @return null when there is no such row
+	 */
+	private <T> T load(Class<T> entityClass, Object primaryKey, T into)
+			throws Exception {
+		if (actionQueue.isDeleted(entityClass, primaryKey)) {
+			return null;
+		}
+		AssociationLoader loader = createAssociationLoader(entityClass);
+		T row = getCached(entityClass, primaryKey, loader);
+		boolean cached = row != null;
+		long version = getCacheVersion(entityClass);
+		if (row == null) {
+			String sql = helper.createSelectQuery(entityClass, primaryKey,
+					null);
+			SqlParameterSource params = new MapSqlParameterSource("id",
+					helper.getIdParameter(entityClass, primaryKey));
+			RowMapper<T> rowMapper = loader != null ? loader
+					.createRowMapper(entityClass)
+					: createRowMapper(entityClass);
+			List<T> results = template.query(sql, params, rowMapper);
+			if (results.isEmpty()) {
+				return null;
+			}
+			row = results.get(0);
+		}
+		T result = into != null ? into : row;
+		if (into != null) {
+			copyState(row, into);
+		}
+		takeSnapshot(result);
+		Map<ColumnMetadata, Object> foreignKeys = null;
+		if (loader != null) {
+			foreignKeys = loader.getForeignKeys().get(row);
+			// The entity is managed first, so references back to it
+			// resolve to the same instance
+			loader.load();
+			if (into != null) {
+				copyState(row, into);
+			}
+			takeSnapshot(result);
+		}
+		if (cached == false) {
+			putCached(result, foreignKeys, version);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a reference to the entity with the given primary key, without
+	 * reading it. A managed entity is returned as is. Otherwise a new instance
+	 * with only its @Id field set is added to the persistence context; its
+	 * state is loaded by {@link #initialize(Object)}, by
+	 * {@link #find(Class, Object)} or when it is written, which overwrites
+	 * any field set on the reference before.
+	 */
 	public <T> T getReference(Class<T> entityClass, Object primaryKey) {
-		throw new RuntimeException("Not implemented");
+		ColumnMetadata idColumn = EntityMetadata.forClass(entityClass)
+				.requireIdColumn();
+		primaryKey = JdbcJpaHelper.convertId(primaryKey, idColumn.getType());
+		T managed = context.get(entityClass, primaryKey);
+		if (managed != null) {
+			return managed;
+		}
+		try {
+			T reference = entityClass.getDeclaredConstructor().newInstance();
+			idColumn.setValue(reference, primaryKey);
+			context.putReference(reference, primaryKey);
+			return reference;
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Loads the state of a reference returned by
+	 * {@link #getReference(Class, Object)} or of a lazy reference proxy. Does
+	 * nothing for entities that are already loaded.
+	 * 
+	 * @param entity
+	 * @throws EntityNotFoundException
+	 *             when there is no row with the primary key of the reference
+	 */
+	public void initialize(Object entity) {
+		if (entity instanceof LazyReference) {
+			((LazyReference) entity).getReferenceTarget();
+			return;
+		}
+		if (context.isReference(entity) == false) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		Class<Object> entityClass = (Class<Object>) entity.getClass();
+		Object result;
+		Object primaryKey;
+		try {
+			primaryKey = helper.getEntityID(entity);
+			result = load(entityClass, primaryKey, entity);
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		if (result == null) {
+			context.remove(entity);
+			throw new EntityNotFoundException("No "
+					+ entity.getClass().getSimpleName() + " with id "
+					+ primaryKey);
+		}
+	}
+
+	/**
+	 * Loads a column declared with <code>@Basic(fetch = LAZY)</code>, which is
+	 * not read by {@link #find(Class, Object)}, and sets it on the entity. The
+	 * column is not marked as changed.
+	 * 
+	 * @param entity
+	 * @param fieldName
+	 * @return the value of the field
+	 */
+	public Object initialize(Object entity, String fieldName) {
+		EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+		ColumnMetadata column = getMappedColumn(metadata, fieldName);
+		try {
+			Object loaded = findFields(entity.getClass(),
+					helper.getEntityID(entity), fieldName);
+			if (loaded == null) {
+				throw new EntityNotFoundException("No row for " + entity);
+			}
+			Object value = column.getValue(loaded);
+			column.setValue(entity, value);
+
+			int index = metadata.getUpdatableColumns().indexOf(column);
+			if (index >= 0) {
+				context.updateSnapshot(entity,
+						index, helper.getUpdatableState(entity)[index]);
+			}
+			return value;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads only the given fields and the @Id field of an entity, including
+	 * lazy fields. The entity is not managed, because its other fields are
+	 * not loaded.
+	 * 
+	 * @param entityClass
+	 * @param primaryKey
+	 * @param fieldNames
+	 *            names of mapped fields
+	 * @return null when there is no such row
+	 */
+	public <T> T findFields(Class<T> entityClass, Object primaryKey,
+			String... fieldNames) {
+		EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+		List<ColumnMetadata> columns = new ArrayList<ColumnMetadata>();
+		columns.add(metadata.requireIdColumn());
+		for (String fieldName : fieldNames) {
+			columns.add(getMappedColumn(metadata, fieldName));
+		}
+		String sql = helper.createProjectionQuery(entityClass, null, columns);
+		autoFlush();
+		List<T> results = template.query(sql, new MapSqlParameterSource("id",
+				helper.getIdParameter(entityClass, primaryKey)),
+				createRowMapper(entityClass));
+		return results.isEmpty() ? null : results.get(0);
+	}
+
+	private ColumnMetadata getMappedColumn(EntityMetadata metadata,
+			String fieldName) {
+		ColumnMetadata column = metadata.getColumnByField(fieldName);
+		if (column == null || column.isMappedColumn() == false) {
+			throw new IllegalArgumentException(fieldName
+					+ " is not a mapped field of " + metadata);
+		}
+		return column;
+	}
+
+	/**
+	 * False for references and lazy reference proxies whose state was not
+	 * loaded yet
+	 */
+	public boolean isLoaded(Object entity) {
+		return LazyReferences.isInitialized(entity)
+				&& context.isReference(entity) == false;
+	}
+
+	/**
+	 * Returns the managed entity with the given primary key, without loading
+	 * it
+	 */
+	<T> T getManaged(Class<T> entityClass, Object primaryKey) {
+		return context.get(entityClass, primaryKey);
+	}
+
+	private AssociationLoader createAssociationLoader(Class<?> entityClass) {
+		EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+		if (metadata.isEntity()
+				&& (fetchReferences || metadata.hasLazyReferences()
+						|| isCachedWithReferences(entityClass))) {
+			return new AssociationLoader(this, fetchReferences);
+		}
+		return null;
+	}
+
+	/**
+	 * True when the class is cached and has references, whose foreign keys
+	 * are only read by the row mappers of an {@link AssociationLoader}
+	 */
+	private boolean isCachedWithReferences(Class<?> entityClass) {
+		return entityCache != null && entityCache.isCached(entityClass)
+				&& EntityMetadata.forClass(entityClass).getReferences()
+						.isEmpty() == false;
+	}
+
+	/**
+	 * The version of the cache region, taken before reading from the database
+	 */
+	private long getCacheVersion(Class<?> entityClass) {
+		return entityCache != null ? entityCache.getVersion(entityClass) : 0;
+	}
+
+	/**
+	 * Adds an entity read from the database, with its references resolved, to
+	 * the second level cache, unless another entity manager invalidated it
+	 * while it was read
+	 * 
+	 * @param foreignKeys
+	 *            the foreign keys of its references, or null
+	 * @param version
+	 *            the version of the cache region before the read
+	 */
+	private void putCached(Object entity,
+			Map<ColumnMetadata, Object> foreignKeys, long version)
+			throws IllegalAccessException {
+		Object primaryKey = helper.getEntityID(entity);
+		if (entityCache != null
+				&& writtenKeys.contains(new PersistenceContext.EntityKey(entity
+						.getClass(), primaryKey)) == false) {
+			entityCache.put(entity, primaryKey, foreignKeys, version);
+		}
+	}
+
+	/**
+	 * Returns the cached entity, unless this entity manager wrote its row in
+	 * the current transaction: the cache holds committed state only. The
+	 * foreign keys of its references are handed to the loader.
+	 */
+	private <T> T getCached(Class<T> entityClass, Object primaryKey,
+			AssociationLoader loader) {
+		if (entityCache == null
+				|| writtenKeys.contains(new PersistenceContext.EntityKey(
+						entityClass, primaryKey))) {
+			return null;
+		}
+		return entityCache.get(entityClass, primaryKey, loader != null ? loader
+				.getForeignKeyCollector() : null);
+	}
+
+	/**
+	 * Returns the entities with the given primary keys, like
+	 * {@link #find(Class, Object)}. Entities that are not managed or cached are
+	 * loaded with <code>WHERE id IN (...)</code> queries of at most
+	 * {@link #getIdChunkSize()} ids. A smaller last chunk is padded to a power
+	 * of two by repeating its last id, so only a few statement shapes are
+	 * prepared.
+	 * 
+	 * @param entityClass
+	 * @param primaryKeys
+	 * @return the entities by primary key converted to the type of the @Id
+	 *         field, in the order of the primary keys. Primary keys without a
+	 *         row are left out.
+	 */
+	public <T> Map<Object, T> findAll(Class<T> entityClass,
+			Collection<?> primaryKeys) {
+		Map<Object, T> results = new LinkedHashMap<Object, T>();
+		Map<Object, T> loaded = new HashMap<Object, T>();
+		Map<Object, T> references = new HashMap<Object, T>();
+		Set<Object> queried = Collections
+				.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		List<Object> missing = new ArrayList<Object>();
+		AssociationLoader loader = createAssociationLoader(entityClass);
+		Class<?> idType = EntityMetadata.forClass(entityClass).requireIdColumn()
+				.getType();
+		Set<Object> keys = new LinkedHashSet<Object>();
+		for (Object primaryKey : primaryKeys) {
+			keys.add(JdbcJpaHelper.convertId(primaryKey, idType));
+		}
+		long version = getCacheVersion(entityClass);
+		try {
+			for (Object primaryKey : keys) {
+				if (primaryKey == null
+						|| actionQueue.isDeleted(entityClass, primaryKey)) {
+					continue;
+				}
+				T entity = context.get(entityClass, primaryKey);
+				T reference = null;
+				if (entity != null && context.isReference(entity)) {
+					// The state is loaded into the reference, as find does
+					reference = entity;
+					entity = null;
+				}
+				if (entity == null) {
+					if (reference != null) {
+						references.put(primaryKey, reference);
+					}
+					T cached = getCached(entityClass, primaryKey, loader);
+					if (cached != null) {
+						loaded.put(primaryKey, cached);
+						manageLoaded(cached, references.get(primaryKey));
+					} else {
+						missing.add(primaryKey);
+					}
+				}
+				results.put(primaryKey, entity);
+			}
+
+			for (int from = 0; from < missing.size(); from += idChunkSize) {
+				List<Object> chunk = missing.subList(from,
+						Math.min(from + idChunkSize, missing.size()));
+				for (T entity : queryByIds(entityClass, chunk, loader)) {
+					Object primaryKey = helper.getEntityID(entity);
+					if (loaded.containsKey(primaryKey) == false) {
+						loaded.put(primaryKey, entity);
+						queried.add(entity);
+						manageLoaded(entity, references.get(primaryKey));
+					}
+				}
+			}
+			Map<Object, Map<ColumnMetadata, Object>> foreignKeys = Collections
+					.emptyMap();
+			if (loader != null) {
+				foreignKeys = loader.getForeignKeys();
+				loader.load();
+				for (Map.Entry<Object, T> entry : loaded.entrySet()) {
+					manageLoaded(entry.getValue(),
+							references.get(entry.getKey()));
+				}
+			}
+			for (Map.Entry<Object, T> entry : loaded.entrySet()) {
+				if (queried.contains(entry.getValue())) {
+					T reference = references.get(entry.getKey());
+					putCached(reference != null ? reference : entry.getValue(),
+							foreignKeys.get(entry.getValue()), version);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		for (Iterator<Map.Entry<Object, T>> it = results.entrySet().iterator(); it
+				.hasNext();) {
+			Map.Entry<Object, T> entry = it.next();
+			if (entry.getValue() == null) {
+				T entity = loaded.get(entry.getKey());
+				T reference = references.get(entry.getKey());
+				if (entity == null) {
+					it.remove();
+					if (reference != null) {
+						context.remove(reference);
+					}
+				} else {
+					entry.setValue(reference != null ? reference : entity);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Manages a loaded row, or copies its state into the reference it was
+	 * loaded for
+	 */
+	private void manageLoaded(Object row, Object reference)
+			throws IllegalAccessException {
+		if (reference != null) {
+			copyState(row, reference);
+			takeSnapshot(reference);
+		} else {
+			takeSnapshot(row);
+		}
+	}
+
+	private <T> List<T> queryByIds(Class<T> entityClass, List<Object> ids,
+			AssociationLoader loader) {
+		int size = ids.size();
+		if (size < idChunkSize) {
+			size = Math.min(idChunkSize, Integer.highestOneBit(size - 1) << 1);
+			size = Math.max(size, 1);
+		}
+		String sql = helper.createSelectQuery(entityClass, null, size);
+		MapSqlParameterSource params = new MapSqlParameterSource();
+		for (int i = 0; i < size; i++) {
+			params.addValue(EntityStatements.getIdParameterName(i), helper
+					.getIdParameter(entityClass, ids.get(Math.min(i,
+							ids.size() - 1))));
+		}
+		return template.query(sql, params, loader != null ? loader
+				.createRowMapper(entityClass) : createRowMapper(entityClass));
+	}
+
+	/**
+	 * Executes a query and maps its rows one at a time while iterating, using
+	 * the {@link #getFetchSize()}. The entities are not added to the
+	 * persistence context and their references are not loaded, so memory
+	 * stays flat however large the result is. The iterator holds a connection
+	 * until it is exhausted or closed.
+	 * 
+	 * @param entityClass
+	 * @param sql
+	 *            SQL with named parameters
+	 * @param params
+	 *            the parameter values, or null
+	 * @return
+	 */
+	public <T> CloseableIterator<T> iterate(Class<T> entityClass, String sql,
+			Map<String, ?> params) {
+		autoFlush();
+		return ResultSetIterator.open(getJdbcTemplate(), sql,
+				new MapSqlParameterSource(params), createRowMapper(entityClass),
+				fetchSize, 0, 0);
+	}
+
+	/**
+	 * Executes a query like {@link #iterate(Class, String, Map)} and returns
+	 * the rows as a sequential stream. The stream must be closed, preferably
+	 * with try-with-resources, unless it is consumed completely.
+	 * 
+	 * @param entityClass
+	 * @param sql
+	 *            SQL with named parameters
+	 * @param params
+	 *            the parameter values, or null
+	 * @return
+	 */
+	public <T> Stream<T> stream(Class<T> entityClass, String sql,
+			Map<String, ?> params) {
+		final CloseableIterator<T> iterator = iterate(entityClass, sql, params);
+		Stream<T> stream = StreamSupport.stream(Spliterators
+				.spliteratorUnknownSize((Iterator<T>) iterator,
+						Spliterator.ORDERED | Spliterator.NONNULL), false);
+		return stream.onClose(new Runnable() {
+			public void run() {
+				iterator.close();
+			}
+		});
 	}
 
+	private JdbcTemplate getJdbcTemplate() {
+		JdbcOperations operations = template.getJdbcOperations();
+		if (operations instanceof JdbcTemplate == false) {
+			throw new IllegalStateException(
+					"The NamedParameterJdbcTemplate is not backed by a JdbcTemplate");
+		}
+		return (JdbcTemplate) operations;
+	}
+
+	/**
+	 * Executes the operations queued in {@link #setWriteBehind(boolean)
+	 * write-behind} mode: the inserts with {@link #persistAll(Collection)},
+	 * then the updates and the deletes as JDBC batches of at most
+	 * {@link #getBatchSize()} statements. Rows that are deleted and inserted
+	 * again are deleted before the inserts. Inserts are ordered so referenced
+	 * rows are inserted first, deletes so they are deleted last. When a
+	 * statement fails, the operations that were not executed are discarded
+	 * together with the persistence context, whose entities no longer match
+	 * the database.
+	 * 
+	 * @throws EntityNotFoundException
+	 *             when a queued update found no row
+	 */
 	public void flush() {
+		if (actionQueue.isEmpty()) {
+			return;
+		}
+		List<List<ActionQueue.Action>> replaced = actionQueue
+				.getReplacedDeletes();
+		List<Object> inserts = actionQueue.getInserts();
+		List<ActionQueue.Action> updates = actionQueue.getUpdates();
+		List<List<ActionQueue.Action>> deletes = actionQueue.getDeletes();
+		actionQueue.clear();
+		try {
+			// Rows inserted again are deleted before the inserts
+			for (List<ActionQueue.Action> group : replaced) {
+				executeDeletes(group);
+			}
+			if (inserts.isEmpty() == false) {
+				persistAll(inserts);
+			}
+			executeUpdates(updates);
+			for (List<ActionQueue.Action> group : deletes) {
+				executeDeletes(group);
+			}
+		} catch (IllegalAccessException e) {
+			context.clear();
+			throw new RuntimeException(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			context.clear();
+			throw e;
+		}
+	}
+
+	private void executeUpdates(List<ActionQueue.Action> updates)
+			throws IllegalAccessException {
+		Map<String, List<Map<String, ?>>> batches = new LinkedHashMap<String, List<Map<String, ?>>>();
+		Map<String, List<Object>> batchEntities = new HashMap<String, List<Object>>();
+		for (ActionQueue.Action action : updates) {
+			Object entity = action.getEntity();
+			List<ColumnMetadata> columns = action.getColumns();
+			String sql = helper.createUpdateQuery(entity.getClass(), null,
+					columns);
+			if (sql == null) {
+				continue;
+			}
+			if (batches.containsKey(sql) == false) {
+				batches.put(sql, new ArrayList<Map<String, ?>>());
+				batchEntities.put(sql, new ArrayList<Object>());
+			}
+			batches.get(sql).add(helper.getUpdateParameters(entity, columns));
+			batchEntities.get(sql).add(entity);
+		}
+		for (Map.Entry<String, List<Map<String, ?>>> batch : batches
+				.entrySet()) {
+			int[] counts = batchUpdate(batch.getKey(), batch.getValue());
+			List<Object> entities = batchEntities.get(batch.getKey());
+			for (Object entity : entities) {
+				invalidateCache(entity);
+			}
+			for (int i = 0; i < counts.length; i++) {
+				Object entity = entities.get(i);
+				if (counts[i] == 0
+						&& EntityMetadata.forClass(entity.getClass())
+								.isVersioned() == false) {
+					throw new EntityNotFoundException("No row updated for "
+							+ entity);
+				}
+				checkVersionedCount(entity, counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the rows of one entity class. Deletes checked against the
+	 * version are sent as a separate batch, of which every update count is
+	 * checked.
+	 */
+	private void executeDeletes(List<ActionQueue.Action> group)
+			throws IllegalAccessException {
+		Class<?> entityClass = group.get(0).getEntity().getClass();
+		String sql;
+		try {
+			sql = helper.createDeleteQuery(entityClass, null, null);
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+		ColumnMetadata versionColumn = EntityMetadata.forClass(entityClass)
+				.getVersionColumn();
+		List<Map<String, ?>> params = new ArrayList<Map<String, ?>>();
+		List<Map<String, ?>> versionedParams = new ArrayList<Map<String, ?>>();
+		List<ActionQueue.Action> versioned = new ArrayList<ActionQueue.Action>();
+		for (ActionQueue.Action action : group) {
+			Object id = helper.getIdParameter(entityClass,
+					action.getPrimaryKey());
+			if (action.getVersion() == null) {
+				params.add(Collections.singletonMap("id", id));
+				continue;
+			}
+			Map<String, Object> values = new HashMap<String, Object>(4);
+			values.put("id", id);
+			values.put(versionColumn.getColumnName(), action.getVersion());
+			versionedParams.add(values);
+			versioned.add(action);
+		}
+		if (params.isEmpty() == false) {
+			batchUpdate(sql, params);
+		}
+		for (ActionQueue.Action action : group) {
+			invalidateCache(entityClass, action.getPrimaryKey());
+		}
+		if (versionedParams.isEmpty() == false) {
+			int[] counts = batchUpdate(
+					helper.createVersionedDeleteQuery(entityClass, null),
+					versionedParams);
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] == 0) {
+					throw staleVersion(versioned.get(i).getEntity(), versioned
+							.get(i).getVersion());
+				}
+			}
+		}
+	}
 
+	/**
+	 * Executes the statement with every parameter map, in JDBC batches of at
+	 * most {@link #getBatchSize()} statements
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private int[] batchUpdate(String sql, List<Map<String, ?>> params) {
+		int[] counts = new int[params.size()];
+		for (int from = 0; from < params.size(); from += batchSize) {
+			List<Map<String, ?>> chunk = params.subList(from,
+					Math.min(from + batchSize, params.size()));
+			int[] chunkCounts = template.batchUpdate(sql,
+					chunk.toArray(new Map[chunk.size()]));
+			System.arraycopy(chunkCounts, 0, counts, from, chunkCounts.length);
+		}
+		return counts;
+	}
+
+	/**
+	 * Flushes before a query when the flush mode is
+	 * {@link FlushModeType#AUTO}, so the query sees the queued writes
+	 */
+	private void autoFlush() {
+		if (flushMode == FlushModeType.AUTO) {
+			flush();
+		}
 	}
 
+	/**
+	 * AUTO, the default, flushes the queued writes before every query that is
+	 * not answered from the persistence context. COMMIT only flushes on
+	 * {@link #flush()}.
+	 */
 	public void setFlushMode(FlushModeType flushMode) {
-		throw new RuntimeException("Not implemented");
+		if (flushMode == null) {
+			throw new IllegalArgumentException("flushMode is null");
+		}
+		this.flushMode = flushMode;
 	}
 
 	public FlushModeType getFlushMode() {
-		throw new RuntimeException("Not implemented");
+		return flushMode;
+	}
+
+	public boolean isWriteBehind() {
+		return writeBehind;
 	}
 
+	/**
+	 * In write-behind mode {@link #persist(Object)}, {@link #remove(Object)},
+	 * {@link #merge(Object)} and {@link #update(Object)} of managed entities
+	 * are queued and executed in batches by {@link #flush()}. Redundant
+	 * operations are coalesced, e.g. a persist followed by a remove of the
+	 * same entity writes nothing. Operations that cannot be queued, such as
+	 * {@link #persistAll(Collection)} and inserts of IDENTITY ids, flush the
+	 * queue first. Turning write-behind off flushes the queue.
+	 */
+	public void setWriteBehind(boolean writeBehind) {
+		if (writeBehind == false) {
+			flush();
+		}
+		this.writeBehind = writeBehind;
+	}
+
+	/**
+	 * Locks a managed entity, after flushing the queued writes:
+	 * <ul>
+	 * <li><code>READ</code> and <code>OPTIMISTIC</code> check that the version
+	 * of the row equals the version of the entity</li>
+	 * <li><code>WRITE</code> and <code>OPTIMISTIC_FORCE_INCREMENT</code> also
+	 * increment the version, so concurrent writers of the entity fail</li>
+	 * <li><code>PESSIMISTIC_READ</code> and <code>PESSIMISTIC_WRITE</code> lock
+	 * the row until the end of the transaction with the lock query of the
+	 * {@link #getDialect()}, checking the version of a versioned entity;
+	 * <code>PESSIMISTIC_FORCE_INCREMENT</code> also increments it</li>
+	 * </ul>
+	 * Optimistic locks are checked immediately, not when the transaction
+	 * commits. The modes are matched by name, so the modes added by JPA 2
+	 * are supported with any version of the API.
+	 * 
+	 * @throws OptimisticLockException
+	 *             when the version of the entity is not current
+	 * @throws PersistenceException
+	 *             for an optimistic lock of an entity without @Version field
+	 * @throws IllegalStateException
+	 *             for a pessimistic lock outside a transaction
+	 */
 	public void lock(Object entity, LockModeType lockMode) {
-		throw new RuntimeException("Not implemented");
+		lock(entity, lockMode.name());
+	}
+
+	void lock(Object entity, String lockMode) {
+		if (context.contains(entity) == false) {
+			throw new IllegalArgumentException("Entity is not managed: "
+					+ entity);
+		}
+		if (lockMode.equals("NONE")) {
+			return;
+		}
+		flush();
+		Class<?> entityClass = entity.getClass();
+		EntityMetadata metadata = EntityMetadata.forClass(entityClass);
+		boolean forceIncrement = lockMode.equals("WRITE")
+				|| lockMode.endsWith("FORCE_INCREMENT");
+		try {
+			MapSqlParameterSource id = new MapSqlParameterSource("id",
+					helper.getIdParameter(entityClass,
+							helper.getEntityID(entity)));
+			String sql;
+			if (lockMode.startsWith("PESSIMISTIC")) {
+				if (TransactionSynchronizationManager
+						.isActualTransactionActive() == false) {
+					throw new IllegalStateException(
+							"A pessimistic lock needs an active transaction");
+				}
+				sql = helper.createLockQuery(entityClass, null, getDialect());
+			} else if (metadata.isVersioned()) {
+				sql = helper.createVersionQuery(entityClass, null);
+			} else {
+				throw new PersistenceException(
+						"An optimistic lock needs a @Version field: "
+								+ entityClass.getName());
+			}
+
+			List<Object> rows = template.queryForList(sql, id, Object.class);
+			if (rows.isEmpty()) {
+				throw new EntityNotFoundException("No row found for " + entity);
+			}
+			if (metadata.isVersioned() == false) {
+				return;
+			}
+			Number version = helper.getVersion(entity);
+			Object current = rows.get(0);
+			if (current instanceof Number == false || version == null
+					|| ((Number) current).longValue() != version.longValue()) {
+				throw staleVersion(entity, version);
+			}
+			if (forceIncrement) {
+				int count = template.update(
+						helper.createIncrementVersionQuery(entityClass, null),
+						helper.getVersionParameters(entity));
+				invalidateCache(entity);
+				checkVersionedCount(entity, count);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
 	}
 
 	public void refresh(Object entity) {
 		throw new RuntimeException("Not implemented");
 	}
 
+	/**
+	 * Releases all entities loaded or written by this entity manager and
+	 * discards the writes that were not flushed
+	 */
 	public void clear() {
+		context.clear();
+		actionQueue.clear();
 	}
 
+	/**
+	 * True when the entity instance was loaded or written by this entity
+	 * manager and has not been removed or cleared since
+	 */
 	public boolean contains(Object entity) {
-		throw new RuntimeException("Not implemented");
+		return context.contains(entity);
 	}
 
 	public Query createQuery(String qlString) {
@@ -125,20 +1704,74 @@ public class SimpleJpaEntityManager implements EntityManager {
 		throw new RuntimeException("Not implemented");
 	}
 
+	/**
+	 * Creates a native SQL query with named parameters. Every row is returned
+	 * as the value of its single column, or as an <code>Object[]</code>.
+	 * 
+	 * @see NativeQuery
+	 */
 	public Query createNativeQuery(String sqlString) {
-		throw new RuntimeException("Not implemented");
+		return new NativeQuery(getJdbcTemplate(), getDialect(), sqlString,
+				new ScalarRowMapper(), fetchSize).setEntityManager(this)
+				.setEntityCache(entityCache);
 	}
 
+	/**
+	 * Creates a native SQL query with named parameters, mapping every row to
+	 * the result class with its JPA annotations. A result class without
+	 * @Entity annotation is mapped as a DTO by {@link DtoRowMapper}.
+	 * 
+	 * @see NativeQuery
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public Query createNativeQuery(String sqlString, Class resultClass) {
-		throw new RuntimeException("Not implemented");
+		AssociationLoader loader = createAssociationLoader(resultClass);
+		if (loader != null) {
+			return new NativeQuery(getJdbcTemplate(), getDialect(), sqlString,
+					loader.createRowMapper(resultClass), fetchSize, loader)
+					.setEntityManager(this).setEntityCache(entityCache);
+		}
+		return new NativeQuery(getJdbcTemplate(), getDialect(), sqlString,
+				createRowMapper(resultClass), fetchSize).setEntityManager(this)
+				.setEntityCache(entityCache);
 	}
 
 	public Query createNativeQuery(String sqlString, String resultSetMapping) {
 		throw new RuntimeException("Not implemented");
 	}
 
+	/**
+	 * Joins the Spring transaction of the current thread: the queued writes
+	 * are flushed before it commits, and discarded together with the
+	 * persistence context when it rolls back. Joining the same transaction
+	 * again has no effect.
+	 * 
+	 * @throws IllegalStateException
+	 *             when no Spring transaction is active
+	 */
 	public void joinTransaction() {
-		throw new RuntimeException("Not implemented");
+		if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+			throw new IllegalStateException("No transaction is active");
+		}
+		if (joined) {
+			return;
+		}
+		joined = true;
+		TransactionSynchronizationManager
+				.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void beforeCommit(boolean readOnly) {
+						SimpleJpaEntityManager.this.flush();
+					}
+
+					@Override
+					public void afterCompletion(int status) {
+						joined = false;
+						if (status != TransactionSynchronization.STATUS_COMMITTED) {
+							SimpleJpaEntityManager.this.clear();
+						}
+					}
+				});
 	}
 
 	public Object getDelegate() {
@@ -153,8 +1786,40 @@ public class SimpleJpaEntityManager implements EntityManager {
 		throw new RuntimeException("Not implemented");
 	}
 
+	/**
+	 * The resource-local transaction of this entity manager, which binds one
+	 * connection for the unit of work
+	 * 
+	 * @see SimpleJpaEntityTransaction
+	 */
 	public EntityTransaction getTransaction() {
-		throw new RuntimeException("Not implemented");
+		if (transaction == null) {
+			transaction = new SimpleJpaEntityTransaction(this);
+		}
+		return transaction;
+	}
+
+	/**
+	 * The transaction manager of {@link #getTransaction()}, by default a
+	 * <code>DataSourceTransactionManager</code> of the data source of the
+	 * template
+	 */
+	public PlatformTransactionManager getTransactionManager() {
+		if (transactionManager == null) {
+			transactionManager = new DataSourceTransactionManager(
+					getJdbcTemplate().getDataSource());
+		}
+		return transactionManager;
+	}
+
+	/**
+	 * Sets the transaction manager of {@link #getTransaction()}, which should
+	 * manage the data source of the template, e.g. the transaction manager of
+	 * the application
+	 */
+	public void setTransactionManager(
+			PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
 	}
 
 }
@@ -7,15 +7,77 @@ import javax.persistence.EntityManagerFactory;
 
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 
+import com.github.simplejpatemplate.cache.EntityCache;
+import com.github.simplejpatemplate.dialect.Dialect;
+import com.github.simplejpatemplate.generator.SequenceAllocator;
+
 public class SimpleJpaEntityManagerFactory implements EntityManagerFactory {
 	private final NamedParameterJdbcTemplate template;
+	private final SequenceAllocator sequenceAllocator = new SequenceAllocator();
+	private volatile EntityCache entityCache;
+	private volatile Dialect dialect;
 
 	public SimpleJpaEntityManagerFactory(NamedParameterJdbcTemplate template) {
 		this.template = template;
 	}
 
+	/**
+	 * Creates an entity manager sharing the second level cache, the sequence
+	 * allocator and the dialect of this factory
+	 */
 	public EntityManager createEntityManager() {
-		return new SimpleJpaEntityManager(template);
+		SimpleJpaEntityManager entityManager = new SimpleJpaEntityManager(
+				template, entityCache);
+		entityManager.setSequenceAllocator(sequenceAllocator);
+		entityManager.setDialect(getDialect());
+		return entityManager;
+	}
+
+	/**
+	 * The allocator of SEQUENCE ids shared by the entity managers of this
+	 * factory
+	 */
+	public SequenceAllocator getSequenceAllocator() {
+		return sequenceAllocator;
+	}
+
+	/**
+	 * The dialect shared by the entity managers of this factory, detected from
+	 * the data source once unless it is set
+	 */
+	public Dialect getDialect() {
+		Dialect result = dialect;
+		if (result == null) {
+			result = SimpleJpaEntityManager.detectDialect(template);
+			dialect = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the dialect used by entity managers created from now on
+	 * 
+	 * @param dialect
+	 */
+	public void setDialect(Dialect dialect) {
+		this.dialect = dialect;
+	}
+
+	/**
+	 * The second level cache shared by the entity managers of this factory, or
+	 * null when there is none
+	 */
+	public EntityCache getEntityCache() {
+		return entityCache;
+	}
+
+	/**
+	 * Sets the second level cache used by entity managers created from now on
+	 * 
+	 * @param entityCache
+	 */
+	public void setEntityCache(EntityCache entityCache) {
+		this.entityCache = entityCache;
 	}
 
 	public EntityManager createEntityManager(Map map) {
@@ -0,0 +1,99 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * The resource-local transaction of a {@link SimpleJpaEntityManager}, started
+ * with the Spring <code>PlatformTransactionManager</code> of the entity
+ * manager. With a <code>DataSourceTransactionManager</code> one connection is
+ * bound to the thread from {@link #begin()} until {@link #commit()} or
+ * {@link #rollback()}, so every statement of the unit of work uses that
+ * connection and the writes are committed together. A transaction begun while
+ * a Spring transaction is active joins it.
+ * <p>
+ * {@link #commit()} flushes the queued writes of the entity manager first;
+ * {@link #rollback()} discards them and clears the persistence context, as
+ * its entities may hold state that was never committed.
+ */
+final class SimpleJpaEntityTransaction implements EntityTransaction {
+	private final SimpleJpaEntityManager entityManager;
+	private TransactionStatus status;
+
+	SimpleJpaEntityTransaction(SimpleJpaEntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	public void begin() {
+		if (isActive()) {
+			throw new IllegalStateException("Transaction is already active");
+		}
+		PlatformTransactionManager transactionManager = entityManager
+				.getTransactionManager();
+		status = transactionManager
+				.getTransaction(new DefaultTransactionDefinition());
+	}
+
+	/**
+	 * Flushes the entity manager and commits. A transaction marked for
+	 * rollback, or of which the flush fails, is rolled back.
+	 *
+	 * @throws RollbackException
+	 *             when the transaction was rolled back instead
+	 */
+	public void commit() {
+		TransactionStatus current = activeStatus();
+		if (current.isRollbackOnly()) {
+			rollback();
+			throw new RollbackException(
+					"Transaction was marked for rollback only");
+		}
+		try {
+			entityManager.flush();
+		} catch (RuntimeException e) {
+			rollback();
+			throw new RollbackException(e.getMessage(), e);
+		}
+		status = null;
+		try {
+			entityManager.getTransactionManager().commit(current);
+		} catch (RuntimeException e) {
+			// The transaction manager already rolled back
+			entityManager.clear();
+			throw new RollbackException(e.getMessage(), e);
+		}
+	}
+
+	public void rollback() {
+		TransactionStatus current = activeStatus();
+		status = null;
+		try {
+			entityManager.getTransactionManager().rollback(current);
+		} finally {
+			entityManager.clear();
+		}
+	}
+
+	public void setRollbackOnly() {
+		activeStatus().setRollbackOnly();
+	}
+
+	public boolean getRollbackOnly() {
+		return activeStatus().isRollbackOnly();
+	}
+
+	public boolean isActive() {
+		return status != null;
+	}
+
+	private TransactionStatus activeStatus() {
+		if (status == null) {
+			throw new IllegalStateException("Transaction is not active");
+		}
+		return status;
+	}
+}
@@ -0,0 +1,48 @@
+package com.github.simplejpatemplate.accessor;
+
+/**
+ * Reads and writes one field of an entity class. Accessors are created once
+ * per field by a {@link FieldAccessorFactory} and shared between threads.
+ */
+public interface FieldAccessor {
+	/**
+	 * Returns the field value of the given entity
+	 * 
+	 * @param target
+	 * @return
+	 */
+	Object get(Object target);
+
+	/**
+	 * Sets the field value of the given entity
+	 * 
+	 * @param target
+	 * @param value
+	 * @throws IllegalArgumentException
+	 *             when the value does not match the field type
+	 */
+	void set(Object target, Object value);
+
+	/**
+	 * Sets an <code>int</code> field without boxing the value
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when the field cannot hold an <code>int</code>
+	 */
+	void setInt(Object target, int value);
+
+	/**
+	 * Sets a <code>long</code> field without boxing the value
+	 */
+	void setLong(Object target, long value);
+
+	/**
+	 * Sets a <code>double</code> field without boxing the value
+	 */
+	void setDouble(Object target, double value);
+
+	/**
+	 * Sets a <code>boolean</code> field without boxing the value
+	 */
+	void setBoolean(Object target, boolean value);
+}
@@ -0,0 +1,19 @@
+package com.github.simplejpatemplate.accessor;
+
+import java.lang.reflect.Field;
+
+/**
+ * Strategy for creating {@link FieldAccessor}s
+ * 
+ * @see FieldAccessors#setFactory(FieldAccessorFactory)
+ */
+public interface FieldAccessorFactory {
+	/**
+	 * Creates an accessor for the given field. The field has already been made
+	 * accessible.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	FieldAccessor createAccessor(Field field);
+}
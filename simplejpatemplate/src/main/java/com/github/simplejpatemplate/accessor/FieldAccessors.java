@@ -0,0 +1,39 @@
+package com.github.simplejpatemplate.accessor;
+
+import java.lang.reflect.Field;
+
+/**
+ * Holds the {@link FieldAccessorFactory} used when entity metadata is
+ * resolved. Defaults to {@link MethodHandleFieldAccessorFactory}.
+ * <p>
+ * The factory must be set before the first entity class is used; metadata
+ * that has already been resolved keeps its accessors.
+ */
+public final class FieldAccessors {
+	private static volatile FieldAccessorFactory factory = new MethodHandleFieldAccessorFactory();
+
+	private FieldAccessors() {
+	}
+
+	public static FieldAccessorFactory getFactory() {
+		return factory;
+	}
+
+	public static void setFactory(FieldAccessorFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory is null");
+		}
+		FieldAccessors.factory = factory;
+	}
+
+	/**
+	 * Creates an accessor for the given field using the current factory
+	 * 
+	 * @param field
+	 * @return
+	 */
+	public static FieldAccessor createAccessor(Field field) {
+		field.setAccessible(true);
+		return factory.createAccessor(field);
+	}
+}
@@ -0,0 +1,180 @@
+package com.github.simplejpatemplate.accessor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Creates accessors backed by field getter and setter {@link MethodHandle}s.
+ * The handles are adapted to an exact <code>(Object)Object</code> and
+ * <code>(Object,Object)void</code> type once, so every access is a plain
+ * <code>invokeExact</code> the JIT can inline, without the access checks and
+ * argument array of <code>Field.get</code> and <code>Field.set</code>. Fields
+ * of type <code>int</code>, <code>long</code>, <code>double</code> and
+ * <code>boolean</code> also get a setter of the exact primitive type, so the
+ * primitive setters do not box.
+ * <p>
+ * Fields for which no handle can be created fall back to reflection.
+ */
+public class MethodHandleFieldAccessorFactory implements FieldAccessorFactory {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(
+			Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(
+			void.class, Object.class, Object.class);
+
+	private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	private final FieldAccessorFactory fallback = new ReflectionFieldAccessorFactory();
+
+	public FieldAccessor createAccessor(Field field) {
+		try {
+			MethodHandle getter = lookup.unreflectGetter(field).asType(
+					GETTER_TYPE);
+			MethodHandle setter = lookup.unreflectSetter(field);
+			MethodHandle primitiveSetter = null;
+			Class<?> type = field.getType();
+			if (type == int.class || type == long.class
+					|| type == double.class || type == boolean.class) {
+				primitiveSetter = setter.asType(MethodType.methodType(
+						void.class, Object.class, type));
+			}
+			return new MethodHandleFieldAccessor(field, getter,
+					setter.asType(SETTER_TYPE), primitiveSetter);
+		} catch (IllegalAccessException e) {
+			return fallback.createAccessor(field);
+		} catch (RuntimeException e) {
+			return fallback.createAccessor(field);
+		}
+	}
+
+	private static final class MethodHandleFieldAccessor implements
+			FieldAccessor {
+		private final Field field;
+		private final MethodHandle getter;
+		private final MethodHandle setter;
+		private final MethodHandle primitiveSetter;
+		private final Class<?> type;
+
+		MethodHandleFieldAccessor(Field field, MethodHandle getter,
+				MethodHandle setter, MethodHandle primitiveSetter) {
+			this.field = field;
+			this.getter = getter;
+			this.setter = setter;
+			this.primitiveSetter = primitiveSetter;
+			this.type = field.getType();
+		}
+
+		public Object get(Object target) {
+			try {
+				return (Object) getter.invokeExact(target);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not get " + field
+						+ " on " + target, e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void set(Object target, Object value) {
+			try {
+				setter.invokeExact(target, value);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not set " + field
+						+ " to " + value, e);
+			} catch (NullPointerException e) {
+				if (target == null) {
+					throw e;
+				}
+				// Unboxing null into a primitive field
+				throw new IllegalArgumentException("Can not set " + field
+						+ " to null", e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setInt(Object target, int value) {
+			if (type != int.class) {
+				set(target, Integer.valueOf(value));
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(target, value);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not set " + field
+						+ " on " + target, e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setLong(Object target, long value) {
+			if (type != long.class) {
+				set(target, Long.valueOf(value));
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(target, value);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not set " + field
+						+ " on " + target, e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setDouble(Object target, double value) {
+			if (type != double.class) {
+				set(target, Double.valueOf(value));
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(target, value);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not set " + field
+						+ " on " + target, e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setBoolean(Object target, boolean value) {
+			if (type != boolean.class) {
+				set(target, Boolean.valueOf(value));
+				return;
+			}
+			try {
+				primitiveSetter.invokeExact(target, value);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException("Can not set " + field
+						+ " on " + target, e);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.simplejpatemplate.accessor;
+
+import java.lang.reflect.Field;
+
+/**
+ * Creates accessors using {@link Field#get(Object)} and
+ * {@link Field#set(Object, Object)}. This works for every field and is the
+ * fallback of the other strategies.
+ */
+public class ReflectionFieldAccessorFactory implements FieldAccessorFactory {
+
+	public FieldAccessor createAccessor(Field field) {
+		return new ReflectionFieldAccessor(field);
+	}
+
+	private static final class ReflectionFieldAccessor implements FieldAccessor {
+		private final Field field;
+
+		ReflectionFieldAccessor(Field field) {
+			this.field = field;
+		}
+
+		public Object get(Object target) {
+			try {
+				return field.get(target);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void set(Object target, Object value) {
+			try {
+				field.set(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setInt(Object target, int value) {
+			try {
+				field.setInt(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setLong(Object target, long value) {
+			try {
+				field.setLong(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setDouble(Object target, double value) {
+			try {
+				field.setDouble(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		public void setBoolean(Object target, boolean value) {
+			try {
+				field.setBoolean(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.simplejpatemplate.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a JDBC batch fails. Carries the batches that completed before
+ * the failure, the failed batch with the update counts the driver reported for
+ * it and the entities that were not written.
+ * <p>
+ * Whether the completed batches are committed depends on the surrounding
+ * transaction; in auto-commit mode they are.
+ */
+public class BatchPersistException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final BatchResult completed;
+	private final BatchResult.Batch failedBatch;
+	private final List<Object> unprocessed;
+
+	public BatchPersistException(String message, Throwable cause,
+			BatchResult completed, BatchResult.Batch failedBatch,
+			List<?> unprocessed) {
+		super(message, cause);
+		this.completed = completed;
+		this.failedBatch = failedBatch;
+		this.unprocessed = Collections
+				.unmodifiableList(new ArrayList<Object>(unprocessed));
+	}
+
+	/**
+	 * The batches that were executed successfully before the failure
+	 */
+	public BatchResult getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * The batch that failed, with the partial update counts of the driver
+	 */
+	public BatchResult.Batch getFailedBatch() {
+		return failedBatch;
+	}
+
+	/**
+	 * The entities of the failed batch that were not written, followed by all
+	 * entities of the batches that were never sent
+	 */
+	public List<Object> getFailedEntities() {
+		List<Object> failed = new ArrayList<Object>(
+				failedBatch.getFailedEntities());
+		failed.addAll(unprocessed);
+		return failed;
+	}
+}
@@ -0,0 +1,109 @@
+package com.github.simplejpatemplate.batch;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batched write: one {@link Batch} per JDBC batch that was
+ * sent to the database, in execution order
+ */
+public class BatchResult {
+	private final List<Batch> batches = new ArrayList<Batch>();
+
+	public void add(Batch batch) {
+		batches.add(batch);
+	}
+
+	public List<Batch> getBatches() {
+		return Collections.unmodifiableList(batches);
+	}
+
+	/**
+	 * The number of entities in all batches
+	 */
+	public int getEntityCount() {
+		int count = 0;
+		for (Batch batch : batches) {
+			count += batch.getEntities().size();
+		}
+		return count;
+	}
+
+	/**
+	 * The sum of all known update counts. Statements for which the driver
+	 * reports {@link Statement#SUCCESS_NO_INFO} are not counted.
+	 */
+	public int getTotalUpdateCount() {
+		int count = 0;
+		for (Batch batch : batches) {
+			count += batch.getTotalUpdateCount();
+		}
+		return count;
+	}
+
+	/**
+	 * One JDBC batch: the statement, the entities bound to it and the update
+	 * count of every entity as reported by the driver
+	 */
+	public static class Batch {
+		private final Class<?> entityClass;
+		private final String sql;
+		private final List<?> entities;
+		private final int[] updateCounts;
+
+		public Batch(Class<?> entityClass, String sql, List<?> entities,
+				int[] updateCounts) {
+			this.entityClass = entityClass;
+			this.sql = sql;
+			this.entities = entities;
+			this.updateCounts = updateCounts;
+		}
+
+		public Class<?> getEntityClass() {
+			return entityClass;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public List<?> getEntities() {
+			return entities;
+		}
+
+		/**
+		 * The update counts, one per executed statement. After a failure the
+		 * array may be shorter than the entity list when the driver stopped
+		 * at the first failing statement.
+		 */
+		public int[] getUpdateCounts() {
+			return updateCounts;
+		}
+
+		public int getTotalUpdateCount() {
+			int count = 0;
+			for (int i = 0; i < updateCounts.length; i++) {
+				if (updateCounts[i] > 0) {
+					count += updateCounts[i];
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * The entities whose statement failed or was never executed
+		 */
+		public List<Object> getFailedEntities() {
+			List<Object> failed = new ArrayList<Object>();
+			for (int i = 0; i < entities.size(); i++) {
+				if (i >= updateCounts.length
+						|| updateCounts[i] == Statement.EXECUTE_FAILED) {
+					failed.add(entities.get(i));
+				}
+			}
+			return failed;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.github.simplejpatemplate.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The size, time to live and eviction policy of the cache region of one entity
+ * class
+ */
+public final class CacheRegionConfig {
+	private final int maxSize;
+	private final long timeToLiveMillis;
+	private final EvictionPolicy evictionPolicy;
+
+	/**
+	 * @param maxSize
+	 *            the maximum number of cached entities
+	 * @param timeToLive
+	 *            how long an entity stays cached after it was loaded, 0 for no
+	 *            limit
+	 * @param unit
+	 * @param evictionPolicy
+	 */
+	public CacheRegionConfig(int maxSize, long timeToLive, TimeUnit unit,
+			EvictionPolicy evictionPolicy) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException("timeToLive is negative");
+		}
+		if (evictionPolicy == null) {
+			throw new IllegalArgumentException("evictionPolicy is null");
+		}
+		this.maxSize = maxSize;
+		this.timeToLiveMillis = unit.toMillis(timeToLive);
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * An LRU region without time to live
+	 */
+	public static CacheRegionConfig lru(int maxSize) {
+		return new CacheRegionConfig(maxSize, 0, TimeUnit.MILLISECONDS,
+				EvictionPolicy.LRU);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * The time to live in milliseconds, 0 when entries never expire
+	 */
+	public long getTimeToLiveMillis() {
+		return timeToLiveMillis;
+	}
+
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+}
@@ -0,0 +1,84 @@
+package com.github.simplejpatemplate.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit, miss, put, eviction and invalidation counters of an entity cache
+ * region. Evictions include entries removed because their time to live
+ * expired.
+ */
+public class CacheStatistics {
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	void hit() {
+		hits.incrementAndGet();
+	}
+
+	void miss() {
+		misses.incrementAndGet();
+	}
+
+	void put() {
+		puts.incrementAndGet();
+	}
+
+	void eviction() {
+		evictions.incrementAndGet();
+	}
+
+	void invalidation() {
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Adds the counters of the given statistics to these
+	 */
+	void add(CacheStatistics other) {
+		hits.addAndGet(other.getHitCount());
+		misses.addAndGet(other.getMissCount());
+		puts.addAndGet(other.getPutCount());
+		evictions.addAndGet(other.getEvictionCount());
+		invalidations.addAndGet(other.getInvalidationCount());
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getPutCount() {
+		return puts.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	/**
+	 * Hits divided by lookups, 0 when there were no lookups
+	 */
+	public double getHitRatio() {
+		long hitCount = getHitCount();
+		long lookups = hitCount + getMissCount();
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + getHitCount() + ", misses=" + getMissCount()
+				+ ", puts=" + getPutCount() + ", evictions="
+				+ getEvictionCount() + ", invalidations="
+				+ getInvalidationCount();
+	}
+}
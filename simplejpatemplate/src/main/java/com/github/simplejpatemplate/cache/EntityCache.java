@@ -0,0 +1,253 @@
+package com.github.simplejpatemplate.cache;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.rowmapper.ForeignKeyCollector;
+
+/**
+ * A second level cache of loaded entities, shared by all entity managers of a
+ * {@link com.github.simplejpatemplate.SimpleJpaEntityManagerFactory}. Only
+ * classes with a {@link CacheRegionConfig} are cached.
+ * <p>
+ * The cache holds copies of the column values, never the entity instances
+ * themselves: every hit creates a new instance, so entity managers do not
+ * share mutable state. Relation fields are not cached; the foreign keys of the
+ * references are cached instead and handed to a {@link ForeignKeyCollector}
+ * on a hit, so the references are resolved as when the entity is read from
+ * the database. Entries are invalidated when an
+ * entity is written through an entity manager; writes done around the
+ * library are only picked up when the entry expires.
+ */
+public class EntityCache {
+	private final ConcurrentMap<Class<?>, EntityCacheRegion> regions = new ConcurrentHashMap<Class<?>, EntityCacheRegion>();
+
+	/**
+	 * Enables caching of the given entity class. Replaces an existing region
+	 * and its content.
+	 * 
+	 * @param entityClass
+	 * @param config
+	 * @throws IllegalArgumentException
+	 *             when the class has stream or LOB columns, which are only
+	 *             valid while their row or transaction is open
+	 */
+	public void configure(Class<?> entityClass, CacheRegionConfig config) {
+		if (EntityMetadata.forClass(entityClass).hasLobColumns()) {
+			throw new IllegalArgumentException(entityClass.getName()
+					+ " has stream or LOB columns and cannot be cached");
+		}
+		regions.put(entityClass, new EntityCacheRegion(config));
+	}
+
+	/**
+	 * True when the entity class is cached
+	 */
+	public boolean isCached(Class<?> entityClass) {
+		return regions.containsKey(entityClass);
+	}
+
+	/**
+	 * Returns a new instance with the cached state, or null
+	 * 
+	 * @param entityClass
+	 * @param primaryKey
+	 * @return
+	 */
+	public <T> T get(Class<T> entityClass, Object primaryKey) {
+		return get(entityClass, primaryKey, null);
+	}
+
+	/**
+	 * Returns a new instance with the cached state, or null. The cached
+	 * foreign keys of its references are added to the collector.
+	 * 
+	 * @param entityClass
+	 * @param primaryKey
+	 * @param foreignKeys
+	 *            receives the foreign keys of the references, or null
+	 * @return
+	 */
+	public <T> T get(Class<T> entityClass, Object primaryKey,
+			ForeignKeyCollector foreignKeys) {
+		EntityCacheRegion region = regions.get(entityClass);
+		if (region == null || primaryKey == null) {
+			return null;
+		}
+		Object[] values = region.get(primaryKey);
+		if (values == null) {
+			return null;
+		}
+		T entity = hydrate(entityClass, values);
+		if (foreignKeys != null) {
+			List<ColumnMetadata> references = EntityMetadata.forClass(
+					entityClass).getReferences();
+			int offset = values.length - references.size();
+			for (int i = 0; i < references.size(); i++) {
+				if (values[offset + i] != null) {
+					foreignKeys.add(entity, references.get(i), values[offset
+							+ i]);
+				}
+			}
+		}
+		return entity;
+	}
+
+	/**
+	 * Caches a copy of the state of a loaded entity, without foreign keys
+	 * 
+	 * @param entity
+	 * @param primaryKey
+	 */
+	public void put(Object entity, Object primaryKey) {
+		EntityCacheRegion region = regions.get(entity.getClass());
+		if (region == null || primaryKey == null) {
+			return;
+		}
+		region.put(primaryKey, dehydrate(entity, null));
+	}
+
+	/**
+	 * Caches a copy of the state of a loaded entity and the foreign keys of
+	 * its references, unless the entity was invalidated after it was read
+	 * 
+	 * @param entity
+	 * @param primaryKey
+	 * @param foreignKeys
+	 *            the foreign key values by reference, or null when there are
+	 *            none
+	 * @param version
+	 *            the {@link #getVersion(Class)} taken before the entity was
+	 *            read
+	 */
+	public void put(Object entity, Object primaryKey,
+			Map<ColumnMetadata, Object> foreignKeys, long version) {
+		EntityCacheRegion region = regions.get(entity.getClass());
+		if (region == null || primaryKey == null) {
+			return;
+		}
+		region.put(primaryKey, dehydrate(entity, foreignKeys), version);
+	}
+
+	/**
+	 * The version of the region of the given class, to be taken before an
+	 * entity is read from the database. A read that overlaps a write of the
+	 * same entity is then not cached. 0 when the class is not cached.
+	 */
+	public long getVersion(Class<?> entityClass) {
+		EntityCacheRegion region = regions.get(entityClass);
+		return region != null ? region.getVersion() : 0;
+	}
+
+	/**
+	 * Removes the entity with the given primary key
+	 */
+	public void invalidate(Class<?> entityClass, Object primaryKey) {
+		EntityCacheRegion region = regions.get(entityClass);
+		if (region != null && primaryKey != null) {
+			region.invalidate(primaryKey);
+		}
+	}
+
+	/**
+	 * Removes all entities of the given class
+	 */
+	public void invalidateAll(Class<?> entityClass) {
+		EntityCacheRegion region = regions.get(entityClass);
+		if (region != null) {
+			region.clear();
+		}
+	}
+
+	/**
+	 * Removes all entities
+	 */
+	public void clear() {
+		for (EntityCacheRegion region : regions.values()) {
+			region.clear();
+		}
+	}
+
+	/**
+	 * The region of the given class, or null when it is not cached
+	 */
+	public EntityCacheRegion getRegion(Class<?> entityClass) {
+		return regions.get(entityClass);
+	}
+
+	/**
+	 * The counters of one entity class, or null when it is not cached
+	 */
+	public CacheStatistics getStatistics(Class<?> entityClass) {
+		EntityCacheRegion region = regions.get(entityClass);
+		return region != null ? region.getStatistics() : null;
+	}
+
+	/**
+	 * The sum of the counters of all regions
+	 */
+	public CacheStatistics getStatistics() {
+		CacheStatistics total = new CacheStatistics();
+		for (EntityCacheRegion region : regions.values()) {
+			total.add(region.getStatistics());
+		}
+		return total;
+	}
+
+	/**
+	 * The values of the mapped columns followed by the foreign keys of the
+	 * references
+	 */
+	private Object[] dehydrate(Object entity,
+			Map<ColumnMetadata, Object> foreignKeys) {
+		EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+		List<ColumnMetadata> columns = metadata.getMappedColumns();
+		List<ColumnMetadata> references = metadata.getReferences();
+		Object[] values = new Object[columns.size() + references.size()];
+		for (int i = 0; i < columns.size(); i++) {
+			values[i] = copy(columns.get(i).getValue(entity));
+		}
+		if (foreignKeys != null) {
+			for (int i = 0; i < references.size(); i++) {
+				values[columns.size() + i] = foreignKeys.get(references.get(i));
+			}
+		}
+		return values;
+	}
+
+	private <T> T hydrate(Class<T> entityClass, Object[] values) {
+		T entity;
+		try {
+			entity = entityClass.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		List<ColumnMetadata> columns = EntityMetadata.forClass(entityClass)
+				.getMappedColumns();
+		for (int i = 0; i < columns.size(); i++) {
+			columns.get(i).setValue(entity, copy(values[i]));
+		}
+		return entity;
+	}
+
+	/**
+	 * Copies the mutable column types, so neither the cache nor the entities
+	 * see each other's changes
+	 */
+	private static Object copy(Object value) {
+		if (value instanceof byte[]) {
+			return ((byte[]) value).clone();
+		} else if (value instanceof Calendar) {
+			return ((Calendar) value).clone();
+		} else if (value instanceof Date) {
+			return ((Date) value).clone();
+		}
+		return value;
+	}
+}
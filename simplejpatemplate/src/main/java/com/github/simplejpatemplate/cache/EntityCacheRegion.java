@@ -0,0 +1,174 @@
+package com.github.simplejpatemplate.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded map of primary key to the cached column values of one entity
+ * class. Access is synchronized on the region, so regions of different
+ * classes never contend.
+ * <p>
+ * Every invalidation increments the version of the region and is remembered
+ * by key, so a put of state read before the last invalidation of its key is
+ * ignored. At most as many invalidations as entries are remembered; a put of
+ * state read before a forgotten one is ignored too.
+ */
+public class EntityCacheRegion {
+	/**
+	 * How many of the oldest entries are compared when evicting by
+	 * {@link EvictionPolicy#LFU}
+	 */
+	private static final int LFU_SAMPLE_SIZE = 16;
+
+	private final CacheRegionConfig config;
+	private final CacheStatistics statistics = new CacheStatistics();
+	private final LinkedHashMap<Object, Entry> entries;
+	private final LinkedHashMap<Object, Long> invalidations = new LinkedHashMap<Object, Long>();
+	private long version;
+	private long forgotten;
+
+	public EntityCacheRegion(CacheRegionConfig config) {
+		this.config = config;
+		boolean accessOrder = config.getEvictionPolicy() == EvictionPolicy.LRU;
+		this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, accessOrder);
+	}
+
+	/**
+	 * Returns the cached values of the given primary key, or null
+	 */
+	public synchronized Object[] get(Object primaryKey) {
+		Entry entry = entries.get(primaryKey);
+		if (entry == null) {
+			statistics.miss();
+			return null;
+		}
+		if (entry.isExpired(System.currentTimeMillis())) {
+			entries.remove(primaryKey);
+			statistics.eviction();
+			statistics.miss();
+			return null;
+		}
+		entry.frequency++;
+		statistics.hit();
+		return entry.values;
+	}
+
+	/**
+	 * The current version, taken before reading an entity from the database
+	 * and passed to {@link #put(Object, Object[], long)}
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Caches the values read at the given version, unless the primary key was
+	 * invalidated since
+	 * 
+	 * @return false when the values are stale and were not cached
+	 */
+	public synchronized boolean put(Object primaryKey, Object[] values,
+			long readVersion) {
+		Long invalidated = invalidations.get(primaryKey);
+		if (readVersion < forgotten
+				|| (invalidated != null && readVersion < invalidated
+						.longValue())) {
+			return false;
+		}
+		put(primaryKey, values);
+		return true;
+	}
+
+	public synchronized void put(Object primaryKey, Object[] values) {
+		long expiresAt = 0;
+		if (config.getTimeToLiveMillis() > 0) {
+			expiresAt = System.currentTimeMillis()
+					+ config.getTimeToLiveMillis();
+		}
+		Entry previous = entries.put(primaryKey, new Entry(values, expiresAt));
+		statistics.put();
+		if (previous == null) {
+			while (entries.size() > config.getMaxSize()) {
+				evict();
+			}
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet()
+				.iterator();
+		if (config.getEvictionPolicy() == EvictionPolicy.LRU) {
+			// Access ordered: the first entry is the least recently used
+			iterator.next();
+			iterator.remove();
+		} else {
+			Object victim = null;
+			int lowest = Integer.MAX_VALUE;
+			for (int i = 0; i < LFU_SAMPLE_SIZE && iterator.hasNext(); i++) {
+				Map.Entry<Object, Entry> candidate = iterator.next();
+				if (candidate.getValue().frequency < lowest) {
+					lowest = candidate.getValue().frequency;
+					victim = candidate.getKey();
+				}
+			}
+			entries.remove(victim);
+		}
+		statistics.eviction();
+	}
+
+	/**
+	 * Removes the given primary key, after the entity was written
+	 */
+	public synchronized void invalidate(Object primaryKey) {
+		version++;
+		invalidations.remove(primaryKey);
+		invalidations.put(primaryKey, Long.valueOf(version));
+		if (invalidations.size() > config.getMaxSize()) {
+			Iterator<Long> eldest = invalidations.values().iterator();
+			forgotten = eldest.next().longValue();
+			eldest.remove();
+		}
+		if (entries.remove(primaryKey) != null) {
+			statistics.invalidation();
+		}
+	}
+
+	/**
+	 * Removes all entries; state read before is not cached afterwards
+	 */
+	public synchronized void clear() {
+		version++;
+		forgotten = version;
+		invalidations.clear();
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public CacheRegionConfig getConfig() {
+		return config;
+	}
+
+	public CacheStatistics getStatistics() {
+		return statistics;
+	}
+
+	private static final class Entry {
+		private final Object[] values;
+		private final long expiresAt;
+		private int frequency;
+
+		Entry(Object[] values, long expiresAt) {
+			this.values = values;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return expiresAt != 0 && now >= expiresAt;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.github.simplejpatemplate.cache;
+
+/**
+ * Which entry a full {@link EntityCacheRegion} removes to make room
+ */
+public enum EvictionPolicy {
+	/**
+	 * The least recently used entry
+	 */
+	LRU,
+
+	/**
+	 * The least frequently used entry among the oldest entries of the region
+	 */
+	LFU
+}
@@ -0,0 +1,280 @@
+package com.github.simplejpatemplate.convert;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.SqlTypeValue;
+
+import com.github.simplejpatemplate.accessor.FieldAccessor;
+
+/**
+ * Reads one column of a row into an entity field and converts the field value
+ * for binding. A binding is resolved once per field from the
+ * {@link Converters} registry; <code>int</code>, <code>long</code>,
+ * <code>double</code> and <code>boolean</code> fields are read with the
+ * primitive <code>ResultSet</code> getters and set without boxing. A primitive
+ * field keeps its value when the column is NULL.
+ */
+public abstract class ColumnBinding {
+	/**
+	 * Resolves the binding of a field
+	 * 
+	 * @param field
+	 * @param accessor
+	 *            the accessor of the field
+	 * @return
+	 */
+	public static ColumnBinding forField(Field field, FieldAccessor accessor) {
+		Class<?> type = field.getType();
+		if (type == int.class) {
+			return new IntBinding(accessor);
+		} else if (type == long.class) {
+			return new LongBinding(accessor);
+		} else if (type == double.class) {
+			return new DoubleBinding(accessor);
+		} else if (type == boolean.class) {
+			return new BooleanBinding(accessor);
+		}
+		return new ConverterBinding(accessor, resolveConverter(field),
+				type.isPrimitive());
+	}
+
+	private static Converter<Object> resolveConverter(Field field) {
+		Enumerated enumerated = field.getAnnotation(Enumerated.class);
+		return resolveConverter(field.getType(), enumerated != null
+				&& enumerated.value() == EnumType.STRING);
+	}
+
+	/**
+	 * Resolves the converter of a field type, as used by the binding of a
+	 * field of that type. Types without converter are read with
+	 * <code>getObject</code> and bound unchanged.
+	 * 
+	 * @param type
+	 *            the field type; primitives are wrapped
+	 * @param enumByName
+	 *            true for enums annotated with
+	 *            <code>@Enumerated(EnumType.STRING)</code>
+	 * @return
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Converter<Object> resolveConverter(Class<?> type,
+			boolean enumByName) {
+		type = wrap(type);
+		if (type.isEnum() && enumByName) {
+			return new EnumConverter(type, true);
+		}
+		Converter<?> converter = Converters.get(type);
+		if (converter == null) {
+			converter = new ObjectConverter();
+		}
+		return (Converter<Object>) converter;
+	}
+
+	/**
+	 * Converts a field value with the converter for binding. A null value
+	 * becomes a typed null when the SQL type of the converter is known.
+	 * 
+	 * @param converter
+	 * @param value
+	 * @return
+	 */
+	public static Object convert(Converter<Object> converter, Object value) {
+		if (value != null) {
+			return converter.write(value);
+		}
+		int sqlType = converter.getSqlType();
+		if (sqlType == SqlTypeValue.TYPE_UNKNOWN) {
+			return null;
+		}
+		return new SqlParameterValue(sqlType, null);
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		if (type == int.class) {
+			return Integer.class;
+		} else if (type == long.class) {
+			return Long.class;
+		} else if (type == double.class) {
+			return Double.class;
+		} else if (type == boolean.class) {
+			return Boolean.class;
+		} else if (type == short.class) {
+			return Short.class;
+		} else if (type == byte.class) {
+			return Byte.class;
+		} else if (type == float.class) {
+			return Float.class;
+		} else if (type == char.class) {
+			return Character.class;
+		}
+		return type;
+	}
+
+	final FieldAccessor accessor;
+
+	ColumnBinding(FieldAccessor accessor) {
+		this.accessor = accessor;
+	}
+
+	/**
+	 * Reads the column of the current row into the field of the entity
+	 * 
+	 * @param rs
+	 * @param index
+	 *            the column index
+	 * @param entity
+	 * @throws SQLException
+	 */
+	public abstract void read(ResultSet rs, int index, Object entity)
+			throws SQLException;
+
+	/**
+	 * Converts a value of the field type to the value bound to a statement. A
+	 * null value becomes a typed null when the SQL type is known.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	public abstract Object convert(Object value);
+
+	/**
+	 * Returns the field value of the entity as it is bound to a statement
+	 * 
+	 * @param entity
+	 * @return
+	 */
+	public Object write(Object entity) {
+		return convert(accessor.get(entity));
+	}
+
+	static final class IntBinding extends ColumnBinding {
+		IntBinding(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object entity)
+				throws SQLException {
+			int value = rs.getInt(index);
+			if (value != 0 || rs.wasNull() == false) {
+				accessor.setInt(entity, value);
+			}
+		}
+
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	}
+
+	static final class LongBinding extends ColumnBinding {
+		LongBinding(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object entity)
+				throws SQLException {
+			long value = rs.getLong(index);
+			if (value != 0 || rs.wasNull() == false) {
+				accessor.setLong(entity, value);
+			}
+		}
+
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	}
+
+	static final class DoubleBinding extends ColumnBinding {
+		DoubleBinding(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object entity)
+				throws SQLException {
+			double value = rs.getDouble(index);
+			if (value != 0 || rs.wasNull() == false) {
+				accessor.setDouble(entity, value);
+			}
+		}
+
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	}
+
+	static final class BooleanBinding extends ColumnBinding {
+		BooleanBinding(FieldAccessor accessor) {
+			super(accessor);
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object entity)
+				throws SQLException {
+			boolean value = rs.getBoolean(index);
+			if (value || rs.wasNull() == false) {
+				accessor.setBoolean(entity, value);
+			}
+		}
+
+		@Override
+		public Object convert(Object value) {
+			return value;
+		}
+	}
+
+	static final class ConverterBinding extends ColumnBinding {
+		private final Converter<Object> converter;
+		private final boolean primitive;
+
+		ConverterBinding(FieldAccessor accessor, Converter<Object> converter,
+				boolean primitive) {
+			super(accessor);
+			this.converter = converter;
+			this.primitive = primitive;
+		}
+
+		@Override
+		public void read(ResultSet rs, int index, Object entity)
+				throws SQLException {
+			Object value = converter.read(rs, index);
+			if (value != null || primitive == false) {
+				accessor.set(entity, value);
+			}
+		}
+
+		@Override
+		public Object convert(Object value) {
+			return ColumnBinding.convert(converter, value);
+		}
+	}
+
+	/**
+	 * Used for field types without a converter: reads with
+	 * <code>getObject</code> and binds the value unchanged
+	 */
+	static final class ObjectConverter implements Converter<Object> {
+
+		public Object read(ResultSet rs, int index) throws SQLException {
+			return rs.getObject(index);
+		}
+
+		public Object write(Object value) {
+			return value;
+		}
+
+		public int getSqlType() {
+			return SqlTypeValue.TYPE_UNKNOWN;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.github.simplejpatemplate.convert;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Converts between the values of one field type and a JDBC column. Converters
+ * are registered by field type with {@link Converters#register(Class, Converter)}
+ * and shared between threads.
+ * 
+ * @param <T>
+ *            the field type
+ */
+public interface Converter<T> {
+	/**
+	 * Reads the column of the current row
+	 * 
+	 * @param rs
+	 * @param index
+	 *            the column index
+	 * @return the field value, null for SQL NULL
+	 * @throws SQLException
+	 */
+	T read(ResultSet rs, int index) throws SQLException;
+
+	/**
+	 * Converts a field value to the value bound to a statement
+	 * 
+	 * @param value
+	 *            not null
+	 * @return
+	 */
+	Object write(T value);
+
+	/**
+	 * The <code>java.sql.Types</code> code used to bind null, or
+	 * <code>SqlTypeValue.TYPE_UNKNOWN</code> to let the driver decide
+	 */
+	int getSqlType();
+}
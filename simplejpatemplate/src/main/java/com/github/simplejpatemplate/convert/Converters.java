@@ -0,0 +1,341 @@
+package com.github.simplejpatemplate.convert;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.simplejpatemplate.util.LobParameter;
+
+/**
+ * The registry of {@link Converter}s by field type. Converters for the common
+ * JDBC types, the temporal types of {@link TemporalConverters} and UUID
+ * (stored as a string, see {@link UUIDConverter}) are registered by default;
+ * enums are converted by {@link EnumConverter} unless a converter is
+ * registered for the enum class.
+ * <p>
+ * Converters must be registered before the first entity class is used;
+ * metadata that has already been resolved keeps its converters.
+ */
+public final class Converters {
+	private static final ConcurrentMap<Class<?>, Converter<?>> CONVERTERS = new ConcurrentHashMap<Class<?>, Converter<?>>();
+
+	static {
+		register(String.class, new StringConverter());
+		register(Integer.class, new IntegerConverter());
+		register(Long.class, new LongConverter());
+		register(Short.class, new ShortConverter());
+		register(Byte.class, new ByteConverter());
+		register(Double.class, new DoubleConverter());
+		register(Float.class, new FloatConverter());
+		register(Boolean.class, new BooleanConverter());
+		register(BigDecimal.class, new BigDecimalConverter());
+		register(byte[].class, new BytesConverter());
+		register(UUID.class, new UUIDConverter(UUIDConverter.Storage.STRING));
+		register(java.sql.Date.class, new SqlDateConverter());
+		register(Time.class, new TimeConverter());
+		register(Timestamp.class, new TimestampConverter());
+		TemporalConverters.register(ZoneId.systemDefault(), false);
+		register(InputStream.class, new BinaryStreamConverter());
+		register(Reader.class, new CharacterStreamConverter());
+		register(Blob.class, new BlobConverter());
+		register(Clob.class, new ClobConverter());
+	}
+
+	private Converters() {
+	}
+
+	/**
+	 * Registers the converter of the given field type, replacing any existing
+	 * one
+	 * 
+	 * @param type
+	 * @param converter
+	 */
+	public static <T> void register(Class<T> type, Converter<T> converter) {
+		if (type == null || converter == null) {
+			throw new IllegalArgumentException("type and converter are required");
+		}
+		CONVERTERS.put(type, converter);
+	}
+
+	/**
+	 * Returns the converter of the given field type: a registered converter of
+	 * the type or of its superclasses and interfaces, an {@link EnumConverter}
+	 * storing the ordinal for enums, or null
+	 * 
+	 * @param type
+	 *            a wrapper or reference type
+	 * @return
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static <T> Converter<T> get(Class<T> type) {
+		Converter<?> converter = CONVERTERS.get(type);
+		if (converter == null) {
+			converter = findInherited(type);
+		}
+		if (converter == null && type.isEnum()) {
+			converter = new EnumConverter(type, false);
+		}
+		return (Converter<T>) converter;
+	}
+
+	private static Converter<?> findInherited(Class<?> type) {
+		for (Class<?> cl = type; cl != null; cl = cl.getSuperclass()) {
+			Converter<?> converter = CONVERTERS.get(cl);
+			if (converter != null) {
+				return converter;
+			}
+			for (Class<?> iface : cl.getInterfaces()) {
+				converter = CONVERTERS.get(iface);
+				if (converter != null) {
+					return converter;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Converts a value for binding with the converter of its class
+	 * 
+	 * @param value
+	 * @return the value itself when there is no converter
+	 */
+	@SuppressWarnings("unchecked")
+	public static Object write(Object value) {
+		if (value == null) {
+			return null;
+		}
+		Converter<Object> converter = (Converter<Object>) get(value.getClass());
+		return converter != null ? converter.write(value) : value;
+	}
+
+	/**
+	 * Base class of converters that bind the value unchanged
+	 */
+	abstract static class SimpleConverter<T> implements Converter<T> {
+		private final int sqlType;
+
+		SimpleConverter(int sqlType) {
+			this.sqlType = sqlType;
+		}
+
+		public Object write(T value) {
+			return value;
+		}
+
+		public int getSqlType() {
+			return sqlType;
+		}
+	}
+
+	static final class StringConverter extends SimpleConverter<String> {
+		StringConverter() {
+			super(Types.VARCHAR);
+		}
+
+		public String read(ResultSet rs, int index) throws SQLException {
+			return rs.getString(index);
+		}
+	}
+
+	static final class IntegerConverter extends SimpleConverter<Integer> {
+		IntegerConverter() {
+			super(Types.INTEGER);
+		}
+
+		public Integer read(ResultSet rs, int index) throws SQLException {
+			int value = rs.getInt(index);
+			return value == 0 && rs.wasNull() ? null : Integer.valueOf(value);
+		}
+	}
+
+	static final class LongConverter extends SimpleConverter<Long> {
+		LongConverter() {
+			super(Types.BIGINT);
+		}
+
+		public Long read(ResultSet rs, int index) throws SQLException {
+			long value = rs.getLong(index);
+			return value == 0 && rs.wasNull() ? null : Long.valueOf(value);
+		}
+	}
+
+	static final class ShortConverter extends SimpleConverter<Short> {
+		ShortConverter() {
+			super(Types.SMALLINT);
+		}
+
+		public Short read(ResultSet rs, int index) throws SQLException {
+			short value = rs.getShort(index);
+			return value == 0 && rs.wasNull() ? null : Short.valueOf(value);
+		}
+	}
+
+	static final class ByteConverter extends SimpleConverter<Byte> {
+		ByteConverter() {
+			super(Types.TINYINT);
+		}
+
+		public Byte read(ResultSet rs, int index) throws SQLException {
+			byte value = rs.getByte(index);
+			return value == 0 && rs.wasNull() ? null : Byte.valueOf(value);
+		}
+	}
+
+	static final class DoubleConverter extends SimpleConverter<Double> {
+		DoubleConverter() {
+			super(Types.DOUBLE);
+		}
+
+		public Double read(ResultSet rs, int index) throws SQLException {
+			double value = rs.getDouble(index);
+			return value == 0 && rs.wasNull() ? null : Double.valueOf(value);
+		}
+	}
+
+	static final class FloatConverter extends SimpleConverter<Float> {
+		FloatConverter() {
+			super(Types.REAL);
+		}
+
+		public Float read(ResultSet rs, int index) throws SQLException {
+			float value = rs.getFloat(index);
+			return value == 0 && rs.wasNull() ? null : Float.valueOf(value);
+		}
+	}
+
+	static final class BooleanConverter extends SimpleConverter<Boolean> {
+		BooleanConverter() {
+			super(Types.BOOLEAN);
+		}
+
+		public Boolean read(ResultSet rs, int index) throws SQLException {
+			boolean value = rs.getBoolean(index);
+			return value == false && rs.wasNull() ? null : Boolean
+					.valueOf(value);
+		}
+	}
+
+	static final class BigDecimalConverter extends SimpleConverter<BigDecimal> {
+		BigDecimalConverter() {
+			super(Types.DECIMAL);
+		}
+
+		public BigDecimal read(ResultSet rs, int index) throws SQLException {
+			return rs.getBigDecimal(index);
+		}
+	}
+
+	static final class BytesConverter extends SimpleConverter<byte[]> {
+		BytesConverter() {
+			super(Types.VARBINARY);
+		}
+
+		public byte[] read(ResultSet rs, int index) throws SQLException {
+			return rs.getBytes(index);
+		}
+	}
+
+	static final class SqlDateConverter extends
+			SimpleConverter<java.sql.Date> {
+		SqlDateConverter() {
+			super(Types.DATE);
+		}
+
+		public java.sql.Date read(ResultSet rs, int index) throws SQLException {
+			return rs.getDate(index);
+		}
+	}
+
+	static final class TimeConverter extends SimpleConverter<Time> {
+		TimeConverter() {
+			super(Types.TIME);
+		}
+
+		public Time read(ResultSet rs, int index) throws SQLException {
+			return rs.getTime(index);
+		}
+	}
+
+	static final class TimestampConverter extends SimpleConverter<Timestamp> {
+		TimestampConverter() {
+			super(Types.TIMESTAMP);
+		}
+
+		public Timestamp read(ResultSet rs, int index) throws SQLException {
+			return rs.getTimestamp(index);
+		}
+	}
+
+	/**
+	 * Base class of the stream and LOB converters, which bind through
+	 * {@link LobParameter}
+	 */
+	abstract static class LobConverter<T> implements Converter<T> {
+		private final int sqlType;
+
+		LobConverter(int sqlType) {
+			this.sqlType = sqlType;
+		}
+
+		public Object write(T value) {
+			return new LobParameter(value);
+		}
+
+		public int getSqlType() {
+			return sqlType;
+		}
+	}
+
+	static final class BinaryStreamConverter extends LobConverter<InputStream> {
+		BinaryStreamConverter() {
+			super(Types.BLOB);
+		}
+
+		public InputStream read(ResultSet rs, int index) throws SQLException {
+			return rs.getBinaryStream(index);
+		}
+	}
+
+	static final class CharacterStreamConverter extends LobConverter<Reader> {
+		CharacterStreamConverter() {
+			super(Types.CLOB);
+		}
+
+		public Reader read(ResultSet rs, int index) throws SQLException {
+			return rs.getCharacterStream(index);
+		}
+	}
+
+	static final class BlobConverter extends LobConverter<Blob> {
+		BlobConverter() {
+			super(Types.BLOB);
+		}
+
+		public Blob read(ResultSet rs, int index) throws SQLException {
+			return rs.getBlob(index);
+		}
+	}
+
+	static final class ClobConverter extends LobConverter<Clob> {
+		ClobConverter() {
+			super(Types.CLOB);
+		}
+
+		public Clob read(ResultSet rs, int index) throws SQLException {
+			return rs.getClob(index);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.github.simplejpatemplate.convert;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Stores an enum by its ordinal, the default, or by its name for
+ * <code>@Enumerated(EnumType.STRING)</code> fields
+ * 
+ * @param <E>
+ */
+public class EnumConverter<E extends Enum<E>> implements Converter<E> {
+	private final Class<E> type;
+	private final E[] constants;
+	private final boolean byName;
+
+	/**
+	 * @param type
+	 * @param byName
+	 *            true to store the name, false to store the ordinal
+	 */
+	public EnumConverter(Class<E> type, boolean byName) {
+		this.type = type;
+		this.constants = type.getEnumConstants();
+		this.byName = byName;
+	}
+
+	public E read(ResultSet rs, int index) throws SQLException {
+		if (byName) {
+			String name = rs.getString(index);
+			return name != null ? Enum.valueOf(type, name) : null;
+		}
+		int ordinal = rs.getInt(index);
+		if (ordinal == 0 && rs.wasNull()) {
+			return null;
+		}
+		if (ordinal < 0 || ordinal >= constants.length) {
+			throw new IllegalArgumentException("No " + type.getSimpleName()
+					+ " with ordinal " + ordinal);
+		}
+		return constants[ordinal];
+	}
+
+	public Object write(E value) {
+		return byName ? value.name() : Integer.valueOf(value.ordinal());
+	}
+
+	public int getSqlType() {
+		return byName ? Types.VARCHAR : Types.INTEGER;
+	}
+}
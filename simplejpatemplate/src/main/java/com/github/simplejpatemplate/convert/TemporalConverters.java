@@ -0,0 +1,262 @@
+package com.github.simplejpatemplate.convert;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The converters of the <code>java.time</code> types and the legacy
+ * <code>Calendar</code> and <code>Date</code> fields. The time zone in which
+ * <code>TIMESTAMP</code> columns are interpreted is configured once with
+ * {@link #register(ZoneId, boolean)}, instead of being looked up for every
+ * value.
+ * <p>
+ * With native types, <code>java.time</code> values are read with
+ * <code>getObject(index, LocalDateTime.class)</code> and bound unchanged,
+ * which requires a JDBC 4.2 driver that supports them. Otherwise they are
+ * converted from and to the <code>java.sql</code> types, which works with any
+ * driver.
+ */
+public final class TemporalConverters {
+	private TemporalConverters() {
+	}
+
+	/**
+	 * Registers the temporal converters with {@link Converters}, replacing the
+	 * current ones. Like every converter, they should be registered before the
+	 * first entity class is used.
+	 * 
+	 * @param zone
+	 *            the zone of <code>TIMESTAMP</code> columns, used for
+	 *            <code>Instant</code>, <code>Calendar</code> and
+	 *            <code>Date</code> fields
+	 * @param nativeTypes
+	 *            true to let the driver convert <code>java.time</code> values
+	 */
+	public static void register(ZoneId zone, boolean nativeTypes) {
+		boolean systemZone = zone.equals(ZoneId.systemDefault());
+		Converters.register(LocalDate.class, new LocalDateConverter(
+				nativeTypes));
+		Converters.register(LocalTime.class, new LocalTimeConverter(
+				nativeTypes));
+		Converters.register(LocalDateTime.class, new LocalDateTimeConverter(
+				nativeTypes));
+		Converters.register(Instant.class, new InstantConverter(zone,
+				systemZone, nativeTypes));
+		Converters.register(Calendar.class, new CalendarConverter(zone,
+				systemZone));
+		Converters.register(Date.class, new DateConverter(zone, systemZone));
+	}
+
+	/**
+	 * Reads a <code>TIMESTAMP</code> column as milliseconds since the epoch,
+	 * interpreted in the given zone
+	 */
+	static long readMillis(ResultSet rs, int index, ZoneId zone,
+			boolean systemZone) throws SQLException {
+		Timestamp value = rs.getTimestamp(index);
+		if (value == null) {
+			return Long.MIN_VALUE;
+		}
+		if (systemZone) {
+			return value.getTime();
+		}
+		return value.toLocalDateTime().atZone(zone).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Creates the <code>TIMESTAMP</code> value of milliseconds since the
+	 * epoch in the given zone
+	 */
+	static Timestamp toTimestamp(long millis, ZoneId zone, boolean systemZone) {
+		if (systemZone) {
+			return new Timestamp(millis);
+		}
+		return Timestamp.valueOf(LocalDateTime.ofInstant(
+				Instant.ofEpochMilli(millis), zone));
+	}
+
+	static final class LocalDateConverter implements Converter<LocalDate> {
+		private final boolean nativeTypes;
+
+		LocalDateConverter(boolean nativeTypes) {
+			this.nativeTypes = nativeTypes;
+		}
+
+		public LocalDate read(ResultSet rs, int index) throws SQLException {
+			if (nativeTypes) {
+				return rs.getObject(index, LocalDate.class);
+			}
+			java.sql.Date value = rs.getDate(index);
+			return value != null ? value.toLocalDate() : null;
+		}
+
+		public Object write(LocalDate value) {
+			return nativeTypes ? value : java.sql.Date.valueOf(value);
+		}
+
+		public int getSqlType() {
+			return Types.DATE;
+		}
+	}
+
+	static final class LocalTimeConverter implements Converter<LocalTime> {
+		private final boolean nativeTypes;
+
+		LocalTimeConverter(boolean nativeTypes) {
+			this.nativeTypes = nativeTypes;
+		}
+
+		public LocalTime read(ResultSet rs, int index) throws SQLException {
+			if (nativeTypes) {
+				return rs.getObject(index, LocalTime.class);
+			}
+			Time value = rs.getTime(index);
+			return value != null ? value.toLocalTime() : null;
+		}
+
+		public Object write(LocalTime value) {
+			return nativeTypes ? value : Time.valueOf(value);
+		}
+
+		public int getSqlType() {
+			return Types.TIME;
+		}
+	}
+
+	static final class LocalDateTimeConverter implements
+			Converter<LocalDateTime> {
+		private final boolean nativeTypes;
+
+		LocalDateTimeConverter(boolean nativeTypes) {
+			this.nativeTypes = nativeTypes;
+		}
+
+		public LocalDateTime read(ResultSet rs, int index) throws SQLException {
+			if (nativeTypes) {
+				return rs.getObject(index, LocalDateTime.class);
+			}
+			Timestamp value = rs.getTimestamp(index);
+			return value != null ? value.toLocalDateTime() : null;
+		}
+
+		public Object write(LocalDateTime value) {
+			return nativeTypes ? value : Timestamp.valueOf(value);
+		}
+
+		public int getSqlType() {
+			return Types.TIMESTAMP;
+		}
+	}
+
+	static final class InstantConverter implements Converter<Instant> {
+		private final ZoneId zone;
+		private final boolean systemZone;
+		private final boolean nativeTypes;
+
+		InstantConverter(ZoneId zone, boolean systemZone, boolean nativeTypes) {
+			this.zone = zone;
+			this.systemZone = systemZone;
+			this.nativeTypes = nativeTypes;
+		}
+
+		public Instant read(ResultSet rs, int index) throws SQLException {
+			if (nativeTypes) {
+				LocalDateTime value = rs.getObject(index, LocalDateTime.class);
+				return value != null ? value.atZone(zone).toInstant() : null;
+			}
+			Timestamp value = rs.getTimestamp(index);
+			if (value == null) {
+				return null;
+			} else if (systemZone) {
+				return value.toInstant();
+			}
+			return value.toLocalDateTime().atZone(zone).toInstant();
+		}
+
+		public Object write(Instant value) {
+			if (nativeTypes) {
+				return LocalDateTime.ofInstant(value, zone);
+			} else if (systemZone) {
+				return Timestamp.from(value);
+			}
+			return Timestamp.valueOf(LocalDateTime.ofInstant(value, zone));
+		}
+
+		public int getSqlType() {
+			return Types.TIMESTAMP;
+		}
+	}
+
+	/**
+	 * Creates <code>GregorianCalendar</code>s in the configured zone directly,
+	 * instead of <code>Calendar.getInstance()</code> which looks up the
+	 * default zone and locale for every value
+	 */
+	static final class CalendarConverter implements Converter<Calendar> {
+		private final ZoneId zone;
+		private final boolean systemZone;
+		private final TimeZone timeZone;
+		private final Locale locale;
+
+		CalendarConverter(ZoneId zone, boolean systemZone) {
+			this.zone = zone;
+			this.systemZone = systemZone;
+			this.timeZone = TimeZone.getTimeZone(zone);
+			this.locale = Locale.getDefault();
+		}
+
+		public Calendar read(ResultSet rs, int index) throws SQLException {
+			long millis = readMillis(rs, index, zone, systemZone);
+			if (millis == Long.MIN_VALUE) {
+				return null;
+			}
+			Calendar cal = new GregorianCalendar(timeZone, locale);
+			cal.setTimeInMillis(millis);
+			return cal;
+		}
+
+		public Object write(Calendar value) {
+			return toTimestamp(value.getTimeInMillis(), zone, systemZone);
+		}
+
+		public int getSqlType() {
+			return Types.TIMESTAMP;
+		}
+	}
+
+	static final class DateConverter implements Converter<Date> {
+		private final ZoneId zone;
+		private final boolean systemZone;
+
+		DateConverter(ZoneId zone, boolean systemZone) {
+			this.zone = zone;
+			this.systemZone = systemZone;
+		}
+
+		public Date read(ResultSet rs, int index) throws SQLException {
+			long millis = readMillis(rs, index, zone, systemZone);
+			return millis != Long.MIN_VALUE ? new Date(millis) : null;
+		}
+
+		public Object write(Date value) {
+			return toTimestamp(value.getTime(), zone, systemZone);
+		}
+
+		public int getSqlType() {
+			return Types.TIMESTAMP;
+		}
+	}
+}
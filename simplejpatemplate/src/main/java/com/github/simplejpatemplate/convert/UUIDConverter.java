@@ -0,0 +1,177 @@
+package com.github.simplejpatemplate.convert;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.SqlTypeValue;
+
+/**
+ * Stores UUIDs as a 36 character string, the default, as 16 bytes in a
+ * <code>BINARY(16)</code> column, or as the native UUID type of databases such
+ * as PostgreSQL and H2. Strings are parsed and formatted without the
+ * intermediate objects of <code>UUID.fromString</code> and
+ * <code>UUID.toString</code>. Register another storage with
+ * <code>Converters.register(UUID.class, new UUIDConverter(Storage.BINARY))</code>.
+ */
+public class UUIDConverter implements Converter<UUID> {
+	/**
+	 * How a UUID is stored
+	 */
+	public enum Storage {
+		STRING, BINARY, NATIVE
+	}
+
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	private final Storage storage;
+
+	public UUIDConverter(Storage storage) {
+		this.storage = storage;
+	}
+
+	public Storage getStorage() {
+		return storage;
+	}
+
+	public UUID read(ResultSet rs, int index) throws SQLException {
+		switch (storage) {
+		case BINARY:
+			byte[] bytes = rs.getBytes(index);
+			return bytes != null ? fromBytes(bytes) : null;
+		case NATIVE:
+			return rs.getObject(index, UUID.class);
+		default:
+			String value = rs.getString(index);
+			return value != null ? parse(value) : null;
+		}
+	}
+
+	public Object write(UUID value) {
+		switch (storage) {
+		case BINARY:
+			return toBytes(value);
+		case NATIVE:
+			return value;
+		default:
+			return format(value);
+		}
+	}
+
+	public int getSqlType() {
+		switch (storage) {
+		case BINARY:
+			return Types.BINARY;
+		case NATIVE:
+			return SqlTypeValue.TYPE_UNKNOWN;
+		default:
+			return Types.VARCHAR;
+		}
+	}
+
+	/**
+	 * Converts a value read with <code>getObject</code>, such as a foreign
+	 * key, in any of the storages to a UUID
+	 */
+	public static UUID toUUID(Object value) {
+		if (value instanceof UUID) {
+			return (UUID) value;
+		} else if (value instanceof byte[]) {
+			return fromBytes((byte[]) value);
+		}
+		return parse(value.toString());
+	}
+
+	/**
+	 * Parses the canonical 8-4-4-4-12 form of a UUID
+	 * 
+	 * @throws IllegalArgumentException
+	 *             when the string is not a UUID
+	 */
+	public static UUID parse(String value) {
+		if (value.length() != 36 || value.charAt(8) != '-'
+				|| value.charAt(13) != '-' || value.charAt(18) != '-'
+				|| value.charAt(23) != '-') {
+			throw new IllegalArgumentException("Invalid UUID: " + value);
+		}
+		long msb = parseHex(value, 0, 8);
+		msb = msb << 16 | parseHex(value, 9, 13);
+		msb = msb << 16 | parseHex(value, 14, 18);
+		long lsb = parseHex(value, 19, 23);
+		lsb = lsb << 48 | parseHex(value, 24, 36);
+		return new UUID(msb, lsb);
+	}
+
+	private static long parseHex(String value, int start, int end) {
+		long result = 0;
+		for (int i = start; i < end; i++) {
+			int digit = Character.digit(value.charAt(i), 16);
+			if (digit < 0) {
+				throw new IllegalArgumentException("Invalid UUID: " + value);
+			}
+			result = result << 4 | digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Formats a UUID in its canonical lower case form
+	 */
+	public static String format(UUID value) {
+		char[] chars = new char[36];
+		long msb = value.getMostSignificantBits();
+		long lsb = value.getLeastSignificantBits();
+		formatHex(chars, 0, msb >>> 32, 8);
+		chars[8] = '-';
+		formatHex(chars, 9, msb >>> 16, 4);
+		chars[13] = '-';
+		formatHex(chars, 14, msb, 4);
+		chars[18] = '-';
+		formatHex(chars, 19, lsb >>> 48, 4);
+		chars[23] = '-';
+		formatHex(chars, 24, lsb, 12);
+		return new String(chars);
+	}
+
+	private static void formatHex(char[] chars, int offset, long value,
+			int digits) {
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			chars[i] = DIGITS[(int) value & 0xF];
+			value >>>= 4;
+		}
+	}
+
+	/**
+	 * The 16 bytes of a UUID, most significant first
+	 */
+	public static byte[] toBytes(UUID value) {
+		byte[] bytes = new byte[16];
+		long msb = value.getMostSignificantBits();
+		long lsb = value.getLeastSignificantBits();
+		for (int i = 7; i >= 0; i--) {
+			bytes[i] = (byte) msb;
+			bytes[i + 8] = (byte) lsb;
+			msb >>>= 8;
+			lsb >>>= 8;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Creates a UUID from the bytes of {@link #toBytes(UUID)}
+	 */
+	public static UUID fromBytes(byte[] bytes) {
+		if (bytes.length != 16) {
+			throw new IllegalArgumentException("A UUID has 16 bytes, not "
+					+ bytes.length);
+		}
+		long msb = 0;
+		long lsb = 0;
+		for (int i = 0; i < 8; i++) {
+			msb = msb << 8 | (bytes[i] & 0xFF);
+			lsb = lsb << 8 | (bytes[i + 8] & 0xFF);
+		}
+		return new UUID(msb, lsb);
+	}
+}
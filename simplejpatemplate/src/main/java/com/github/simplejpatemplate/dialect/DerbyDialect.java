@@ -0,0 +1,41 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * Apache Derby. Upserts use <code>MERGE</code>, available since Derby 10.11.
+ * Locked rows are read with <code>WITH RS</code>, so the update lock is kept
+ * until the end of the transaction instead of being released by the cursor.
+ */
+public class DerbyDialect extends Dialect {
+
+	@Override
+	public String createLockQuery(String tableName, String columnName,
+			String idColumnName) {
+		return super.createLockQuery(tableName, columnName, idColumnName)
+				+ " WITH RS";
+	}
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MERGE INTO ").append(tableName).append(" t");
+		builder.append(" USING SYSIBM.SYSDUMMY1 ON t.")
+				.append(idColumn.getColumnName()).append(" = :")
+				.append(idColumn.getColumnName());
+		if (updateColumns.isEmpty() == false) {
+			builder.append(" WHEN MATCHED THEN UPDATE SET ");
+			appendAssignments(builder, updateColumns, null);
+		}
+		builder.append(" WHEN NOT MATCHED THEN INSERT ( ");
+		appendColumnNames(builder, insertColumns);
+		builder.append(" ) VALUES ( ");
+		appendParameters(builder, insertColumns);
+		builder.append(" )");
+		return builder.toString();
+	}
+}
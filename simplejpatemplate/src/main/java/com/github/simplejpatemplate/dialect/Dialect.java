@@ -0,0 +1,243 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * The database specific parts of the generated SQL. Dialects are stateless;
+ * two instances of the same class are equal, so a dialect can be used as a
+ * cache key.
+ * <p>
+ * Parameters in the generated SQL are named after the columns, as in the
+ * INSERT statements of {@link com.github.simplejpatemplate.util.JdbcJpaHelper}
+ * 
+ * @see Dialects
+ */
+public abstract class Dialect {
+	/**
+	 * The name of the parameter holding the number of rows to skip in a
+	 * {@link #createPageQuery(String, boolean, boolean)}
+	 */
+	public static final String OFFSET_PARAMETER = "pageOffset_";
+
+	/**
+	 * The name of the parameter holding the maximum number of rows in a
+	 * {@link #createPageQuery(String, boolean, boolean)}
+	 */
+	public static final String LIMIT_PARAMETER = "pageLimit_";
+
+	/**
+	 * Restricts a query to a page of rows, using the standard
+	 * <code>OFFSET n ROWS FETCH NEXT m ROWS ONLY</code>. The offset and the
+	 * row count are bound to {@link #OFFSET_PARAMETER} and
+	 * {@link #LIMIT_PARAMETER}, so every page uses the same statement.
+	 * 
+	 * @param sql
+	 *            a select statement, without a trailing semicolon
+	 * @param offset
+	 *            true when rows are skipped
+	 * @param limit
+	 *            true when the number of rows is limited
+	 * @return
+	 */
+	public String createPageQuery(String sql, boolean offset, boolean limit) {
+		StringBuilder builder = new StringBuilder(sql);
+		if (offset) {
+			builder.append(" OFFSET :").append(OFFSET_PARAMETER)
+					.append(" ROWS");
+		}
+		if (limit) {
+			builder.append(offset ? " FETCH NEXT :" : " FETCH FIRST :")
+					.append(LIMIT_PARAMETER).append(" ROWS ONLY");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Creates a single statement that inserts the row, or updates it when a
+	 * row with the same id exists
+	 * 
+	 * @param tableName
+	 *            the fully qualified table name
+	 * @param idColumn
+	 * @param insertColumns
+	 *            the insertable columns, including the id column
+	 * @param updateColumns
+	 *            the columns to update when the row exists, may be empty
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             when the database has no upsert statement
+	 */
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		throw new UnsupportedOperationException(getClass().getSimpleName()
+				+ " does not support upserts");
+	}
+
+	/**
+	 * Creates a query returning the next value of a sequence, using the
+	 * standard <code>VALUES NEXT VALUE FOR</code>
+	 * 
+	 * @param sequenceName
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             when the database has no sequences
+	 */
+	public String createSequenceQuery(String sequenceName) {
+		return "VALUES NEXT VALUE FOR " + sequenceName;
+	}
+
+	/**
+	 * True when the database has sequences, so AUTO ids are allocated from
+	 * one
+	 */
+	public boolean supportsSequences() {
+		return true;
+	}
+
+	/**
+	 * Creates a query that selects one column of a row and locks the row
+	 * until the end of the transaction, using the standard
+	 * <code>FOR UPDATE</code>. The id is bound to <code>:id</code>.
+	 * 
+	 * @param tableName
+	 *            the fully qualified table name
+	 * @param columnName
+	 *            the selected column
+	 * @param idColumnName
+	 * @return
+	 */
+	public String createLockQuery(String tableName, String columnName,
+			String idColumnName) {
+		return "SELECT " + columnName + " FROM " + tableName + " WHERE "
+				+ idColumnName + " = :id FOR UPDATE";
+	}
+
+	/**
+	 * True when the driver returns the generated keys of every row of a JDBC
+	 * batch. Otherwise inserts that return generated keys are executed one
+	 * statement at a time.
+	 */
+	public boolean supportsBatchGeneratedKeys() {
+		return false;
+	}
+
+	/**
+	 * Appends <code>LIMIT :limit OFFSET :offset</code>, supported by
+	 * PostgreSQL, H2 and SQLite
+	 */
+	protected static String appendLimitOffset(String sql, boolean offset,
+			boolean limit) {
+		StringBuilder builder = new StringBuilder(sql);
+		if (limit) {
+			builder.append(" LIMIT :").append(LIMIT_PARAMETER);
+		}
+		if (offset) {
+			builder.append(" OFFSET :").append(OFFSET_PARAMETER);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Appends <code>a, b, c</code>
+	 */
+	protected static void appendColumnNames(StringBuilder builder,
+			List<ColumnMetadata> columns) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(columns.get(i).getColumnName());
+		}
+	}
+
+	/**
+	 * Appends <code>:a, :b, :c</code>
+	 */
+	protected static void appendParameters(StringBuilder builder,
+			List<ColumnMetadata> columns) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(':').append(columns.get(i).getColumnName());
+		}
+	}
+
+	/**
+	 * Appends <code>INSERT INTO table ( a, b ) VALUES ( :a, :b )</code>
+	 */
+	protected static void appendInsert(StringBuilder builder,
+			String tableName, List<ColumnMetadata> columns) {
+		builder.append("INSERT INTO ").append(tableName).append(" ( ");
+		appendColumnNames(builder, columns);
+		builder.append(" ) VALUES ( ");
+		appendParameters(builder, columns);
+		builder.append(" )");
+	}
+
+	/**
+	 * Appends <code>a = prefix.a, b = prefix.b</code>, or
+	 * <code>a = :a, b = :b</code> when the prefix is null
+	 */
+	protected static void appendAssignments(StringBuilder builder,
+			List<ColumnMetadata> columns, String prefix) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			String colName = columns.get(i).getColumnName();
+			builder.append(colName).append(" = ");
+			if (prefix == null) {
+				builder.append(':').append(colName);
+			} else {
+				builder.append(prefix).append('.').append(colName);
+			}
+		}
+	}
+
+	/**
+	 * Appends <code>:a AS a, :b AS b</code>
+	 */
+	protected static void appendSelectParameters(StringBuilder builder,
+			List<ColumnMetadata> columns) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			String colName = columns.get(i).getColumnName();
+			builder.append(':').append(colName).append(" AS ").append(colName);
+		}
+	}
+
+	/**
+	 * Appends <code>s.a, s.b</code>
+	 */
+	protected static void appendPrefixedColumnNames(StringBuilder builder,
+			List<ColumnMetadata> columns, String prefix) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(prefix).append('.')
+					.append(columns.get(i).getColumnName());
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj != null && obj.getClass() == getClass();
+	}
+
+	@Override
+	public int hashCode() {
+		return getClass().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+}
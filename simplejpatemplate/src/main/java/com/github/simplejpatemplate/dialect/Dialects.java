@@ -0,0 +1,60 @@
+package com.github.simplejpatemplate.dialect;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * Resolves the {@link Dialect} of a database
+ */
+public final class Dialects {
+	private Dialects() {
+	}
+
+	/**
+	 * Returns the dialect for the given
+	 * <code>DatabaseMetaData.getDatabaseProductName()</code>, or a
+	 * {@link GenericDialect} when the database is not recognized
+	 * 
+	 * @param productName
+	 * @return
+	 */
+	public static Dialect forDatabaseProductName(String productName) {
+		if (productName == null) {
+			return new GenericDialect();
+		}
+		String name = productName.toLowerCase();
+		if (name.contains("derby")) {
+			return new DerbyDialect();
+		} else if (name.contains("postgresql")) {
+			return new PostgreSQLDialect();
+		} else if (name.contains("mysql") || name.contains("mariadb")) {
+			return new MySQLDialect();
+		} else if (name.contains("oracle")) {
+			return new OracleDialect();
+		} else if (name.contains("sql server")) {
+			return new SQLServerDialect();
+		} else if (name.equals("h2")) {
+			return new H2Dialect();
+		}
+		return new GenericDialect();
+	}
+
+	/**
+	 * Looks up the product name of the database behind the data source
+	 * 
+	 * @param dataSource
+	 * @return
+	 */
+	public static Dialect detect(DataSource dataSource) {
+		try {
+			String productName = (String) JdbcUtils.extractDatabaseMetaData(
+					dataSource, "getDatabaseProductName");
+			return forDatabaseProductName(productName);
+		} catch (MetaDataAccessException e) {
+			throw new IllegalStateException(
+					"Unable to detect the database dialect", e);
+		}
+	}
+}
@@ -0,0 +1,7 @@
+package com.github.simplejpatemplate.dialect;
+
+/**
+ * Standard SQL, used when the database is not recognized
+ */
+public class GenericDialect extends Dialect {
+}
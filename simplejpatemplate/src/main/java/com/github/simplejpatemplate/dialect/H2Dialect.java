@@ -0,0 +1,41 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * H2. Upserts use <code>MERGE INTO ... KEY</code>, which writes all columns.
+ * Pages use <code>LIMIT ... OFFSET</code>.
+ */
+public class H2Dialect extends Dialect {
+
+	@Override
+	public String createPageQuery(String sql, boolean offset, boolean limit) {
+		return appendLimitOffset(sql, offset, limit);
+	}
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MERGE INTO ").append(tableName).append(" ( ");
+		appendColumnNames(builder, insertColumns);
+		builder.append(" ) KEY ( ").append(idColumn.getColumnName())
+				.append(" ) VALUES ( ");
+		appendParameters(builder, insertColumns);
+		builder.append(" )");
+		return builder.toString();
+	}
+
+	@Override
+	public String createSequenceQuery(String sequenceName) {
+		return "SELECT NEXT VALUE FOR " + sequenceName;
+	}
+
+	@Override
+	public boolean supportsBatchGeneratedKeys() {
+		return true;
+	}
+}
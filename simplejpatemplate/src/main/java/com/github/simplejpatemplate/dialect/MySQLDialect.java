@@ -0,0 +1,75 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * MySQL and MariaDB. Upserts use
+ * <code>INSERT ... ON DUPLICATE KEY UPDATE</code>. Pages use
+ * <code>LIMIT offset, count</code>.
+ */
+public class MySQLDialect extends Dialect {
+	/**
+	 * The largest row count MySQL accepts, the documented way to skip rows
+	 * without a limit
+	 */
+	private static final String NO_LIMIT = "18446744073709551615";
+
+	@Override
+	public String createPageQuery(String sql, boolean offset, boolean limit) {
+		if (offset == false && limit == false) {
+			return sql;
+		}
+		StringBuilder builder = new StringBuilder(sql);
+		builder.append(" LIMIT ");
+		if (offset) {
+			builder.append(':').append(OFFSET_PARAMETER).append(", ");
+		}
+		if (limit) {
+			builder.append(':').append(LIMIT_PARAMETER);
+		} else {
+			builder.append(NO_LIMIT);
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		appendInsert(builder, tableName, insertColumns);
+		builder.append(" ON DUPLICATE KEY UPDATE ");
+		if (updateColumns.isEmpty()) {
+			String colName = idColumn.getColumnName();
+			builder.append(colName).append(" = ").append(colName);
+		} else {
+			for (int i = 0; i < updateColumns.size(); i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				String colName = updateColumns.get(i).getColumnName();
+				builder.append(colName).append(" = VALUES(").append(colName)
+						.append(')');
+			}
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public boolean supportsSequences() {
+		return false;
+	}
+
+	@Override
+	public String createSequenceQuery(String sequenceName) {
+		throw new UnsupportedOperationException(
+				"MySQL has no sequences, use GenerationType.IDENTITY");
+	}
+
+	@Override
+	public boolean supportsBatchGeneratedKeys() {
+		return true;
+	}
+}
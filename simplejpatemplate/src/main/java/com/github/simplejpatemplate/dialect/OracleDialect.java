@@ -0,0 +1,41 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * Oracle. Upserts use <code>MERGE</code> with the parameters selected from
+ * <code>DUAL</code>. Pages use the standard <code>OFFSET ... FETCH</code>,
+ * available since Oracle 12c.
+ */
+public class OracleDialect extends Dialect {
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MERGE INTO ").append(tableName).append(" t");
+		builder.append(" USING ( SELECT ");
+		appendSelectParameters(builder, insertColumns);
+		builder.append(" FROM DUAL ) s ON ( t.")
+				.append(idColumn.getColumnName()).append(" = s.")
+				.append(idColumn.getColumnName()).append(" )");
+		if (updateColumns.isEmpty() == false) {
+			builder.append(" WHEN MATCHED THEN UPDATE SET ");
+			appendAssignments(builder, updateColumns, "s");
+		}
+		builder.append(" WHEN NOT MATCHED THEN INSERT ( ");
+		appendColumnNames(builder, insertColumns);
+		builder.append(" ) VALUES ( ");
+		appendPrefixedColumnNames(builder, insertColumns, "s");
+		builder.append(" )");
+		return builder.toString();
+	}
+
+	@Override
+	public String createSequenceQuery(String sequenceName) {
+		return "SELECT " + sequenceName + ".NEXTVAL FROM DUAL";
+	}
+}
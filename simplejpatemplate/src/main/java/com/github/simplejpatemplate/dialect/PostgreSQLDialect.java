@@ -0,0 +1,44 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * PostgreSQL. Upserts use <code>INSERT ... ON CONFLICT</code>, available
+ * since PostgreSQL 9.5. Pages use <code>LIMIT ... OFFSET</code>.
+ */
+public class PostgreSQLDialect extends Dialect {
+
+	@Override
+	public String createPageQuery(String sql, boolean offset, boolean limit) {
+		return appendLimitOffset(sql, offset, limit);
+	}
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		appendInsert(builder, tableName, insertColumns);
+		builder.append(" ON CONFLICT ( ").append(idColumn.getColumnName())
+				.append(" )");
+		if (updateColumns.isEmpty()) {
+			builder.append(" DO NOTHING");
+		} else {
+			builder.append(" DO UPDATE SET ");
+			appendAssignments(builder, updateColumns, "EXCLUDED");
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String createSequenceQuery(String sequenceName) {
+		return "SELECT nextval('" + sequenceName + "')";
+	}
+
+	@Override
+	public boolean supportsBatchGeneratedKeys() {
+		return true;
+	}
+}
@@ -0,0 +1,60 @@
+package com.github.simplejpatemplate.dialect;
+
+import java.util.List;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * Microsoft SQL Server. Upserts use <code>MERGE</code> with
+ * <code>HOLDLOCK</code>, so concurrent upserts of the same id do not race.
+ * Pages use <code>OFFSET ... FETCH</code>, available since SQL Server 2012, and
+ * require an <code>ORDER BY</code> clause. Rows are locked with the
+ * <code>UPDLOCK</code> table hint, as there is no <code>FOR UPDATE</code>
+ * outside of cursors.
+ */
+public class SQLServerDialect extends Dialect {
+
+	@Override
+	public String createPageQuery(String sql, boolean offset, boolean limit) {
+		if (limit == false) {
+			return super.createPageQuery(sql, offset, false);
+		}
+		// FETCH is only allowed after OFFSET
+		return super.createPageQuery(sql, true, true);
+	}
+
+	@Override
+	public String createUpsertQuery(String tableName, ColumnMetadata idColumn,
+			List<ColumnMetadata> insertColumns,
+			List<ColumnMetadata> updateColumns) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MERGE INTO ").append(tableName)
+				.append(" WITH (HOLDLOCK) AS t");
+		builder.append(" USING ( SELECT ");
+		appendSelectParameters(builder, insertColumns);
+		builder.append(" ) AS s ON t.").append(idColumn.getColumnName())
+				.append(" = s.").append(idColumn.getColumnName());
+		if (updateColumns.isEmpty() == false) {
+			builder.append(" WHEN MATCHED THEN UPDATE SET ");
+			appendAssignments(builder, updateColumns, "s");
+		}
+		builder.append(" WHEN NOT MATCHED THEN INSERT ( ");
+		appendColumnNames(builder, insertColumns);
+		builder.append(" ) VALUES ( ");
+		appendPrefixedColumnNames(builder, insertColumns, "s");
+		builder.append(" );");
+		return builder.toString();
+	}
+
+	@Override
+	public String createLockQuery(String tableName, String columnName,
+			String idColumnName) {
+		return "SELECT " + columnName + " FROM " + tableName
+				+ " WITH (UPDLOCK, ROWLOCK) WHERE " + idColumnName + " = :id";
+	}
+
+	@Override
+	public String createSequenceQuery(String sequenceName) {
+		return "SELECT NEXT VALUE FOR " + sequenceName;
+	}
+}
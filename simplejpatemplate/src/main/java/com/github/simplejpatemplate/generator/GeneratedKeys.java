@@ -0,0 +1,126 @@
+package com.github.simplejpatemplate.generator;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * Executes INSERT statements with named parameters and returns the keys the
+ * database generated, read with <code>getGeneratedKeys</code> from the same
+ * statement. All rows share one prepared statement.
+ */
+public final class GeneratedKeys {
+	private GeneratedKeys() {
+	}
+
+	/**
+	 * Inserts the rows and stores the generated key of every row in
+	 * <code>keys</code>
+	 * 
+	 * @param jdbc
+	 * @param sql
+	 *            an INSERT statement with named parameters
+	 * @param rows
+	 *            the parameters of every row
+	 * @param keyColumn
+	 *            the generated column, used when the driver returns more than
+	 *            one column
+	 * @param batch
+	 *            true to send all rows in one JDBC batch, which requires a
+	 *            driver that returns the keys of a batch
+	 * @param keys
+	 *            receives the key of every row, at the index of the row
+	 * @return the update counts
+	 * @throws DataRetrievalFailureException
+	 *             when the driver returns fewer keys than rows
+	 */
+	public static int[] insert(JdbcOperations jdbc, String sql,
+			List<? extends Map<String, ?>> rows, final String keyColumn,
+			final boolean batch, final Object[] keys) {
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+		MapSqlParameterSource first = new MapSqlParameterSource(rows.get(0));
+		final PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(
+				NamedParameterUtils.substituteNamedParameters(parsedSql, first),
+				NamedParameterUtils.buildSqlTypeArray(parsedSql, first));
+		factory.setReturnGeneratedKeys(true);
+
+		final Object[][] values = new Object[rows.size()][];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = NamedParameterUtils.buildValueArray(parsedSql,
+					new MapSqlParameterSource(rows.get(i)), null);
+		}
+
+		return jdbc.execute(factory.newPreparedStatementCreator(values[0]),
+				new PreparedStatementCallback<int[]>() {
+					public int[] doInPreparedStatement(PreparedStatement ps)
+							throws SQLException {
+						if (batch) {
+							for (Object[] row : values) {
+								factory.newPreparedStatementSetter(row)
+										.setValues(ps);
+								ps.addBatch();
+							}
+							int[] counts = ps.executeBatch();
+							readKeys(ps, keyColumn, keys, 0, keys.length);
+							return counts;
+						}
+
+						int[] counts = new int[values.length];
+						for (int i = 0; i < values.length; i++) {
+							factory.newPreparedStatementSetter(values[i])
+									.setValues(ps);
+							counts[i] = ps.executeUpdate();
+							readKeys(ps, keyColumn, keys, i, 1);
+						}
+						return counts;
+					}
+				});
+	}
+
+	private static void readKeys(PreparedStatement ps, String keyColumn,
+			Object[] keys, int offset, int count) throws SQLException {
+		ResultSet rs = ps.getGeneratedKeys();
+		try {
+			int read = 0;
+			if (rs != null) {
+				int index = findKeyColumn(rs.getMetaData(), keyColumn);
+				while (read < count && rs.next()) {
+					keys[offset + read++] = rs.getObject(index);
+				}
+			}
+			if (read < count) {
+				throw new DataRetrievalFailureException("Expected " + count
+						+ " generated keys, the driver returned " + read);
+			}
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+		}
+	}
+
+	private static int findKeyColumn(ResultSetMetaData metaData,
+			String keyColumn) throws SQLException {
+		int count = metaData.getColumnCount();
+		if (count == 1) {
+			return 1;
+		}
+		for (int i = 1; i <= count; i++) {
+			if (keyColumn.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+				return i;
+			}
+		}
+		throw new DataRetrievalFailureException("Generated keys have no column "
+				+ keyColumn);
+	}
+}
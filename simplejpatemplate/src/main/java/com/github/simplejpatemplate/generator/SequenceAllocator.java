@@ -0,0 +1,67 @@
+package com.github.simplejpatemplate.generator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.jdbc.core.JdbcOperations;
+
+/**
+ * Allocates ids from database sequences in blocks. Every sequence value
+ * <code>n</code> reserves the ids <code>n</code> to
+ * <code>n + allocationSize - 1</code>, so the sequence must be incremented by
+ * the allocation size; only one query is needed per block.
+ * <p>
+ * An allocator is thread safe and should be shared by all entity managers of
+ * the same database, like an {@link com.github.simplejpatemplate.cache.EntityCache}.
+ * Unused ids of a block are lost when the allocator is discarded.
+ */
+public class SequenceAllocator {
+	private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
+
+	/**
+	 * Returns the next id of the sequence, querying a new block when the
+	 * current one is used up
+	 * 
+	 * @param sequenceName
+	 * @param allocationSize
+	 *            the increment of the sequence
+	 * @param jdbc
+	 * @param sequenceQuery
+	 *            the query returning the next sequence value, from
+	 *            {@link com.github.simplejpatemplate.dialect.Dialect#createSequenceQuery(String)}
+	 * @return
+	 */
+	public long next(String sequenceName, int allocationSize,
+			JdbcOperations jdbc, String sequenceQuery) {
+		Block block = blocks.get(sequenceName);
+		if (block == null) {
+			block = new Block();
+			Block existing = blocks.putIfAbsent(sequenceName, block);
+			if (existing != null) {
+				block = existing;
+			}
+		}
+		return block.next(allocationSize, jdbc, sequenceQuery);
+	}
+
+	/**
+	 * Drops all reserved ids
+	 */
+	public void clear() {
+		blocks.clear();
+	}
+
+	private static final class Block {
+		private long next;
+		private long end;
+
+		synchronized long next(int allocationSize, JdbcOperations jdbc,
+				String sequenceQuery) {
+			if (next >= end) {
+				next = jdbc.queryForLong(sequenceQuery);
+				end = next + allocationSize;
+			}
+			return next++;
+		}
+	}
+}
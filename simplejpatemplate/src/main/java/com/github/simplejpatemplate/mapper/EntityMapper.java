@@ -0,0 +1,74 @@
+package com.github.simplejpatemplate.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Maps one entity class without reflection. Implementations are generated at
+ * compile time by the annotation processor of the
+ * <code>simplejpatemplate-processor</code> module, as a class named after the
+ * entity with a <code>_Mapper</code> suffix, and looked up by
+ * {@link EntityMappers}. Entities without a generated mapper are mapped with
+ * reflection.
+ * <p>
+ * A mapper converts values with the same converters as the reflective
+ * {@link com.github.simplejpatemplate.convert.ColumnBinding}s, resolved when
+ * the mapper is loaded. Mappers are stateless and shared between threads.
+ * 
+ * @param <T>
+ *            the entity class
+ */
+public interface EntityMapper<T> {
+	Class<T> getEntityClass();
+
+	/**
+	 * The mapped columns in the order they are read by
+	 * {@link #read(ResultSet, int[], Object)}: streams last, as reading
+	 * another column may close them
+	 */
+	String[] getColumnNames();
+
+	/**
+	 * Creates an entity with the no-argument constructor
+	 */
+	T newInstance();
+
+	/**
+	 * Reads the columns of the current row into the entity
+	 * 
+	 * @param rs
+	 * @param indexes
+	 *            the column index of every column of
+	 *            {@link #getColumnNames()}, or 0 when the result set does not
+	 *            have the column
+	 * @param entity
+	 * @throws SQLException
+	 */
+	void read(ResultSet rs, int[] indexes, T entity) throws SQLException;
+
+	/**
+	 * Adds the values of the insertable columns, as they are bound to a
+	 * statement, keyed by column name in the order of the INSERT statement
+	 * 
+	 * @param entity
+	 * @param values
+	 */
+	void writeInsertParameters(T entity, Map<String, Object> values);
+
+	/**
+	 * The INSERT statement of the entity, as created by
+	 * {@link com.github.simplejpatemplate.util.EntityStatements}
+	 */
+	String getInsertSql();
+
+	/**
+	 * The SELECT statement of one row by <code>:id</code>
+	 */
+	String getSelectSql();
+
+	/**
+	 * The DELETE statement of one row by <code>:id</code>
+	 */
+	String getDeleteSql();
+}
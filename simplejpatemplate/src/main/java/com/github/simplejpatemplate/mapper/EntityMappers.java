@@ -0,0 +1,84 @@
+package com.github.simplejpatemplate.mapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Looks up the generated {@link EntityMapper} of an entity class: the class
+ * with the binary name of the entity followed by <code>_Mapper</code>, loaded
+ * by the class loader of the entity. The result of every lookup, including a
+ * missing mapper, is cached.
+ * <p>
+ * Generated mappers can be turned off with {@link #setEnabled(boolean)} or
+ * the system property <code>simplejpatemplate.mappers=false</code>, e.g. to
+ * compare them with the reflective mapping.
+ */
+public final class EntityMappers {
+	/**
+	 * The suffix of the name of a generated mapper class
+	 */
+	public static final String SUFFIX = "_Mapper";
+
+	private static final Object NONE = new Object();
+	private static final ConcurrentMap<Class<?>, Object> CACHE = new ConcurrentHashMap<Class<?>, Object>();
+	private static volatile boolean enabled = Boolean.valueOf(
+			System.getProperty("simplejpatemplate.mappers", "true"))
+			.booleanValue();
+
+	private EntityMappers() {
+	}
+
+	/**
+	 * Returns the generated mapper of the class, or null when there is none
+	 * or generated mappers are disabled
+	 * 
+	 * @param entityClass
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> EntityMapper<T> forClass(Class<T> entityClass) {
+		if (enabled == false) {
+			return null;
+		}
+		Object mapper = CACHE.get(entityClass);
+		if (mapper == null) {
+			mapper = load(entityClass);
+			Object existing = CACHE.putIfAbsent(entityClass, mapper);
+			if (existing != null) {
+				mapper = existing;
+			}
+		}
+		return mapper != NONE ? (EntityMapper<T>) mapper : null;
+	}
+
+	private static Object load(Class<?> entityClass) {
+		ClassLoader loader = entityClass.getClassLoader();
+		try {
+			Class<?> cl = Class.forName(entityClass.getName() + SUFFIX, true,
+					loader);
+			if (EntityMapper.class.isAssignableFrom(cl) == false) {
+				return NONE;
+			}
+			EntityMapper<?> mapper = (EntityMapper<?>) cl
+					.getDeclaredConstructor().newInstance();
+			// A mapper generated for another class with the same name
+			return mapper.getEntityClass() == entityClass ? mapper : NONE;
+		} catch (ClassNotFoundException e) {
+			return NONE;
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the generated mappers. Entities already mapped keep
+	 * the statements they were mapped with.
+	 */
+	public static void setEnabled(boolean enabled) {
+		EntityMappers.enabled = enabled;
+	}
+}
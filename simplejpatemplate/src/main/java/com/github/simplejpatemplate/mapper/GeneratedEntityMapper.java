@@ -0,0 +1,85 @@
+package com.github.simplejpatemplate.mapper;
+
+import com.github.simplejpatemplate.convert.ColumnBinding;
+import com.github.simplejpatemplate.convert.Converter;
+import com.github.simplejpatemplate.convert.Converters;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+/**
+ * The base class of the generated {@link EntityMapper}s, holding the
+ * statements and the conversions shared by all of them. Not meant to be
+ * extended by hand.
+ * 
+ * @param <T>
+ *            the entity class
+ */
+public abstract class GeneratedEntityMapper<T> implements EntityMapper<T> {
+	private static final JdbcJpaHelper HELPER = new JdbcJpaHelper();
+
+	private final Class<T> entityClass;
+	private final String[] columnNames;
+	private final String insertSql;
+	private final String selectSql;
+	private final String deleteSql;
+
+	protected GeneratedEntityMapper(Class<T> entityClass,
+			String[] columnNames, String insertSql, String selectSql,
+			String deleteSql) {
+		this.entityClass = entityClass;
+		this.columnNames = columnNames;
+		this.insertSql = insertSql;
+		this.selectSql = selectSql;
+		this.deleteSql = deleteSql;
+	}
+
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	public String getInsertSql() {
+		return insertSql;
+	}
+
+	public String getSelectSql() {
+		return selectSql;
+	}
+
+	public String getDeleteSql() {
+		return deleteSql;
+	}
+
+	/**
+	 * The converter of a field type
+	 * 
+	 * @see ColumnBinding#resolveConverter(Class, boolean)
+	 */
+	protected static Converter<Object> converter(Class<?> type,
+			boolean enumByName) {
+		return ColumnBinding.resolveConverter(type, enumByName);
+	}
+
+	/**
+	 * Converts a field value for binding
+	 * 
+	 * @see ColumnBinding#convert(Converter, Object)
+	 */
+	protected static Object bind(Converter<Object> converter, Object value) {
+		return ColumnBinding.convert(converter, value);
+	}
+
+	/**
+	 * Converts a referenced entity to the bound value of its foreign key
+	 * column: its id, converted by the converter of the id type
+	 */
+	protected static Object bindReference(Object reference) {
+		try {
+			return Converters.write(HELPER.getEntityID(reference));
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+}
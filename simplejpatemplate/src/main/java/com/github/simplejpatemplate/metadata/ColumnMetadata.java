@@ -0,0 +1,367 @@
+package com.github.simplejpatemplate.metadata;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.sql.Blob;
+import java.sql.Clob;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Version;
+
+import com.github.simplejpatemplate.accessor.FieldAccessor;
+import com.github.simplejpatemplate.accessor.FieldAccessors;
+import com.github.simplejpatemplate.convert.ColumnBinding;
+
+/**
+ * Immutable description of a single mapped entity field and the column it is
+ * stored in. Instances are created by {@link EntityMetadata} and can be shared
+ * between threads.
+ */
+public final class ColumnMetadata {
+	/**
+	 * The kind of JPA relation a field takes part in
+	 */
+	public enum RelationType {
+		NONE, ONE_TO_ONE, MANY_TO_ONE, ONE_TO_MANY, MANY_TO_MANY
+	}
+
+	private final Field field;
+	private final FieldAccessor accessor;
+	private final String columnName;
+	private final boolean id;
+	private final boolean version;
+	private final boolean joinColumn;
+	private final boolean insertable;
+	private final boolean updatable;
+	private final RelationType relationType;
+	private final boolean lazy;
+	private final boolean foreignKey;
+	private final Class<?> targetEntity;
+	private final ColumnBinding binding;
+	private final GenerationType generationType;
+	private final String generator;
+
+	ColumnMetadata(Field field) {
+		this.field = field;
+		this.accessor = FieldAccessors.createAccessor(field);
+
+		Column col = field.getAnnotation(Column.class);
+		JoinColumn join = field.getAnnotation(JoinColumn.class);
+		Id idAnnotation = field.getAnnotation(Id.class);
+		GeneratedValue generated = field.getAnnotation(GeneratedValue.class);
+
+		this.id = idAnnotation != null;
+		this.version = field.getAnnotation(Version.class) != null;
+		this.joinColumn = join != null;
+		this.columnName = resolveColumnName(field, col, join);
+		this.generationType = generated != null ? generated.strategy() : null;
+		this.generator = generated != null ? generated.generator() : "";
+		this.insertable = isInsertable(col, id || version, join)
+				&& isGeneratedOnInsert(generationType) == false;
+		this.updatable = version == false
+				&& isUpdatable(col, idAnnotation, join);
+		if (version && isVersionType(field.getType()) == false) {
+			throw new IllegalArgumentException("@Version field " + field
+					+ " must be an int, long or short");
+		}
+		this.relationType = resolveRelationType(field);
+		this.lazy = isLazy(field);
+		this.foreignKey = hasForeignKey(field, join);
+		this.targetEntity = resolveTargetEntity(field);
+		this.binding = isRelation() ? null : ColumnBinding.forField(field,
+				accessor);
+	}
+
+	/**
+	 * Creates a column name according to the JPA spec
+	 */
+	private static String resolveColumnName(Field field, Column col,
+			JoinColumn join) {
+		if (col != null && col.name() != null && col.name().equals("") == false) {
+			return col.name();
+		}
+		if (join != null && join.name() != null
+				&& join.name().equals("") == false) {
+			return join.name();
+		}
+		return field.getName();
+	}
+
+	/**
+	 * @param key
+	 *            true for the @Id and the @Version field, which are inserted
+	 *            without @Column annotation
+	 */
+	private static boolean isInsertable(Column col, boolean key,
+			JoinColumn join) {
+		if (join != null) {
+			return join.insertable();
+		} else if (col != null) {
+			return col.insertable();
+		}
+		return key;
+	}
+
+	private static boolean isVersionType(Class<?> type) {
+		return type == int.class || type == Integer.class
+				|| type == long.class || type == Long.class
+				|| type == short.class || type == Short.class;
+	}
+
+	/**
+	 * IDENTITY columns are filled in by the database. AUTO ids are insertable:
+	 * the strategy they stand for depends on the database, which is resolved
+	 * by the entity manager.
+	 */
+	private static boolean isGeneratedOnInsert(GenerationType type) {
+		return type == GenerationType.IDENTITY;
+	}
+
+	private static boolean isUpdatable(Column col, Id idAnnotation,
+			JoinColumn join) {
+		if (idAnnotation != null) {
+			// The primary key identifies the row and is never part of a SET
+			return false;
+		} else if (join != null) {
+			return join.updatable();
+		} else if (col != null) {
+			return col.updatable();
+		}
+		return false;
+	}
+
+	private static RelationType resolveRelationType(Field field) {
+		if (field.getAnnotation(OneToOne.class) != null) {
+			return RelationType.ONE_TO_ONE;
+		} else if (field.getAnnotation(ManyToOne.class) != null) {
+			return RelationType.MANY_TO_ONE;
+		} else if (field.getAnnotation(OneToMany.class) != null) {
+			return RelationType.ONE_TO_MANY;
+		} else if (field.getAnnotation(ManyToMany.class) != null) {
+			return RelationType.MANY_TO_MANY;
+		}
+		return RelationType.NONE;
+	}
+
+	private static boolean isLazy(Field field) {
+		Basic basic = field.getAnnotation(Basic.class);
+		if (basic != null) {
+			return basic.fetch() == FetchType.LAZY;
+		}
+		ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+		if (manyToOne != null) {
+			return manyToOne.fetch() == FetchType.LAZY;
+		}
+		OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+		if (oneToOne != null) {
+			return oneToOne.fetch() == FetchType.LAZY;
+		}
+		return false;
+	}
+
+	private static boolean hasForeignKey(Field field, JoinColumn join) {
+		if (join != null || field.getAnnotation(ManyToOne.class) != null) {
+			return true;
+		}
+		OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+		// The inverse side of a one to one has no column
+		return oneToOne != null && oneToOne.mappedBy().equals("");
+	}
+
+	private static Class<?> resolveTargetEntity(Field field) {
+		Class<?> target = null;
+		ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+		OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+		if (manyToOne != null) {
+			target = manyToOne.targetEntity();
+		} else if (oneToOne != null) {
+			target = oneToOne.targetEntity();
+		}
+		if (target == null || target == void.class) {
+			return field.getType();
+		}
+		return target;
+	}
+
+	/**
+	 * The field, already made accessible
+	 */
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * The accessor used to read and write the field
+	 */
+	public FieldAccessor getAccessor() {
+		return accessor;
+	}
+
+	/**
+	 * The binding that reads the column into the field and converts the field
+	 * value for statements, resolved from the
+	 * {@link com.github.simplejpatemplate.convert.Converters} registry. Null
+	 * for relations.
+	 */
+	public ColumnBinding getBinding() {
+		return binding;
+	}
+
+	/**
+	 * Returns the field value of the given entity
+	 */
+	public Object getValue(Object entity) {
+		return accessor.get(entity);
+	}
+
+	/**
+	 * Sets the field value of the given entity
+	 */
+	public void setValue(Object entity, Object value) {
+		accessor.set(entity, value);
+	}
+
+	public String getFieldName() {
+		return field.getName();
+	}
+
+	public Class<?> getType() {
+		return field.getType();
+	}
+
+	/**
+	 * The column name from {@link Column} or {@link JoinColumn}, defaulting to
+	 * the field name
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	public boolean isId() {
+		return id;
+	}
+
+	/**
+	 * True for the {@link Version} field. It is inserted, but never part of
+	 * the updatable columns: UPDATE statements increment it and compare it
+	 * in their WHERE clause.
+	 */
+	public boolean isVersion() {
+		return version;
+	}
+
+	/**
+	 * False for columns that are not written by INSERT statements, including
+	 * ids generated by the database on insert
+	 */
+	public boolean isInsertable() {
+		return insertable;
+	}
+
+	/**
+	 * The strategy of the {@link GeneratedValue} annotation, or null
+	 */
+	public GenerationType getGenerationType() {
+		return generationType;
+	}
+
+	/**
+	 * The generator name of the {@link GeneratedValue} annotation, or an empty
+	 * string
+	 */
+	public String getGenerator() {
+		return generator;
+	}
+
+	public boolean isUpdatable() {
+		return updatable;
+	}
+
+	public RelationType getRelationType() {
+		return relationType;
+	}
+
+	/**
+	 * True for any field annotated with one of the JPA relation annotations
+	 */
+	public boolean isRelation() {
+		return relationType != RelationType.NONE;
+	}
+
+	/**
+	 * True when the column holds the id of another entity: a
+	 * {@link OneToOne}, a {@link ManyToOne} or a {@link JoinColumn}
+	 */
+	public boolean isReference() {
+		return joinColumn || relationType == RelationType.ONE_TO_ONE
+				|| relationType == RelationType.MANY_TO_ONE;
+	}
+
+	/**
+	 * True when the reference has a foreign key column in the entity table
+	 */
+	public boolean hasForeignKey() {
+		return foreignKey;
+	}
+
+	/**
+	 * True for <code>InputStream</code> and <code>Reader</code> fields, which
+	 * are streamed from and to the database and can only be read while the
+	 * row is open
+	 */
+	public boolean isStream() {
+		Class<?> type = field.getType();
+		return InputStream.class.isAssignableFrom(type)
+				|| Reader.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * True for streams and <code>Blob</code> and <code>Clob</code> locators
+	 */
+	public boolean isLob() {
+		Class<?> type = field.getType();
+		return isStream() || Blob.class.isAssignableFrom(type)
+				|| Clob.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * True when the field or reference is declared with
+	 * <code>fetch = LAZY</code>
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * The entity class of a reference: the <code>targetEntity</code> of the
+	 * relation annotation, defaulting to the field type
+	 */
+	public Class<?> getTargetEntity() {
+		return targetEntity;
+	}
+
+	/**
+	 * True when the column is stored in the entity table and can be read from
+	 * a row of it. Collection valued relations are mapped from the other side.
+	 */
+	public boolean isMappedColumn() {
+		return isRelation() == false;
+	}
+
+	@Override
+	public String toString() {
+		return field.getDeclaringClass().getSimpleName() + "." + field.getName()
+				+ " -> " + columnName;
+	}
+}
@@ -0,0 +1,396 @@
+package com.github.simplejpatemplate.metadata;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Entity;
+import javax.persistence.GenerationType;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+/**
+ * Immutable mapping information of an entity class, resolved once from the JPA
+ * annotations and shared by all helpers, row mappers and entity managers.
+ * Use {@link #forClass(Class)} to obtain the cached instance.
+ */
+public final class EntityMetadata {
+	private static final ConcurrentMap<Class<?>, EntityMetadata> CACHE = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	private final Class<?> entityClass;
+	private final boolean entity;
+	private final String tableName;
+	private final String tableSchema;
+	private final String tableCatalog;
+	private final ColumnMetadata idColumn;
+	private final ColumnMetadata versionColumn;
+	private final List<ColumnMetadata> columns;
+	private final List<ColumnMetadata> mappedColumns;
+	private final List<ColumnMetadata> insertableColumns;
+	private final List<ColumnMetadata> updatableColumns;
+	private final List<ColumnMetadata> relations;
+	private final List<ColumnMetadata> references;
+	private final List<ColumnMetadata> selectedColumns;
+	private final String sequenceName;
+	private final int allocationSize;
+
+	/**
+	 * Returns the metadata of the given class, resolving it on first use
+	 *
+	 * @param cl
+	 * @return
+	 */
+	public static EntityMetadata forClass(Class<?> cl) {
+		if (cl == null) {
+			throw new IllegalArgumentException("Entity class is null");
+		}
+		EntityMetadata metadata = CACHE.get(cl);
+		if (metadata == null) {
+			metadata = new EntityMetadata(cl);
+			EntityMetadata existing = CACHE.putIfAbsent(cl, metadata);
+			if (existing != null) {
+				metadata = existing;
+			}
+		}
+		return metadata;
+	}
+
+	private EntityMetadata(Class<?> cl) {
+		this.entityClass = cl;
+		this.entity = cl.getAnnotation(Entity.class) != null;
+
+		Table table = cl.getAnnotation(Table.class);
+		if (table != null) {
+			this.tableName = table.name();
+			this.tableSchema = table.schema();
+			this.tableCatalog = table.catalog();
+		} else {
+			this.tableName = null;
+			this.tableSchema = null;
+			this.tableCatalog = null;
+		}
+
+		ColumnMetadata id = null;
+		ColumnMetadata version = null;
+		List<ColumnMetadata> all = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> mapped = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> insertable = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> updatable = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> rels = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> refs = new ArrayList<ColumnMetadata>();
+		List<ColumnMetadata> selected = new ArrayList<ColumnMetadata>();
+
+		Field[] fields = cl.getDeclaredFields();
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			if (isPersistent(field) == false) {
+				continue;
+			}
+
+			ColumnMetadata column = new ColumnMetadata(field);
+			all.add(column);
+			if (id == null && column.isId()) {
+				id = column;
+			}
+			if (version == null && column.isVersion()) {
+				version = column;
+			}
+			if (column.isMappedColumn()) {
+				mapped.add(column);
+			}
+			if (column.isInsertable()) {
+				insertable.add(column);
+			}
+			if (column.isUpdatable()) {
+				updatable.add(column);
+			}
+			if (column.isRelation()) {
+				rels.add(column);
+			}
+			if (column.isReference()) {
+				refs.add(column);
+			}
+			if (column.isMappedColumn() ? column.isLazy() == false
+					&& column.isStream() == false : column.hasForeignKey()) {
+				selected.add(column);
+			}
+		}
+
+		this.idColumn = id;
+		this.versionColumn = version;
+		this.columns = Collections.unmodifiableList(all);
+		this.mappedColumns = Collections.unmodifiableList(mapped);
+		this.insertableColumns = Collections.unmodifiableList(insertable);
+		this.updatableColumns = Collections.unmodifiableList(updatable);
+		this.relations = Collections.unmodifiableList(rels);
+		this.references = Collections.unmodifiableList(refs);
+		this.selectedColumns = Collections.unmodifiableList(selected);
+
+		SequenceGenerator sequence = findSequenceGenerator(cl, id);
+		if (sequence != null) {
+			this.sequenceName = sequence.sequenceName().equals("") ? sequence
+					.name() : sequence.sequenceName();
+			this.allocationSize = Math.max(1, sequence.allocationSize());
+		} else if (id != null && id.getGenerator().equals("") == false) {
+			this.sequenceName = id.getGenerator();
+			this.allocationSize = 1;
+		} else {
+			this.sequenceName = tableName != null ? tableName + "_SEQ" : null;
+			this.allocationSize = 1;
+		}
+	}
+
+	/**
+	 * Looks up the {@link SequenceGenerator} on the id field or the class,
+	 * preferring the one named by the generator of the id
+	 */
+	private static SequenceGenerator findSequenceGenerator(Class<?> cl,
+			ColumnMetadata id) {
+		if (id == null || (id.getGenerationType() != GenerationType.SEQUENCE
+				&& id.getGenerationType() != GenerationType.AUTO)) {
+			return null;
+		}
+		SequenceGenerator onField = id.getField().getAnnotation(
+				SequenceGenerator.class);
+		SequenceGenerator onClass = cl.getAnnotation(SequenceGenerator.class);
+		String generator = id.getGenerator();
+		if (onField != null
+				&& (generator.equals("") || generator.equals(onField.name()))) {
+			return onField;
+		} else if (onClass != null
+				&& (generator.equals("") || generator.equals(onClass.name()))) {
+			return onClass;
+		}
+		return null;
+	}
+
+	private static boolean isPersistent(Field field) {
+		int modifiers = field.getModifiers();
+		if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+				|| field.isSynthetic()) {
+			return false;
+		}
+		return field.getAnnotation(Transient.class) == null;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * True when the class carries the {@link Entity} annotation
+	 */
+	public boolean isEntity() {
+		return entity;
+	}
+
+	/**
+	 * The table name from {@link Table}, or null when there is none
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Returns the fully qualified table name (catalog.schema.table) using the
+	 * {@link Table} annotation
+	 *
+	 * @param databaseName
+	 *            Overrides the @Table catalog when non-null
+	 * @return
+	 */
+	public String getQualifiedTableName(String databaseName) {
+		if (tableName == null || tableName.equals("")) {
+			throw new IllegalArgumentException(
+					"Table name could not be resolved from @Table");
+		}
+
+		String catalog = databaseName != null ? databaseName : tableCatalog;
+
+		StringBuilder builder = new StringBuilder();
+		if (catalog != null && catalog.equals("") == false) {
+			builder.append(catalog).append('.');
+		}
+		if (tableSchema != null && tableSchema.equals("") == false) {
+			builder.append(tableSchema).append('.');
+		}
+		builder.append(tableName);
+		return builder.toString();
+	}
+
+	/**
+	 * The first field with an @Id annotation, or null when there is none
+	 */
+	public ColumnMetadata getIdColumn() {
+		return idColumn;
+	}
+
+	/**
+	 * Returns the @Id column, failing when the class does not declare one
+	 */
+	public ColumnMetadata requireIdColumn() {
+		if (idColumn == null) {
+			throw new IllegalArgumentException(
+					"@Id field could not be resolved");
+		}
+		return idColumn;
+	}
+
+	/**
+	 * The field with a @Version annotation, or null when the entity is not
+	 * versioned
+	 */
+	public ColumnMetadata getVersionColumn() {
+		return versionColumn;
+	}
+
+	/**
+	 * True when the entity has a @Version field, so its updates and deletes
+	 * are checked against concurrent modification
+	 */
+	public boolean isVersioned() {
+		return versionColumn != null;
+	}
+
+	/**
+	 * True when the database generates the id on insert, so it has to be read
+	 * back from the generated keys: an IDENTITY
+	 * <code>@GeneratedValue</code>, or an id column that is not insertable
+	 */
+	public boolean isIdGeneratedOnInsert() {
+		return idColumn != null && idColumn.isInsertable() == false;
+	}
+
+	/**
+	 * True when the id has an AUTO <code>@GeneratedValue</code>, the default
+	 * strategy. Unset AUTO ids are allocated from the sequence
+	 * {@link #getSequenceName()} when the database has sequences.
+	 */
+	public boolean isIdAuto() {
+		return idColumn != null
+				&& idColumn.getGenerationType() == GenerationType.AUTO;
+	}
+
+	/**
+	 * True when ids are allocated from the sequence {@link #getSequenceName()}
+	 * before the insert
+	 */
+	public boolean isIdFromSequence() {
+		return idColumn != null
+				&& idColumn.getGenerationType() == GenerationType.SEQUENCE;
+	}
+
+	/**
+	 * The sequence of a SEQUENCE or AUTO id: the <code>sequenceName</code> of the
+	 * matching {@link SequenceGenerator}, else the generator name, else the
+	 * table name followed by <code>_SEQ</code>
+	 */
+	public String getSequenceName() {
+		return sequenceName;
+	}
+
+	/**
+	 * The number of ids allocated with one sequence value, from the
+	 * {@link SequenceGenerator}. The sequence must be incremented by this
+	 * number. 1 when there is no generator annotation.
+	 */
+	public int getAllocationSize() {
+		return allocationSize;
+	}
+
+	/**
+	 * All persistent fields, in declaration order
+	 */
+	public List<ColumnMetadata> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * The fields that are read from a row of the entity table
+	 */
+	public List<ColumnMetadata> getMappedColumns() {
+		return mappedColumns;
+	}
+
+	public List<ColumnMetadata> getInsertableColumns() {
+		return insertableColumns;
+	}
+
+	public List<ColumnMetadata> getUpdatableColumns() {
+		return updatableColumns;
+	}
+
+	/**
+	 * The fields annotated with one of the JPA relation annotations
+	 */
+	public List<ColumnMetadata> getRelations() {
+		return relations;
+	}
+
+	/**
+	 * The columns read by the generated SELECT statements: the mapped columns
+	 * that are neither lazy nor streams and the foreign key columns of
+	 * references
+	 */
+	public List<ColumnMetadata> getSelectedColumns() {
+		return selectedColumns;
+	}
+
+	/**
+	 * The relations stored as a foreign key column of the entity table
+	 * 
+	 * @see ColumnMetadata#isReference()
+	 */
+	public List<ColumnMetadata> getReferences() {
+		return references;
+	}
+
+	/**
+	 * True when one of the references is declared with
+	 * <code>fetch = LAZY</code>
+	 */
+	public boolean hasLazyReferences() {
+		for (ColumnMetadata column : references) {
+			if (column.isLazy()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * True when one of the mapped columns is a stream or a LOB locator
+	 * 
+	 * @see ColumnMetadata#isLob()
+	 */
+	public boolean hasLobColumns() {
+		for (ColumnMetadata column : mappedColumns) {
+			if (column.isLob()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the column mapped to the given field name, or null
+	 */
+	public ColumnMetadata getColumnByField(String fieldName) {
+		for (ColumnMetadata column : columns) {
+			if (column.getFieldName().equals(fieldName)) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "EntityMetadata[" + entityClass.getName() + "]";
+	}
+}
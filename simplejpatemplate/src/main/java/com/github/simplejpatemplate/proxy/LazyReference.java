@@ -0,0 +1,32 @@
+package com.github.simplejpatemplate.proxy;
+
+/**
+ * Implemented by the proxies of lazy references. The primary key is available
+ * without loading the referenced entity.
+ * 
+ * @see LazyReferences
+ */
+public interface LazyReference {
+	/**
+	 * The entity class of the referenced entity
+	 */
+	Class<?> getReferenceClass();
+
+	/**
+	 * The primary key of the referenced entity
+	 */
+	Object getReferenceId();
+
+	/**
+	 * True when the referenced entity was loaded
+	 */
+	boolean isReferenceInitialized();
+
+	/**
+	 * Loads the referenced entity on first use and returns it
+	 * 
+	 * @throws javax.persistence.EntityNotFoundException
+	 *             when there is no entity with the primary key
+	 */
+	Object getReferenceTarget();
+}
@@ -0,0 +1,119 @@
+package com.github.simplejpatemplate.proxy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
+/**
+ * Creates JDK proxies for references declared with an interface type. A proxy
+ * holds the primary key of the referenced entity and loads it with
+ * {@link EntityManager#find(Class, Object)} on the first method call, except
+ * for the getter of the @Id field, which returns the primary key.
+ */
+public final class LazyReferences {
+
+	private LazyReferences() {
+	}
+
+	/**
+	 * Creates a proxy implementing the given interface and
+	 * {@link LazyReference}
+	 * 
+	 * @param interfaceType
+	 *            the declared type of the reference, implemented by the entity
+	 *            class
+	 * @param entityClass
+	 * @param primaryKey
+	 * @param entityManager
+	 *            loads the entity on first use
+	 * @return
+	 */
+	public static Object createProxy(Class<?> interfaceType,
+			Class<?> entityClass, Object primaryKey,
+			EntityManager entityManager) {
+		if (interfaceType.isInterface() == false) {
+			throw new IllegalArgumentException(interfaceType.getName()
+					+ " is not an interface");
+		}
+		return Proxy.newProxyInstance(entityClass.getClassLoader(),
+				new Class<?>[] { interfaceType, LazyReference.class },
+				new ReferenceHandler(entityClass, primaryKey, entityManager));
+	}
+
+	/**
+	 * True unless the object is a proxy whose entity was not loaded yet
+	 */
+	public static boolean isInitialized(Object entity) {
+		if (entity instanceof LazyReference) {
+			return ((LazyReference) entity).isReferenceInitialized();
+		}
+		return true;
+	}
+
+	private static final class ReferenceHandler implements InvocationHandler {
+		private final Class<?> entityClass;
+		private final Object primaryKey;
+		private final EntityManager entityManager;
+		private final String idGetterName;
+		private Object target;
+
+		ReferenceHandler(Class<?> entityClass, Object primaryKey,
+				EntityManager entityManager) {
+			this.entityClass = entityClass;
+			this.primaryKey = primaryKey;
+			this.entityManager = entityManager;
+			ColumnMetadata idColumn = EntityMetadata.forClass(entityClass)
+					.requireIdColumn();
+			String name = idColumn.getFieldName();
+			this.idGetterName = "get" + Character.toUpperCase(name.charAt(0))
+					+ name.substring(1);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			if (method.getDeclaringClass() == LazyReference.class) {
+				return invokeReference(method);
+			}
+			if (target == null && method.getParameterTypes().length == 0
+					&& method.getName().equals(idGetterName)) {
+				return primaryKey;
+			}
+			try {
+				return method.invoke(getTarget(), args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		private Object invokeReference(Method method) {
+			String name = method.getName();
+			if (name.equals("getReferenceClass")) {
+				return entityClass;
+			} else if (name.equals("getReferenceId")) {
+				return primaryKey;
+			} else if (name.equals("isReferenceInitialized")) {
+				return target != null;
+			}
+			return getTarget();
+		}
+
+		private Object getTarget() {
+			if (target == null) {
+				target = entityManager.find(entityClass, primaryKey);
+				if (target == null) {
+					throw new EntityNotFoundException("No "
+							+ entityClass.getSimpleName() + " with id "
+							+ primaryKey);
+				}
+			}
+			return target;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.github.simplejpatemplate.query;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over an open JDBC result set. The iterator closes the result
+ * set, statement and connection when it is exhausted; callers that stop
+ * early must call {@link #close()}.
+ * 
+ * @param <T>
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+	/**
+	 * Releases the JDBC resources. Does not throw a checked exception and can
+	 * be called more than once.
+	 */
+	void close();
+}
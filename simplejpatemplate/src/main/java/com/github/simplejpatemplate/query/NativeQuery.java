@@ -0,0 +1,363 @@
+package com.github.simplejpatemplate.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.simplejpatemplate.AssociationLoader;
+import com.github.simplejpatemplate.cache.EntityCache;
+import com.github.simplejpatemplate.dialect.Dialect;
+
+/**
+ * A native SQL <code>Query</code> with named parameters. Positional parameters
+ * set with {@link #setParameter(int, Object)} are written <code>:1</code>,
+ * <code>:2</code>, ... in the SQL. {@link #setFirstResult(int)} and
+ * {@link #setMaxResults(int)} are added to the SQL by the {@link Dialect}, so
+ * only the requested page is read from the database.
+ * <p>
+ * The entities returned are not managed by the entity manager. When an
+ * {@link AssociationLoader} is given, the references of every page are loaded
+ * in one query per referenced class.
+ */
+public class NativeQuery implements Query {
+	/**
+	 * The JDBC fetch size, an Integer
+	 */
+	public static final String HINT_FETCH_SIZE = "com.github.simplejpatemplate.fetchSize";
+
+	/**
+	 * The query timeout in milliseconds, an Integer, as defined by JPA 2
+	 */
+	public static final String HINT_TIMEOUT = "javax.persistence.query.timeout";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final Dialect dialect;
+	private final String sql;
+	private final RowMapper<?> rowMapper;
+	private final AssociationLoader associationLoader;
+	private final MapSqlParameterSource parameters = new MapSqlParameterSource();
+	private int firstResult;
+	private int maxResults = Integer.MAX_VALUE;
+	private int fetchSize;
+	private int timeout;
+	private FlushModeType flushMode;
+	private EntityManager entityManager;
+	private EntityCache entityCache;
+
+	/**
+	 * @param jdbcTemplate
+	 * @param dialect
+	 *            creates the pagination clauses
+	 * @param sql
+	 *            SQL with named parameters
+	 * @param rowMapper
+	 * @param fetchSize
+	 *            the default JDBC fetch size, 0 for the driver default
+	 */
+	public NativeQuery(JdbcTemplate jdbcTemplate, Dialect dialect, String sql,
+			RowMapper<?> rowMapper, int fetchSize) {
+		this(jdbcTemplate, dialect, sql, rowMapper, fetchSize, null);
+	}
+
+	/**
+	 * @param jdbcTemplate
+	 * @param dialect
+	 *            creates the pagination clauses
+	 * @param sql
+	 *            SQL with named parameters
+	 * @param rowMapper
+	 *            created by the association loader
+	 * @param fetchSize
+	 *            the default JDBC fetch size, 0 for the driver default
+	 * @param associationLoader
+	 *            loads the references of the results, or null
+	 */
+	public NativeQuery(JdbcTemplate jdbcTemplate, Dialect dialect, String sql,
+			RowMapper<?> rowMapper, int fetchSize,
+			AssociationLoader associationLoader) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.dialect = dialect;
+		this.sql = sql;
+		this.rowMapper = rowMapper;
+		this.fetchSize = fetchSize;
+		this.associationLoader = associationLoader;
+	}
+
+	/**
+	 * Sets the entity manager that is flushed before the query executes, when
+	 * the flush mode is {@link FlushModeType#AUTO}
+	 * 
+	 * @param entityManager
+	 * @return this query
+	 */
+	public NativeQuery setEntityManager(EntityManager entityManager) {
+		this.entityManager = entityManager;
+		return this;
+	}
+
+	/**
+	 * Sets the second level cache that is cleared by
+	 * {@link #executeUpdate()}
+	 * 
+	 * @param entityCache
+	 *            the cache, or null
+	 * @return this query
+	 */
+	public NativeQuery setEntityCache(EntityCache entityCache) {
+		this.entityCache = entityCache;
+		return this;
+	}
+
+	private void autoFlush() {
+		if (entityManager != null && getFlushMode() == FlushModeType.AUTO) {
+			entityManager.flush();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	public List getResultList() {
+		return list(0);
+	}
+
+	public Object getSingleResult() {
+		List<?> results = list(2);
+		if (results.isEmpty()) {
+			throw new NoResultException("No result for " + sql);
+		} else if (results.size() > 1) {
+			throw new NonUniqueResultException("More than one result for "
+					+ sql);
+		}
+		return results.get(0);
+	}
+
+	private List<?> list(int maxRows) {
+		if (maxResults == 0) {
+			return new ArrayList<Object>();
+		}
+		autoFlush();
+		boolean offset = firstResult > 0;
+		boolean limit = maxResults != Integer.MAX_VALUE;
+		String pageSql = dialect.createPageQuery(stripSemicolon(sql), offset,
+				limit);
+		MapSqlParameterSource pageParameters = new MapSqlParameterSource(
+				parameters.getValues());
+		pageParameters.addValue(Dialect.OFFSET_PARAMETER, firstResult);
+		pageParameters.addValue(Dialect.LIMIT_PARAMETER, maxResults);
+
+		List<Object> results = new ArrayList<Object>();
+		CloseableIterator<?> iterator = ResultSetIterator.open(jdbcTemplate,
+				pageSql, pageParameters, rowMapper, fetchSize, maxRows,
+				getTimeoutSeconds());
+		try {
+			while (iterator.hasNext()) {
+				results.add(iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+		if (associationLoader != null) {
+			associationLoader.load();
+		}
+		return results;
+	}
+
+	/**
+	 * Executes an UPDATE, INSERT or DELETE statement. The statement may write
+	 * any table, so the whole second level cache is cleared, and once more
+	 * after the Spring transaction completes. Entities managed by the entity
+	 * manager are not refreshed.
+	 */
+	public int executeUpdate() {
+		autoFlush();
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+		final String jdbcSql = NamedParameterUtils.substituteNamedParameters(
+				parsedSql, parameters);
+		final Object[] values = NamedParameterUtils.buildValueArray(parsedSql,
+				parameters, null);
+		int count = jdbcTemplate.update(new PreparedStatementCreator() {
+			public PreparedStatement createPreparedStatement(Connection con)
+					throws SQLException {
+				PreparedStatement statement = con.prepareStatement(jdbcSql);
+				int seconds = getTimeoutSeconds();
+				if (seconds > 0) {
+					statement.setQueryTimeout(seconds);
+				}
+				ResultSetIterator.bindParameters(statement, values);
+				return statement;
+			}
+		});
+		clearCache();
+		return count;
+	}
+
+	/**
+	 * Clears the second level cache after a write. Other entity managers may
+	 * cache uncommitted state until the transaction completes, so it is
+	 * cleared again then.
+	 */
+	private void clearCache() {
+		final EntityCache cache = entityCache;
+		if (cache == null) {
+			return;
+		}
+		cache.clear();
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronizationAdapter() {
+						@Override
+						public void afterCompletion(int status) {
+							cache.clear();
+						}
+					});
+		}
+	}
+
+	private int getTimeoutSeconds() {
+		// JDBC timeouts are in seconds, round up so a timeout is never lost
+		return (timeout + 999) / 1000;
+	}
+
+	private static String stripSemicolon(String sql) {
+		String trimmed = sql.trim();
+		if (trimmed.endsWith(";")) {
+			return trimmed.substring(0, trimmed.length() - 1);
+		}
+		return trimmed;
+	}
+
+	public Query setMaxResults(int maxResult) {
+		if (maxResult < 0) {
+			throw new IllegalArgumentException("maxResult must not be negative");
+		}
+		this.maxResults = maxResult;
+		return this;
+	}
+
+	public Query setFirstResult(int startPosition) {
+		if (startPosition < 0) {
+			throw new IllegalArgumentException(
+					"startPosition must not be negative");
+		}
+		this.firstResult = startPosition;
+		return this;
+	}
+
+	/**
+	 * Supports {@link #HINT_FETCH_SIZE} and {@link #HINT_TIMEOUT}, other hints
+	 * are ignored
+	 */
+	public Query setHint(String hintName, Object value) {
+		if (HINT_FETCH_SIZE.equals(hintName)) {
+			fetchSize = toInt(hintName, value);
+		} else if (HINT_TIMEOUT.equals(hintName)) {
+			timeout = toInt(hintName, value);
+		}
+		return this;
+	}
+
+	private static int toInt(String hintName, Object value) {
+		int result;
+		if (value instanceof Number) {
+			result = ((Number) value).intValue();
+		} else if (value instanceof String) {
+			try {
+				result = Integer.parseInt((String) value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Hint " + hintName
+						+ " is not a number: " + value, e);
+			}
+		} else {
+			throw new IllegalArgumentException("Hint " + hintName
+					+ " is not a number: " + value);
+		}
+		if (result < 0) {
+			throw new IllegalArgumentException("Hint " + hintName
+					+ " must not be negative");
+		}
+		return result;
+	}
+
+	public Query setParameter(String name, Object value) {
+		parameters.addValue(name, value);
+		return this;
+	}
+
+	public Query setParameter(String name, Date value, TemporalType temporalType) {
+		parameters.addValue(name, toSqlValue(value, temporalType));
+		return this;
+	}
+
+	public Query setParameter(String name, Calendar value,
+			TemporalType temporalType) {
+		return setParameter(name, value != null ? value.getTime() : null,
+				temporalType);
+	}
+
+	public Query setParameter(int position, Object value) {
+		return setParameter(String.valueOf(position), value);
+	}
+
+	public Query setParameter(int position, Date value,
+			TemporalType temporalType) {
+		return setParameter(String.valueOf(position), value, temporalType);
+	}
+
+	public Query setParameter(int position, Calendar value,
+			TemporalType temporalType) {
+		return setParameter(String.valueOf(position), value, temporalType);
+	}
+
+	private static Object toSqlValue(Date value, TemporalType temporalType) {
+		if (value == null) {
+			return null;
+		}
+		switch (temporalType) {
+		case DATE:
+			return new java.sql.Date(value.getTime());
+		case TIME:
+			return new Time(value.getTime());
+		default:
+			return new Timestamp(value.getTime());
+		}
+	}
+
+	public Query setFlushMode(FlushModeType flushMode) {
+		this.flushMode = flushMode;
+		return this;
+	}
+
+	/**
+	 * The flush mode set on this query, else the flush mode of the entity
+	 * manager
+	 */
+	public FlushModeType getFlushMode() {
+		if (flushMode != null) {
+			return flushMode;
+		} else if (entityManager != null) {
+			return entityManager.getFlushMode();
+		}
+		return FlushModeType.AUTO;
+	}
+}
@@ -0,0 +1,197 @@
+package com.github.simplejpatemplate.query;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * Maps the rows of a forward only result set one at a time, so only the rows
+ * of the current fetch are held in memory. The connection is obtained through
+ * <code>DataSourceUtils</code> and takes part in a Spring managed transaction.
+ * <p>
+ * Some drivers, notably PostgreSQL, only honor the fetch size when auto-commit
+ * is off, i.e. inside a transaction.
+ * 
+ * @param <T>
+ */
+public class ResultSetIterator<T> implements CloseableIterator<T> {
+	private final JdbcTemplate jdbcTemplate;
+	private final String sql;
+	private final RowMapper<T> rowMapper;
+	private Connection connection;
+	private PreparedStatement statement;
+	private ResultSet resultSet;
+	private int rowNum;
+	private T next;
+	private boolean hasNext;
+	private boolean closed;
+
+	/**
+	 * Executes the query and returns an iterator over its rows
+	 * 
+	 * @param jdbcTemplate
+	 *            supplies the data source and the exception translator
+	 * @param sql
+	 *            SQL with named parameters
+	 * @param params
+	 * @param rowMapper
+	 * @param fetchSize
+	 *            the JDBC fetch size, 0 for the driver default
+	 * @param maxRows
+	 *            the maximum number of rows, 0 for no limit
+	 * @param queryTimeout
+	 *            the query timeout in seconds, 0 for none
+	 * @return
+	 */
+	public static <T> ResultSetIterator<T> open(JdbcTemplate jdbcTemplate,
+			String sql, SqlParameterSource params, RowMapper<T> rowMapper,
+			int fetchSize, int maxRows, int queryTimeout) {
+		ResultSetIterator<T> iterator = new ResultSetIterator<T>(
+				jdbcTemplate, sql, rowMapper);
+		iterator.execute(params, fetchSize, maxRows, queryTimeout);
+		return iterator;
+	}
+
+	private ResultSetIterator(JdbcTemplate jdbcTemplate, String sql,
+			RowMapper<T> rowMapper) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.sql = sql;
+		this.rowMapper = rowMapper;
+	}
+
+	private void execute(SqlParameterSource params, int fetchSize,
+			int maxRows, int queryTimeout) {
+		DataSource dataSource = jdbcTemplate.getDataSource();
+		ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+		String jdbcSql = NamedParameterUtils.substituteNamedParameters(
+				parsedSql, params);
+		Object[] values = NamedParameterUtils.buildValueArray(parsedSql,
+				params, null);
+
+		connection = DataSourceUtils.getConnection(dataSource);
+		try {
+			statement = connection.prepareStatement(jdbcSql,
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			if (fetchSize > 0) {
+				statement.setFetchSize(fetchSize);
+			}
+			if (maxRows > 0) {
+				statement.setMaxRows(maxRows);
+			}
+			if (queryTimeout > 0) {
+				statement.setQueryTimeout(queryTimeout);
+			}
+			bindParameters(statement, values);
+			resultSet = statement.executeQuery();
+		} catch (SQLException e) {
+			close();
+			throw jdbcTemplate.getExceptionTranslator().translate(
+					"ResultSetIterator", jdbcSql, e);
+		}
+	}
+
+	/**
+	 * Binds the values built by <code>NamedParameterUtils</code>, expanding
+	 * collections into their elements like the named parameter template does
+	 */
+	static void bindParameters(PreparedStatement statement, Object[] values)
+			throws SQLException {
+		int index = 1;
+		for (Object value : values) {
+			if (value instanceof Collection) {
+				for (Object element : (Collection<?>) value) {
+					if (element instanceof Object[]) {
+						for (Object item : (Object[]) element) {
+							bindParameter(statement, index++, item);
+						}
+					} else {
+						bindParameter(statement, index++, element);
+					}
+				}
+			} else {
+				bindParameter(statement, index++, value);
+			}
+		}
+	}
+
+	private static void bindParameter(PreparedStatement statement, int index,
+			Object value) throws SQLException {
+		if (value instanceof SqlParameterValue) {
+			SqlParameterValue parameterValue = (SqlParameterValue) value;
+			StatementCreatorUtils.setParameterValue(statement, index,
+					parameterValue, parameterValue.getValue());
+		} else {
+			StatementCreatorUtils.setParameterValue(statement, index,
+					SqlTypeValue.TYPE_UNKNOWN, value);
+		}
+	}
+
+	public boolean hasNext() {
+		if (hasNext) {
+			return true;
+		}
+		if (closed) {
+			return false;
+		}
+		try {
+			if (resultSet.next()) {
+				next = rowMapper.mapRow(resultSet, rowNum++);
+				hasNext = true;
+			} else {
+				close();
+			}
+		} catch (SQLException e) {
+			close();
+			throw jdbcTemplate.getExceptionTranslator().translate(
+					"ResultSetIterator", sql, e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+		return hasNext;
+	}
+
+	public T next() {
+		if (hasNext() == false) {
+			throw new NoSuchElementException();
+		}
+		T result = next;
+		next = null;
+		hasNext = false;
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		JdbcUtils.closeResultSet(resultSet);
+		JdbcUtils.closeStatement(statement);
+		DataSourceUtils.releaseConnection(connection,
+				jdbcTemplate.getDataSource());
+		resultSet = null;
+		statement = null;
+		connection = null;
+	}
+}
@@ -0,0 +1,139 @@
+package com.github.simplejpatemplate.rowmapper;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import com.github.simplejpatemplate.accessor.FieldAccessor;
+import com.github.simplejpatemplate.accessor.FieldAccessors;
+
+/**
+ * Maps rows onto a class that is not an entity, such as a DTO. When the class
+ * has a no-argument constructor, every column is copied to the field with the
+ * same name, ignoring case and underscores; columns without a field are
+ * skipped. Otherwise the class must have a constructor with one parameter per
+ * column, which is called with the column values in select order, like a JPQL
+ * <code>SELECT NEW</code> expression.
+ * <p>
+ * The columns are resolved on the first row of every query, so a mapper
+ * instance should not be shared by concurrent queries.
+ * 
+ * @see RowMapper
+ * @param <T>
+ */
+public class DtoRowMapper<T> implements RowMapper<T> {
+	private final Class<T> type;
+	private final Constructor<T> defaultConstructor;
+	private Constructor<?> constructor;
+	private FieldAccessor[] accessors;
+	private Class<?>[] types;
+	private int[] indexes;
+
+	public DtoRowMapper(Class<T> type) {
+		this.type = type;
+		Constructor<T> found = null;
+		try {
+			found = type.getDeclaredConstructor();
+			found.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			// Mapped by constructor
+		}
+		this.defaultConstructor = found;
+	}
+
+	public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+		if (indexes == null || rowNum == 0) {
+			resolve(rs.getMetaData());
+		}
+		try {
+			if (defaultConstructor == null) {
+				Object[] args = new Object[types.length];
+				for (int i = 0; i < args.length; i++) {
+					args[i] = JdbcUtils.getResultSetValue(rs, i + 1, types[i]);
+				}
+				return type.cast(constructor.newInstance(args));
+			}
+
+			T result = defaultConstructor.newInstance();
+			for (int i = 0; i < accessors.length; i++) {
+				Object value = JdbcUtils.getResultSetValue(rs, indexes[i],
+						types[i]);
+				if (value != null || types[i].isPrimitive() == false) {
+					accessors[i].set(result, value);
+				}
+			}
+			return result;
+		} catch (SQLException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+	}
+
+	private void resolve(ResultSetMetaData rsMetaData) throws SQLException {
+		int count = rsMetaData.getColumnCount();
+		if (defaultConstructor == null) {
+			constructor = findConstructor(count);
+			types = constructor.getParameterTypes();
+			indexes = new int[0];
+			return;
+		}
+
+		Map<String, Field> fields = new HashMap<String, Field>();
+		for (Class<?> cl = type; cl != Object.class; cl = cl.getSuperclass()) {
+			for (Field field : cl.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				String name = normalize(field.getName());
+				if (Modifier.isStatic(modifiers) == false
+						&& fields.containsKey(name) == false) {
+					fields.put(name, field);
+				}
+			}
+		}
+
+		List<FieldAccessor> found = new ArrayList<FieldAccessor>();
+		List<Class<?>> foundTypes = new ArrayList<Class<?>>();
+		List<Integer> foundIndexes = new ArrayList<Integer>();
+		for (int i = 1; i <= count; i++) {
+			Field field = fields.remove(normalize(rsMetaData.getColumnLabel(i)));
+			if (field != null) {
+				found.add(FieldAccessors.createAccessor(field));
+				foundTypes.add(field.getType());
+				foundIndexes.add(i);
+			}
+		}
+		accessors = found.toArray(new FieldAccessor[found.size()]);
+		types = foundTypes.toArray(new Class<?>[foundTypes.size()]);
+		indexes = new int[foundIndexes.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = foundIndexes.get(i);
+		}
+	}
+
+	private Constructor<?> findConstructor(int parameters) {
+		for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+			if (candidate.getParameterTypes().length == parameters) {
+				candidate.setAccessible(true);
+				return candidate;
+			}
+		}
+		throw new IllegalArgumentException(type.getName()
+				+ " has no default constructor and no constructor with "
+				+ parameters + " parameters");
+	}
+
+	private static String normalize(String name) {
+		return name.replace("_", "").toLowerCase(Locale.ENGLISH);
+	}
+}
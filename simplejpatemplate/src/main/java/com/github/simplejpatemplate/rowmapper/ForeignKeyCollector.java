@@ -0,0 +1,99 @@
+package com.github.simplejpatemplate.rowmapper;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+
+/**
+ * Collects the foreign key values a {@link JpaRowMapper} reads for the
+ * <code>@ManyToOne</code> and <code>@OneToOne</code> fields of the entities it
+ * maps, so the referenced entities can be loaded in one query per class
+ * afterwards. A collector is not thread safe.
+ */
+public class ForeignKeyCollector {
+	private final Map<ColumnMetadata, List<ForeignKey>> foreignKeys = new LinkedHashMap<ColumnMetadata, List<ForeignKey>>();
+
+	/**
+	 * Records the value of the foreign key column of the given reference
+	 * 
+	 * @param entity
+	 *            the entity holding the reference
+	 * @param column
+	 *            the reference
+	 * @param value
+	 *            the foreign key, not null
+	 */
+	public void add(Object entity, ColumnMetadata column, Object value) {
+		List<ForeignKey> values = foreignKeys.get(column);
+		if (values == null) {
+			values = new ArrayList<ForeignKey>();
+			foreignKeys.put(column, values);
+		}
+		values.add(new ForeignKey(entity, value));
+	}
+
+	/**
+	 * The references with at least one foreign key
+	 */
+	public Set<ColumnMetadata> getReferences() {
+		return foreignKeys.keySet();
+	}
+
+	public List<ForeignKey> getForeignKeys(ColumnMetadata column) {
+		return foreignKeys.get(column);
+	}
+
+	/**
+	 * The collected foreign keys by entity and reference
+	 */
+	public Map<Object, Map<ColumnMetadata, Object>> getForeignKeysByEntity() {
+		Map<Object, Map<ColumnMetadata, Object>> byEntity = new IdentityHashMap<Object, Map<ColumnMetadata, Object>>();
+		for (Map.Entry<ColumnMetadata, List<ForeignKey>> entry : foreignKeys
+				.entrySet()) {
+			for (ForeignKey foreignKey : entry.getValue()) {
+				Map<ColumnMetadata, Object> values = byEntity
+						.get(foreignKey.getEntity());
+				if (values == null) {
+					values = new LinkedHashMap<ColumnMetadata, Object>();
+					byEntity.put(foreignKey.getEntity(), values);
+				}
+				values.put(entry.getKey(), foreignKey.getValue());
+			}
+		}
+		return byEntity;
+	}
+
+	public boolean isEmpty() {
+		return foreignKeys.isEmpty();
+	}
+
+	public void clear() {
+		foreignKeys.clear();
+	}
+
+	/**
+	 * A foreign key value and the entity it was read for
+	 */
+	public static final class ForeignKey {
+		private final Object entity;
+		private final Object value;
+
+		ForeignKey(Object entity, Object value) {
+			this.entity = entity;
+			this.value = value;
+		}
+
+		public Object getEntity() {
+			return entity;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.github.simplejpatemplate.rowmapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.github.simplejpatemplate.mapper.EntityMapper;
+
+/**
+ * A Spring <code>RowMapper</code> which maps rows with a generated
+ * {@link EntityMapper} instead of reflection. Like {@link JpaRowMapper}, the
+ * index of every column is resolved once per query from the
+ * <code>ResultSetMetaData</code> and fields without a column in the result
+ * are left untouched. A mapper instance should not be shared by concurrent
+ * queries.
+ * 
+ * @param <T>
+ */
+public class GeneratedRowMapper<T> implements RowMapper<T> {
+	private final EntityMapper<T> mapper;
+	private final String[] columnNames;
+	private int[] indexes;
+
+	public GeneratedRowMapper(EntityMapper<T> mapper) {
+		this.mapper = mapper;
+		this.columnNames = mapper.getColumnNames();
+	}
+
+	public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+		if (indexes == null || rowNum == 0) {
+			indexes = resolve(rs.getMetaData());
+		}
+		T result = mapper.newInstance();
+		mapper.read(rs, indexes, result);
+		return result;
+	}
+
+	private int[] resolve(ResultSetMetaData rsMetaData) throws SQLException {
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = rsMetaData.getColumnCount(); i >= 1; i--) {
+			// Iterate backwards so the first occurrence of a label wins
+			labels.put(rsMetaData.getColumnLabel(i)
+					.toUpperCase(Locale.ENGLISH), i);
+		}
+		int[] result = new int[columnNames.length];
+		for (int i = 0; i < columnNames.length; i++) {
+			Integer index = labels.get(columnNames[i]
+					.toUpperCase(Locale.ENGLISH));
+			result[i] = index != null ? index.intValue() : 0;
+		}
+		return result;
+	}
+}
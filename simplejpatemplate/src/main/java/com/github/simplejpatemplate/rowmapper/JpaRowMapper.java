@@ -1,155 +1,155 @@
 package com.github.simplejpatemplate.rowmapper;
 
-import java.lang.reflect.Field;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.UUID;
-
-import javax.persistence.Column;
-import javax.persistence.Id;
-import javax.persistence.ManyToMany;
-import javax.persistence.ManyToOne;
-import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.jdbc.core.RowMapper;
 
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
 /**
  * A Spring <code>RowMapper</code> which uses the JPA annotations to map a
- * <code>ResultSet</code> to an object
+ * <code>ResultSet</code> to an object. Columns are looked up by index; the
+ * index of every field is resolved once per query from the
+ * <code>ResultSetMetaData</code> and fields without a column in the result are
+ * left untouched. Every field is read by the
+ * {@link com.github.simplejpatemplate.convert.ColumnBinding} of its column, so
+ * custom types are supported by registering a converter with
+ * {@link com.github.simplejpatemplate.convert.Converters}. A mapper instance
+ * should not be shared by concurrent queries.
+ * <p>
+ * <code>InputStream</code> and <code>Reader</code> fields are read with
+ * <code>getBinaryStream</code> and <code>getCharacterStream</code> and are only
+ * readable until the result set moves to the next row, e.g. while iterating
+ * with {@link com.github.simplejpatemplate.SimpleJpaEntityManager#iterate}.
+ * Drivers may close a stream when another column of the row is read, so
+ * stream columns are read last and a query should select at most one of them.
+ * <code>Blob</code> and <code>Clob</code> locators stay valid until the
+ * transaction ends.
+ * <p>
+ * Relations are not mapped. When a {@link ForeignKeyCollector} is given, the
+ * foreign key columns of <code>@ManyToOne</code> and <code>@OneToOne</code>
+ * fields are collected instead, so the referenced entities can be loaded in a
+ * batch once all rows are mapped.
  * 
  * @author toelen
  * @see RowMapper
  * @param <T>
  */
 public class JpaRowMapper<T> implements RowMapper<T> {
-	private Class<T> cl;
-
-	private Field[] fields;
-	private HashMap<Field, String> colNames = new HashMap<Field, String>();;
-	private HashMap<Field, OneToOne> oneToOnes = new HashMap<Field, OneToOne>();
-	private HashMap<Field, ManyToOne> manyToOnes = new HashMap<Field, ManyToOne>();
-	private HashMap<Field, OneToMany> oneToManies = new HashMap<Field, OneToMany>();
-	private HashMap<Field, ManyToMany> manyToManies = new HashMap<Field, ManyToMany>();
-	private Id idAnnotation;
+	private final Class<T> cl;
+	private final List<ColumnMetadata> columns;
+	private final ForeignKeyCollector foreignKeys;
+	private ColumnPlan plan;
+	private ColumnPlan referencePlan;
 
 	public JpaRowMapper(Class<T> cl) {
-		this.cl = cl;
-
-		fields = cl.getDeclaredFields();
+		this(cl, null);
+	}
 
-		for (int i = 0; i < fields.length; i++) {
-			Field field = fields[i];
-			field.setAccessible(true);
+	/**
+	 * @param cl
+	 * @param foreignKeys
+	 *            receives the foreign keys of the references, or null
+	 */
+	public JpaRowMapper(Class<T> cl, ForeignKeyCollector foreignKeys) {
+		this.cl = cl;
+		this.columns = EntityMetadata.forClass(cl).getMappedColumns();
+		this.foreignKeys = foreignKeys;
+	}
 
-			Column col = field.getAnnotation(Column.class);
-			String colName = "";
-			if (col != null) {
-				colName = col.name();
+	public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+		T result;
+		try {
+			result = cl.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
 
-				colNames.put(field, colName);
-			} else {
-				colName = field.getName();
-				colNames.put(field, colName);
+		if (plan == null || rowNum == 0) {
+			plan = ColumnPlan.resolve(columns, rs.getMetaData());
+			if (foreignKeys != null) {
+				referencePlan = ColumnPlan.resolve(EntityMetadata.forClass(cl)
+						.getReferences(), rs.getMetaData());
 			}
+		}
+		ColumnMetadata[] planColumns = plan.columns;
+		int[] planIndexes = plan.indexes;
 
-			if (idAnnotation == null) {
-				idAnnotation = field.getAnnotation(Id.class);
-			}
+		for (int i = 0; i < planColumns.length; i++) {
+			planColumns[i].getBinding().read(rs, planIndexes[i], result);
+		}
 
-			OneToOne oneToOne = field.getAnnotation(OneToOne.class);
-			if (oneToOne != null) {
-				oneToOnes.put(field, oneToOne);
-			}
-			ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
-			if (manyToOne != null) {
-				manyToOnes.put(field, manyToOne);
-			}
-			OneToMany oneToMany = field.getAnnotation(OneToMany.class);
-			if (oneToMany != null) {
-				oneToManies.put(field, oneToMany);
-			}
-			ManyToMany manyToMany = field.getAnnotation(ManyToMany.class);
-			if (manyToMany != null) {
-				manyToManies.put(field, manyToMany);
+		if (foreignKeys != null) {
+			for (int i = 0; i < referencePlan.columns.length; i++) {
+				Object value = rs.getObject(referencePlan.indexes[i]);
+				if (value != null) {
+					foreignKeys.add(result, referencePlan.columns[i], value);
+				}
 			}
 		}
+
+		return result;
 	}
 
-	public T mapRow(ResultSet rs, int rowNum) throws SQLException {
-		T result = null;
-		try {
-			result = cl.newInstance();
-		} catch (InstantiationException e1) {
-			e1.printStackTrace();
-		} catch (IllegalAccessException e1) {
-			e1.printStackTrace();
-		}
-		if (result == null) {
-			return null;
+	/**
+	 * The mapped columns that are present in a result set, with their column
+	 * index. Resolved from the <code>ResultSetMetaData</code> on the first row
+	 * of every query, so the following rows are read by index only.
+	 */
+	static final class ColumnPlan {
+		final ColumnMetadata[] columns;
+		final int[] indexes;
+
+		private ColumnPlan(ColumnMetadata[] columns, int[] indexes) {
+			this.columns = columns;
+			this.indexes = indexes;
 		}
 
-		for (int i = 0; i < fields.length; i++) {
-			Field field = fields[i];
-			// Column col = field.getAnnotation(Column.class);
-			OneToOne oneToOne = oneToOnes.get(field);
-			ManyToOne manyToOne = manyToOnes.get(field);
-			OneToMany oneToMany = oneToManies.get(field);
-			ManyToMany manyToMany = manyToManies.get(field);
-
-			try {
-				String colName = colNames.get(field);
-
-				Object value = null;
-				if (oneToMany != null) {
-					// Nothing to do. Work the other way around
-				} else if (manyToMany != null) {
-					// Nothing to do. Work the other way around
-				} else if (manyToOne != null || oneToOne != null) {
-					// Nothing to do. Work the other way around
-				} else if (field.getType() == UUID.class) {
-					String colValue = rs.getString(colName);
-					UUID uuid = UUID.fromString(colValue);
-					value = uuid;
-				} else if (field.getType() == Integer.class) {
-					Integer colValue = rs.getInt(colName);
-					value = colValue;
-				} else if (field.getType() == Long.class) {
-					Long colValue = rs.getLong(colName);
-					value = colValue;
-				} else if (field.getType() == Calendar.class) {
-					// Date colDValue = rs.getDate(colName);
-					Timestamp colValue = rs.getTimestamp(colName);
-					if (colValue != null) {
-						Calendar cal = Calendar.getInstance();
-						cal.setTime(colValue);
-						value = cal;
-					}
-				} else if (field.getType() == String.class) {
-					String colValue = rs.getString(colName);
-					value = colValue;
-				} else if (field.getType() == byte[].class) {
-					byte[] colValue = rs.getBytes(colName);
-					value = colValue;
-				}
-
-				field.set(result, value);
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
+		static ColumnPlan resolve(List<ColumnMetadata> columns,
+				ResultSetMetaData rsMetaData) throws SQLException {
+			Map<String, Integer> labels = new HashMap<String, Integer>();
+			int count = rsMetaData.getColumnCount();
+			for (int i = count; i >= 1; i--) {
+				// Iterate backwards so the first occurrence of a label wins
+				String label = rsMetaData.getColumnLabel(i);
+				labels.put(label.toUpperCase(Locale.ENGLISH), i);
+			}
 
-			} catch (SQLException sqlex) {
-				if (sqlex.getMessage().startsWith("Invalid column name") == false) {
-					sqlex.printStackTrace();
+			List<ColumnMetadata> present = new ArrayList<ColumnMetadata>();
+			List<Integer> presentIndexes = new ArrayList<Integer>();
+			int streams = 0;
+			for (ColumnMetadata column : columns) {
+				Integer index = labels.get(column.getColumnName().toUpperCase(
+						Locale.ENGLISH));
+				if (index == null) {
+					continue;
+				}
+				if (column.isStream()) {
+					// Reading another column may close an open stream
+					present.add(column);
+					presentIndexes.add(index);
+					streams++;
+				} else {
+					present.add(present.size() - streams, column);
+					presentIndexes.add(presentIndexes.size() - streams, index);
 				}
 			}
 
+			int[] indexes = new int[presentIndexes.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = presentIndexes.get(i);
+			}
+			return new ColumnPlan(
+					present.toArray(new ColumnMetadata[present.size()]),
+					indexes);
 		}
-
-		return result;
 	}
 }
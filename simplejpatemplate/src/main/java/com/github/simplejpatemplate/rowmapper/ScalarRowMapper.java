@@ -0,0 +1,29 @@
+package com.github.simplejpatemplate.rowmapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * Maps the rows of a native query without result class, as specified by JPA:
+ * the value of the column when the result has a single column, otherwise an
+ * <code>Object[]</code> of all column values.
+ * 
+ * @see RowMapper
+ */
+public class ScalarRowMapper implements RowMapper<Object> {
+
+	public Object mapRow(ResultSet rs, int rowNum) throws SQLException {
+		int count = rs.getMetaData().getColumnCount();
+		if (count == 1) {
+			return JdbcUtils.getResultSetValue(rs, 1);
+		}
+		Object[] values = new Object[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+		}
+		return values;
+	}
+}
@@ -0,0 +1,512 @@
+package com.github.simplejpatemplate.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.simplejpatemplate.dialect.Dialect;
+import com.github.simplejpatemplate.mapper.EntityMapper;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
+/**
+ * The INSERT, SELECT, UPDATE and DELETE statements of an entity class. The
+ * statements are generated once per entity class and catalog override, always
+ * list the columns in declaration order and are cached for the lifetime of the
+ * class, so the same SQL text is sent to the driver for every operation.
+ * SELECT statements list the {@link EntityMetadata#getSelectedColumns()}
+ * instead of <code>*</code>, so unused and lazy columns are not transferred.
+ * <p>
+ * Parameter names:
+ * <ul>
+ * <li>INSERT, UPDATE and upserts use the column names, as returned by
+ * {@link JdbcJpaHelper#getInsertParameters(Object)}</li>
+ * <li>Multi-row INSERTs use {@link #getRowParameterName(int, String)}</li>
+ * <li>SELECT and DELETE use a single parameter named <code>:id</code></li>
+ * <li>the version checks of versioned entities use the version column
+ * name</li>
+ * <li>SELECTs of several ids use {@link #getIdParameterName(int)}</li>
+ * </ul>
+ */
+public final class EntityStatements {
+	private static final ConcurrentMap<Key, EntityStatements> CACHE = new ConcurrentHashMap<Key, EntityStatements>();
+
+	private final EntityMetadata metadata;
+	private final String tableName;
+	private final String selectList;
+	private final String insertSql;
+	private final String selectSql;
+	private final String updateSql;
+	private final String deleteSql;
+	private final String versionedDeleteSql;
+	private final String versionSelectSql;
+	private final String incrementVersionSql;
+	private final ConcurrentMap<Integer, String> multiRowInserts = new ConcurrentHashMap<Integer, String>();
+	private final ConcurrentMap<Integer, String> multiIdSelects = new ConcurrentHashMap<Integer, String>();
+	private final ConcurrentMap<BitSet, String> partialUpdates = new ConcurrentHashMap<BitSet, String>();
+	private final ConcurrentMap<Dialect, String> upserts = new ConcurrentHashMap<Dialect, String>();
+	private final ConcurrentMap<Dialect, String> locks = new ConcurrentHashMap<Dialect, String>();
+	private final ConcurrentMap<BitSet, String> projections = new ConcurrentHashMap<BitSet, String>();
+
+	/**
+	 * Returns the cached statements of the given class
+	 *
+	 * @param cl
+	 * @param databaseName
+	 *            Overrides the @Table catalog when non-null
+	 * @return
+	 */
+	public static EntityStatements forClass(Class<?> cl, String databaseName) {
+		Key key = new Key(cl, databaseName);
+		EntityStatements statements = CACHE.get(key);
+		if (statements == null) {
+			statements = new EntityStatements(EntityMetadata.forClass(cl),
+					databaseName);
+			EntityStatements existing = CACHE.putIfAbsent(key, statements);
+			if (existing != null) {
+				statements = existing;
+			}
+		}
+		return statements;
+	}
+
+	private EntityStatements(EntityMetadata metadata, String databaseName) {
+		this.metadata = metadata;
+		this.tableName = metadata.getQualifiedTableName(databaseName);
+		this.selectList = buildSelectList(metadata.getSelectedColumns());
+
+		// Generated mappers hold the statements without catalog override
+		EntityMapper<?> mapper = databaseName == null ? EntityMappers
+				.forClass(metadata.getEntityClass()) : null;
+		this.insertSql = mapper != null ? mapper.getInsertSql() : buildInsert();
+		ColumnMetadata idColumn = metadata.getIdColumn();
+		if (idColumn != null) {
+			String idColumnName = idColumn.getColumnName();
+			this.selectSql = mapper != null ? mapper.getSelectSql()
+					: "SELECT " + selectList + " FROM " + tableName
+							+ " WHERE " + idColumnName + " = :id";
+			this.deleteSql = mapper != null ? mapper.getDeleteSql()
+					: "DELETE FROM " + tableName + " WHERE " + idColumnName
+							+ " = :id";
+			this.updateSql = buildUpdate(metadata.getUpdatableColumns());
+		} else {
+			this.selectSql = null;
+			this.deleteSql = null;
+			this.updateSql = null;
+		}
+
+		ColumnMetadata versionColumn = metadata.getVersionColumn();
+		if (idColumn != null && versionColumn != null) {
+			String idColumnName = idColumn.getColumnName();
+			String versionColumnName = versionColumn.getColumnName();
+			this.versionedDeleteSql = deleteSql + " AND " + versionColumnName
+					+ " = :" + versionColumnName;
+			this.versionSelectSql = "SELECT " + versionColumnName + " FROM "
+					+ tableName + " WHERE " + idColumnName + " = :id";
+			this.incrementVersionSql = "UPDATE " + tableName + " SET "
+					+ versionColumnName + " = " + versionColumnName + " + 1"
+					+ " WHERE " + idColumnName + " = :id"
+					+ " AND " + versionColumnName + " = :"
+					+ versionColumnName;
+		} else {
+			this.versionedDeleteSql = null;
+			this.versionSelectSql = null;
+			this.incrementVersionSql = null;
+		}
+	}
+
+	private static String buildSelectList(List<ColumnMetadata> columns) {
+		StringBuilder builder = new StringBuilder();
+		for (ColumnMetadata column : columns) {
+			if (builder.length() > 0) {
+				builder.append(", ");
+			}
+			builder.append(column.getColumnName());
+		}
+		return builder.toString();
+	}
+
+	private String buildInsert() {
+		List<ColumnMetadata> columns = metadata.getInsertableColumns();
+
+		StringBuilder builder = new StringBuilder();
+		appendInsertInto(builder, columns);
+		builder.append("( ");
+		for (ColumnMetadata column : columns) {
+			builder.append(':').append(column.getColumnName()).append(" , ");
+		}
+		builder.setLength(builder.length() - 2);
+		builder.append(" )");
+		return builder.toString();
+	}
+
+	private void appendInsertInto(StringBuilder builder,
+			List<ColumnMetadata> columns) {
+		builder.append("INSERT INTO ");
+		builder.append(tableName);
+		builder.append(" ( ");
+		for (ColumnMetadata column : columns) {
+			builder.append(column.getColumnName()).append(" , ");
+		}
+		builder.setLength(builder.length() - 2);
+		builder.append(" ) VALUES ");
+	}
+
+	private String buildMultiRowInsert(int rows) {
+		List<ColumnMetadata> columns = metadata.getInsertableColumns();
+
+		StringBuilder builder = new StringBuilder();
+		appendInsertInto(builder, columns);
+		for (int row = 0; row < rows; row++) {
+			if (row > 0) {
+				builder.append(", ");
+			}
+			builder.append("( ");
+			for (ColumnMetadata column : columns) {
+				builder.append(':')
+						.append(getRowParameterName(row,
+								column.getColumnName())).append(" , ");
+			}
+			builder.setLength(builder.length() - 2);
+			builder.append(" )");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * The name of the parameter of the given column and row in a multi-row
+	 * insert
+	 */
+	public static String getRowParameterName(int row, String columnName) {
+		return "r" + row + "_" + columnName;
+	}
+
+	/**
+	 * Builds an UPDATE of the given columns. The id column is bound by its
+	 * column name, like the other parameters. The version of a versioned
+	 * entity is incremented and compared with the version parameter.
+	 */
+	private String buildUpdate(List<ColumnMetadata> columns) {
+		if (columns.isEmpty()) {
+			return null;
+		}
+		String idColumnName = metadata.requireIdColumn().getColumnName();
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("UPDATE ");
+		builder.append(tableName);
+		builder.append(" SET ");
+		for (ColumnMetadata column : columns) {
+			builder.append(column.getColumnName()).append(" = :")
+					.append(column.getColumnName()).append(" , ");
+		}
+		builder.setLength(builder.length() - 3);
+		ColumnMetadata versionColumn = metadata.getVersionColumn();
+		if (versionColumn != null) {
+			String versionColumnName = versionColumn.getColumnName();
+			builder.append(" , ").append(versionColumnName).append(" = ")
+					.append(versionColumnName).append(" + 1");
+		}
+		builder.append(" WHERE ");
+		builder.append(idColumnName);
+		builder.append(" = :");
+		builder.append(idColumnName);
+		if (versionColumn != null) {
+			builder.append(" AND ").append(versionColumn.getColumnName())
+					.append(" = :").append(versionColumn.getColumnName());
+		}
+		return builder.toString();
+	}
+
+	public EntityMetadata getMetadata() {
+		return metadata;
+	}
+
+	/**
+	 * The fully qualified table name the statements operate on
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getInsertSql() {
+		return insertSql;
+	}
+
+	/**
+	 * Returns an INSERT with one VALUES tuple per row. The parameters are
+	 * named by {@link #getRowParameterName(int, String)}. Statements are
+	 * cached per row count.
+	 * 
+	 * @param rows
+	 * @return
+	 */
+	public String getMultiRowInsertSql(int rows) {
+		if (rows < 1) {
+			throw new IllegalArgumentException("rows must be positive");
+		}
+		Integer key = Integer.valueOf(rows);
+		String sql = multiRowInserts.get(key);
+		if (sql == null) {
+			sql = buildMultiRowInsert(rows);
+			String existing = multiRowInserts.putIfAbsent(key, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	public String getSelectSql() {
+		return requireId(selectSql);
+	}
+
+	/**
+	 * Returns a SELECT of the rows with the given number of ids, using
+	 * <code>WHERE id IN ( :id0 , :id1 , ... )</code>. The parameters are named
+	 * by {@link #getIdParameterName(int)}. Statements are cached per id count.
+	 * 
+	 * @param ids
+	 * @return
+	 */
+	public String getSelectSql(int ids) {
+		if (ids < 1) {
+			throw new IllegalArgumentException("ids must be positive");
+		}
+		String idColumnName = metadata.requireIdColumn().getColumnName();
+		Integer key = Integer.valueOf(ids);
+		String sql = multiIdSelects.get(key);
+		if (sql == null) {
+			StringBuilder builder = new StringBuilder();
+			builder.append("SELECT ").append(selectList).append(" FROM ")
+					.append(tableName)
+					.append(" WHERE ").append(idColumnName).append(" IN ( ");
+			for (int i = 0; i < ids; i++) {
+				builder.append(':').append(getIdParameterName(i)).append(" , ");
+			}
+			builder.setLength(builder.length() - 2);
+			builder.append(')');
+			sql = builder.toString();
+			String existing = multiIdSelects.putIfAbsent(key, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * Returns a SELECT of the given columns of the row with the id bound to
+	 * <code>:id</code>. Statements are cached per column subset.
+	 * 
+	 * @param columns
+	 *            columns of this entity, not empty
+	 * @return
+	 */
+	public String getSelectSql(List<ColumnMetadata> columns) {
+		String idColumnName = metadata.requireIdColumn().getColumnName();
+		if (columns.isEmpty()) {
+			throw new IllegalArgumentException("No columns to select");
+		}
+
+		List<ColumnMetadata> all = metadata.getColumns();
+		BitSet key = new BitSet(all.size());
+		for (ColumnMetadata column : columns) {
+			int index = all.indexOf(column);
+			if (index < 0) {
+				throw new IllegalArgumentException("Column " + column
+						+ " is not a column of " + tableName);
+			}
+			key.set(index);
+		}
+
+		String sql = projections.get(key);
+		if (sql == null) {
+			List<ColumnMetadata> ordered = new ArrayList<ColumnMetadata>();
+			for (int i = key.nextSetBit(0); i >= 0; i = key.nextSetBit(i + 1)) {
+				ordered.add(all.get(i));
+			}
+			sql = "SELECT " + buildSelectList(ordered) + " FROM " + tableName
+					+ " WHERE " + idColumnName + " = :id";
+			String existing = projections.putIfAbsent(key, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * The name of the parameter of the given id in a SELECT of several ids
+	 */
+	public static String getIdParameterName(int index) {
+		return "id" + index;
+	}
+
+	/**
+	 * An UPDATE of all updatable columns, or null when there are none
+	 */
+	public String getUpdateSql() {
+		return requireId(updateSql);
+	}
+
+	/**
+	 * Returns an UPDATE of the given subset of the updatable columns.
+	 * Statements are cached per column subset.
+	 * 
+	 * @param columns
+	 *            updatable columns of this entity
+	 * @return null when the list is empty
+	 */
+	public String getUpdateSql(List<ColumnMetadata> columns) {
+		metadata.requireIdColumn();
+		if (columns.isEmpty()) {
+			return null;
+		}
+
+		List<ColumnMetadata> updatable = metadata.getUpdatableColumns();
+		BitSet key = new BitSet(updatable.size());
+		for (ColumnMetadata column : columns) {
+			int index = updatable.indexOf(column);
+			if (index < 0) {
+				throw new IllegalArgumentException("Column " + column
+						+ " is not updatable");
+			}
+			key.set(index);
+		}
+		if (key.cardinality() == updatable.size()) {
+			return updateSql;
+		}
+
+		String sql = partialUpdates.get(key);
+		if (sql == null) {
+			List<ColumnMetadata> ordered = new ArrayList<ColumnMetadata>();
+			for (int i = key.nextSetBit(0); i >= 0; i = key.nextSetBit(i + 1)) {
+				ordered.add(updatable.get(i));
+			}
+			sql = buildUpdate(ordered);
+			String existing = partialUpdates.putIfAbsent(key, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	/**
+	 * Returns the statement that inserts the entity or updates all updatable
+	 * columns when the row exists. The parameters are the same as those of the
+	 * INSERT. Statements are cached per dialect.
+	 * 
+	 * @param dialect
+	 * @return
+	 */
+	public String getUpsertSql(Dialect dialect) {
+		String sql = upserts.get(dialect);
+		if (sql == null) {
+			ColumnMetadata idColumn = metadata.requireIdColumn();
+			if (idColumn.isInsertable() == false) {
+				throw new IllegalArgumentException(
+						"Upserts need an insertable @Id column");
+			}
+			sql = dialect.createUpsertQuery(tableName, idColumn,
+					metadata.getInsertableColumns(),
+					metadata.getUpdatableColumns());
+			String existing = upserts.putIfAbsent(dialect, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	public String getDeleteSql() {
+		return requireId(deleteSql);
+	}
+
+	/**
+	 * A DELETE of the row with the id bound to <code>:id</code> and the
+	 * version bound to the version column name, or null when the entity is
+	 * not versioned
+	 */
+	public String getVersionedDeleteSql() {
+		return requireId(versionedDeleteSql);
+	}
+
+	/**
+	 * A SELECT of the version of the row with the id bound to
+	 * <code>:id</code>, or null when the entity is not versioned
+	 */
+	public String getVersionSelectSql() {
+		return requireId(versionSelectSql);
+	}
+
+	/**
+	 * An UPDATE that only increments the version, with the parameters of
+	 * {@link JdbcJpaHelper#getVersionParameters(Object)}, or null when the
+	 * entity is not versioned
+	 */
+	public String getIncrementVersionSql() {
+		return requireId(incrementVersionSql);
+	}
+
+	/**
+	 * Returns the SELECT that locks the row with the id bound to
+	 * <code>:id</code> for update, selecting the version column of a
+	 * versioned entity and else the id column. Statements are cached per
+	 * dialect.
+	 * 
+	 * @param dialect
+	 * @return
+	 */
+	public String getLockSql(Dialect dialect) {
+		String sql = locks.get(dialect);
+		if (sql == null) {
+			ColumnMetadata idColumn = metadata.requireIdColumn();
+			ColumnMetadata versionColumn = metadata.getVersionColumn();
+			sql = dialect.createLockQuery(tableName,
+					(versionColumn != null ? versionColumn : idColumn)
+							.getColumnName(), idColumn.getColumnName());
+			String existing = locks.putIfAbsent(dialect, sql);
+			if (existing != null) {
+				sql = existing;
+			}
+		}
+		return sql;
+	}
+
+	private String requireId(String sql) {
+		metadata.requireIdColumn();
+		return sql;
+	}
+
+	private static final class Key {
+		private final Class<?> cl;
+		private final String databaseName;
+
+		Key(Class<?> cl, String databaseName) {
+			this.cl = cl;
+			this.databaseName = databaseName;
+		}
+
+		@Override
+		public int hashCode() {
+			return cl.hashCode() * 31
+					+ (databaseName == null ? 0 : databaseName.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Key == false) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return cl == other.cl
+					&& (databaseName == null ? other.databaseName == null
+							: databaseName.equals(other.databaseName));
+		}
+	}
+}
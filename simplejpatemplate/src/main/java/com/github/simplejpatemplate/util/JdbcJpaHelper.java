@@ -1,20 +1,27 @@
 package com.github.simplejpatemplate.util;
 
-import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.Id;
-import javax.persistence.JoinColumn;
-import javax.persistence.ManyToOne;
-import javax.persistence.OneToOne;
-import javax.persistence.Table;
+
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import com.github.simplejpatemplate.convert.Converters;
+import com.github.simplejpatemplate.convert.UUIDConverter;
+import com.github.simplejpatemplate.dialect.Dialect;
+import com.github.simplejpatemplate.mapper.EntityMapper;
+import com.github.simplejpatemplate.mapper.EntityMappers;
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+import com.github.simplejpatemplate.proxy.LazyReference;
 
 /**
  * Utility class for creating SQL queries using JPA annotations
@@ -32,119 +39,312 @@ public class JdbcJpaHelper {
 	 */
 	public String createSelectQuery(Class<?> type, Object primaryKey,
 			String databaseName) throws Exception {
-		String tableName = getFullyQualifiedTableName(type, databaseName);
-
-		Field idField = getIDField(type);
-		if (idField == null) {
-			throw new IllegalArgumentException(
-					"@Id field could not be resolved");
-		}
-
-		String colName = getColumnName(idField);
-		if (colName == null || colName.equals("")) {
-			throw new IllegalArgumentException(
-					"Id column name could not be resolved");
-		}
+		return EntityStatements.forClass(type, databaseName).getSelectSql();
+	}
 
-		StringBuilder builder = new StringBuilder();
-		builder.append("SELECT * FROM ");
-		builder.append(tableName);
-		builder.append(" WHERE ");
-		builder.append(colName);
-		builder.append(" = :id");
+	/**
+	 * Creates a select query of the given number of ids, using an IN list.
+	 * Parameters named by {@link EntityStatements#getIdParameterName(int)}
+	 * should be provided when executing the query. Statements are cached per
+	 * id count.
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @param ids
+	 * @return
+	 */
+	public String createSelectQuery(Class<?> type, String databaseName,
+			int ids) {
+		return EntityStatements.forClass(type, databaseName).getSelectSql(ids);
+	}
 
-		return builder.toString();
+	/**
+	 * Creates a select query of the given columns, using the primaryKey in the
+	 * where clause. A parameter named :id should be provided when executing
+	 * the query. Statements are cached per column subset.
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @param columns
+	 * @return
+	 */
+	public String createProjectionQuery(Class<?> type, String databaseName,
+			List<ColumnMetadata> columns) {
+		return EntityStatements.forClass(type, databaseName).getSelectSql(
+				columns);
 	}
 
 	public String createDeleteQuery(Class<?> type, Object id,
 			String databaseName) throws Exception {
-		String tableName = getFullyQualifiedTableName(type, databaseName);
-
-		Field idField = getIDField(type);
-		if (idField == null) {
-			throw new IllegalArgumentException(
-					"@Id field could not be resolved");
-		}
+		return EntityStatements.forClass(type, databaseName).getDeleteSql();
+	}
 
-		String colName = getColumnName(idField);
-		if (colName == null || colName.equals("")) {
-			throw new IllegalArgumentException(
-					"Id column name could not be resolved");
-		}
+	/**
+	 * Creates a delete statement of a versioned entity, which only deletes
+	 * the row when its version is unchanged. The parameters are created by
+	 * {@link #getVersionParameters(Object)}
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @return null when the entity is not versioned
+	 */
+	public String createVersionedDeleteQuery(Class<?> type,
+			String databaseName) {
+		return EntityStatements.forClass(type, databaseName)
+				.getVersionedDeleteSql();
+	}
 
-		StringBuilder builder = new StringBuilder();
-		builder.append("DELETE FROM ");
-		builder.append(tableName);
-		builder.append(" WHERE ");
-		builder.append(colName);
-		builder.append(" = :id");
+	/**
+	 * Creates a select query of the version column. A parameter named :id
+	 * should be provided when executing the query
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @return null when the entity is not versioned
+	 */
+	public String createVersionQuery(Class<?> type, String databaseName) {
+		return EntityStatements.forClass(type, databaseName)
+				.getVersionSelectSql();
+	}
 
-		return builder.toString();
+	/**
+	 * Creates an update statement that only increments the version, when it
+	 * is unchanged. The parameters are created by
+	 * {@link #getVersionParameters(Object)}
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @return null when the entity is not versioned
+	 */
+	public String createIncrementVersionQuery(Class<?> type,
+			String databaseName) {
+		return EntityStatements.forClass(type, databaseName)
+				.getIncrementVersionSql();
 	}
 
 	/**
-	 * Creates a column name according to the JPA spec
+	 * Creates a query that locks the row of an entity until the end of the
+	 * transaction, selecting its version or, when the entity is not
+	 * versioned, its id. A parameter named :id should be provided when
+	 * executing the query. Statements are cached per dialect.
 	 * 
-	 * @param field
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @param dialect
 	 * @return
 	 */
-	private String getColumnName(Field field) {
-		Column col = field.getAnnotation(Column.class);
-		if (col != null && col.name() != null) {
-			return col.name();
-		}
+	public String createLockQuery(Class<?> type, String databaseName,
+			Dialect dialect) {
+		return EntityStatements.forClass(type, databaseName).getLockSql(
+				dialect);
+	}
 
-		JoinColumn join = field.getAnnotation(JoinColumn.class);
-		if (join != null && join.name() != null) {
-			return join.name();
-		}
-		return field.getName();
+	/**
+	 * Creates an update statement of all updatable columns. The parameters are
+	 * named after the columns, including the id column in the where clause
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @return null when the entity has no updatable columns
+	 */
+	public String createUpdateQuery(Class<?> type, String databaseName) {
+		return EntityStatements.forClass(type, databaseName).getUpdateSql();
 	}
 
 	/**
-	 * Returns the fully qualified table name (catalog.schema.table) using the
-	 * {@link Table} annotation
+	 * Creates an update statement of the given columns. The parameters are
+	 * created by {@link #getUpdateParameters(Object, List)}
 	 * 
-	 * @param cl
+	 * @param type
 	 * @param databaseName
-	 *            Overrides the @Table catalog when non-null
+	 *            Overrides the @Table catalog property
+	 * @param columns
+	 *            a subset of the updatable columns
+	 * @return null when the list of columns is empty
+	 */
+	public String createUpdateQuery(Class<?> type, String databaseName,
+			List<ColumnMetadata> columns) {
+		return EntityStatements.forClass(type, databaseName).getUpdateSql(
+				columns);
+	}
+
+	/**
+	 * Creates the parameters of an update of the given columns, including the
+	 * id column and the version column of a versioned entity
+	 * 
+	 * @param entity
+	 * @param columns
 	 * @return
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
 	 */
-	private String getFullyQualifiedTableName(Class<?> cl, String databaseName) {
-		Table table = cl.getAnnotation(Table.class);
-		String tableName = null;
-		String tableSchema = null;
-		String tablecatalog = databaseName;
-
-		if (table != null) {
-			tableName = table.name();
-			tableSchema = table.schema();
+	public Map<String, Object> getUpdateParameters(Object entity,
+			List<ColumnMetadata> columns) throws IllegalArgumentException,
+			IllegalAccessException {
+		EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+		Map<String, Object> values = getValues(entity, columns);
+		ColumnMetadata idColumn = metadata.requireIdColumn();
+		values.put(idColumn.getColumnName(), getColumnValue(entity, idColumn));
+		ColumnMetadata versionColumn = metadata.getVersionColumn();
+		if (versionColumn != null) {
+			values.put(versionColumn.getColumnName(),
+					getColumnValue(entity, versionColumn));
 		}
+		return values;
+	}
+
+	/**
+	 * Creates the parameters of a versioned delete or a version increment:
+	 * the id, named <code>id</code>, and the version, named after the version
+	 * column
+	 * 
+	 * @param entity
+	 *            an entity with a @Version field
+	 * @return
+	 * @throws IllegalAccessException
+	 */
+	public Map<String, Object> getVersionParameters(Object entity)
+			throws IllegalAccessException {
+		EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+		ColumnMetadata versionColumn = requireVersionColumn(metadata);
+		Map<String, Object> values = new HashMap<String, Object>(4);
+		values.put("id",
+				getColumnValue(entity, metadata.requireIdColumn()));
+		values.put(versionColumn.getColumnName(),
+				getColumnValue(entity, versionColumn));
+		return values;
+	}
+
+	/**
+	 * Returns the value of the @Version field, or null when the entity is not
+	 * versioned or its version is not set
+	 * 
+	 * @param entity
+	 * @return
+	 */
+	public Number getVersion(Object entity) {
+		ColumnMetadata versionColumn = EntityMetadata.forClass(
+				entity.getClass()).getVersionColumn();
+		return versionColumn != null ? (Number) versionColumn
+				.getValue(entity) : null;
+	}
 
-		if (tablecatalog == null && table != null) {
-			tablecatalog = table.catalog();
+	/**
+	 * Sets the version of a new entity to 0, unless it is set already
+	 * 
+	 * @param entity
+	 */
+	public void initializeVersion(Object entity) {
+		ColumnMetadata versionColumn = EntityMetadata.forClass(
+				entity.getClass()).getVersionColumn();
+		if (versionColumn != null && versionColumn.getValue(entity) == null) {
+			versionColumn.setValue(entity,
+					convertId(Integer.valueOf(0), versionColumn.getType()));
 		}
+	}
 
-		if (tableName == null || tableName.equals("")) {
+	/**
+	 * Increments the version of the entity, after its row was updated
+	 * 
+	 * @param entity
+	 *            an entity with a @Version field
+	 */
+	public void incrementVersion(Object entity) {
+		ColumnMetadata versionColumn = requireVersionColumn(EntityMetadata
+				.forClass(entity.getClass()));
+		Number version = (Number) versionColumn.getValue(entity);
+		long next = version != null ? version.longValue() + 1 : 1;
+		versionColumn.setValue(entity,
+				convertId(Long.valueOf(next), versionColumn.getType()));
+	}
+
+	private static ColumnMetadata requireVersionColumn(EntityMetadata metadata) {
+		ColumnMetadata versionColumn = metadata.getVersionColumn();
+		if (versionColumn == null) {
 			throw new IllegalArgumentException(
-					"Table name could not be resolved from @Table");
+					"@Version field could not be resolved");
 		}
+		return versionColumn;
+	}
 
-		StringBuilder builder = new StringBuilder();
+	/**
+	 * Returns the values of all updatable columns, as they would be bound to
+	 * a statement. Used as the snapshot for
+	 * {@link #getDirtyColumns(Object, Object[])}
+	 * 
+	 * @param entity
+	 * @return
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
+	 */
+	public Object[] getUpdatableState(Object entity)
+			throws IllegalArgumentException, IllegalAccessException {
+		List<ColumnMetadata> columns = EntityMetadata.forClass(
+				entity.getClass()).getUpdatableColumns();
+		Object[] state = new Object[columns.size()];
+		for (int i = 0; i < state.length; i++) {
+			state[i] = getColumnValue(entity, columns.get(i));
+		}
+		return state;
+	}
 
-		if (tablecatalog != null && tablecatalog.equals("") == false) {
-			builder.append(tablecatalog + ".");
+	/**
+	 * Returns the updatable columns whose value differs from the snapshot
+	 * 
+	 * @param entity
+	 * @param snapshot
+	 *            created by {@link #getUpdatableState(Object)}
+	 * @return
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
+	 */
+	public List<ColumnMetadata> getDirtyColumns(Object entity,
+			Object[] snapshot) throws IllegalArgumentException,
+			IllegalAccessException {
+		List<ColumnMetadata> columns = EntityMetadata.forClass(
+				entity.getClass()).getUpdatableColumns();
+		List<ColumnMetadata> dirty = new ArrayList<ColumnMetadata>();
+		for (int i = 0; i < columns.size(); i++) {
+			Object value = getColumnValue(entity, columns.get(i));
+			if (isEqual(value, snapshot[i]) == false) {
+				dirty.add(columns.get(i));
+			}
 		}
-		if (tableSchema != null && tableSchema.equals("") == false) {
-			builder.append(tableSchema + ".");
+		return dirty;
+	}
+
+	private boolean isEqual(Object value, Object other) {
+		value = unwrap(value);
+		other = unwrap(other);
+		if (value == other) {
+			return true;
+		} else if (value == null || other == null) {
+			return false;
+		} else if (value instanceof byte[] && other instanceof byte[]) {
+			return Arrays.equals((byte[]) value, (byte[]) other);
 		}
-		builder.append(tableName);
+		return value.equals(other);
+	}
 
-		return builder.toString();
+	private static Object unwrap(Object value) {
+		if (value instanceof SqlParameterValue) {
+			return ((SqlParameterValue) value).getValue();
+		} else if (value instanceof LobParameter) {
+			return ((LobParameter) value).getValue();
+		}
+		return value;
 	}
 
 	/**
-	 * Creates an insert statement
+	 * Creates an insert statement. The statement lists all insertable columns
+	 * in declaration order, the keys of {@link #getInsertParameters(Object)}
 	 * 
 	 * @param databaseName
 	 *            Overrides the @Table catalog property
@@ -154,38 +354,87 @@ public class JdbcJpaHelper {
 	 */
 	public String createInsertQuery(String databaseName, Object entity,
 			Map<String, Object> values) {
+		return EntityStatements.forClass(entity.getClass(), databaseName)
+				.getInsertSql();
+	}
 
-		String tableName = getFullyQualifiedTableName(entity.getClass(),
-				databaseName);
+	/**
+	 * Creates a statement that inserts the entity, or updates all updatable
+	 * columns when a row with the same id exists. The parameters are those of
+	 * {@link #getInsertParameters(Object)}
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @param dialect
+	 * @return
+	 * @throws UnsupportedOperationException
+	 *             when the dialect has no upsert statement
+	 */
+	public String createUpsertQuery(Class<?> type, String databaseName,
+			Dialect dialect) {
+		return EntityStatements.forClass(type, databaseName).getUpsertSql(
+				dialect);
+	}
 
-		StringBuilder builder = new StringBuilder();
-		builder.append("INSERT INTO ");
-		builder.append(tableName);
-		builder.append(" ( ");
+	/**
+	 * Creates an insert statement with one VALUES tuple per row, for databases
+	 * that accept <code>INSERT INTO t (cols) VALUES (...), (...)</code>. The
+	 * parameters are created by {@link #getMultiRowInsertParameters(List)}.
+	 * Statements are cached per row count.
+	 * 
+	 * @param type
+	 * @param databaseName
+	 *            Overrides the @Table catalog property
+	 * @param rows
+	 * @return
+	 */
+	public String createMultiRowInsertQuery(Class<?> type,
+			String databaseName, int rows) {
+		return EntityStatements.forClass(type, databaseName)
+				.getMultiRowInsertSql(rows);
+	}
 
-		Set<String> keys = values.keySet();
-		for (String key : keys) {
-			builder.append(key + " , ");
+	/**
+	 * Creates the parameters of a multi-row insert of the given entities,
+	 * which must all be of the same class
+	 * 
+	 * @param entities
+	 * @return
+	 * @throws IllegalArgumentException
+	 * @throws IllegalAccessException
+	 */
+	public Map<String, Object> getMultiRowInsertParameters(List<?> entities)
+			throws IllegalArgumentException, IllegalAccessException {
+		Class<?> type = entities.get(0).getClass();
+		EntityMetadata metadata = EntityMetadata.forClass(type);
+		if (metadata.isEntity() == false) {
+			throw new IllegalArgumentException("@Entity annotation not present");
 		}
 
-		builder.setLength(builder.length() - 2);
-		builder.append(" ) VALUES ( ");
-
-		for (String key : keys) {
-			builder.append(":" + key + " , ");
-
+		List<ColumnMetadata> columns = metadata.getInsertableColumns();
+		Map<String, Object> values = new HashMap<String, Object>(
+				entities.size() * columns.size() * 2);
+		for (int row = 0; row < entities.size(); row++) {
+			Object entity = entities.get(row);
+			if (entity.getClass() != type) {
+				throw new IllegalArgumentException(
+						"All entities of a multi-row insert must be of class "
+								+ type.getName());
+			}
+			for (ColumnMetadata column : columns) {
+				values.put(EntityStatements.getRowParameterName(row,
+						column.getColumnName()), getColumnValue(entity, column));
+			}
 		}
-		builder.setLength(builder.length() - 2);
-
-		builder.append(" )");
-
-		String sql = builder.toString();
-		return sql;
+		return values;
 	}
 
 	/**
 	 * Creates a {@link Map} of all entity properties that can be inserted. The
-	 * key is the column name as in the {@link Column} annotation
+	 * key is the column name as in the {@link Column} annotation, in the order
+	 * of the insert statement. Entities with a generated {@link EntityMapper}
+	 * are read without reflection.
 	 * 
 	 * @param entity
 	 * @return
@@ -197,122 +446,70 @@ public class JdbcJpaHelper {
 		if (entity == null) {
 			return null;
 		}
-		Entity entityAnnotation = entity.getClass().getAnnotation(Entity.class);
-		if (entityAnnotation == null) {
+		@SuppressWarnings("unchecked")
+		EntityMapper<Object> mapper = (EntityMapper<Object>) EntityMappers
+				.forClass(entity.getClass());
+		if (mapper != null) {
+			Map<String, Object> values = new LinkedHashMap<String, Object>();
+			mapper.writeInsertParameters(entity, values);
+			return values;
+		}
+		EntityMetadata metadata = EntityMetadata.forClass(entity.getClass());
+		if (metadata.isEntity() == false) {
 			throw new IllegalArgumentException("@Entity annotation not present");
 		}
 
-		List<Field> insertableFields = getInsertableFields(entity.getClass());
-		return getValues(entity, insertableFields);
+		return getValues(entity, metadata.getInsertableColumns());
 	}
 
 	private Map<String, Object> getValues(Object entity,
-			List<Field> insertableFields) throws IllegalArgumentException,
-			IllegalAccessException {
-		Map<String, Object> values = new HashMap<String, Object>();
-
-		for (Field field : insertableFields) {
-
-			final String colName = getColumnName(field);
-			if (colName == null) {
-				throw new IllegalArgumentException(
-						"Unable to define column name for entity " + entity);
-			}
+			List<ColumnMetadata> insertableColumns)
+			throws IllegalArgumentException, IllegalAccessException {
+		Map<String, Object> values = new LinkedHashMap<String, Object>(
+				insertableColumns.size() * 2);
 
-			Object value = getColumnValue(entity, field);
+		for (ColumnMetadata column : insertableColumns) {
+			Object value = getColumnValue(entity, column);
 
-			values.put(colName, value);
+			values.put(column.getColumnName(), value);
 		}
 		return values;
 	}
 
-	private Object getColumnValue(Object entity, Field field)
+	/**
+	 * Converts the field value with the binding of the column. A reference is
+	 * replaced by the id of the referenced entity, converted by the converter
+	 * registered for the id type. A null byte array is written as an empty
+	 * one.
+	 */
+	private Object getColumnValue(Object entity, ColumnMetadata column)
 			throws IllegalAccessException {
-
-		field.setAccessible(true);
-		Object value = field.get(entity);
-
-		OneToOne oneToOne = field.getAnnotation(OneToOne.class);
-		ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
-		JoinColumn join = field.getAnnotation(JoinColumn.class);
-
-		if (oneToOne != null || manyToOne != null || join != null) {
-			// This is a relation type
-			// Lookup the remote ID field
-			Object temp = getEntityID(value);
-			if (temp instanceof UUID) {
-				value = ((UUID) temp).toString();
-			} else {
-				value = temp;
-			}
-		} else if (value != null) {
-			if (field.getType() == UUID.class) {
-				value = ((UUID) value).toString();
-			} else if (field.getType().isEnum()) {
-				value = ((Enum) value).ordinal();
-			} else if (value instanceof Enum) {
-				value = ((Enum) value).ordinal();
-			} else if (field.getType() == byte[].class) {
-				// TODO
-			}
-		} else if (value == null) {
-			if (field.getType() == byte[].class) {
-				value = new byte[0];
-			} else if (field.getType() == UUID.class) {
-				value = null;
-			}
+		if (column.isReference()) {
+			return Converters.write(getEntityID(column.getValue(entity)));
+		} else if (column.getType() == byte[].class
+				&& column.getValue(entity) == null) {
+			return new byte[0];
 		}
-		return value;
+		return column.getBinding().write(entity);
 	}
 
-	private List<Field> getInsertableFields(Class<?> cl)
-			throws IllegalArgumentException, IllegalAccessException {
-		if (cl == null) {
-			return null;
-		}
-
-		final List<Field> result = new ArrayList<Field>();
-		Field[] fields = cl.getDeclaredFields();
-		for (int i = 0; i < fields.length; i++) {
-			Field field = fields[i];
-			Column col = field.getAnnotation(Column.class);
-			Id idAnnotation = field.getAnnotation(Id.class);
-			// OneToOne oneToOne = field.getAnnotation(OneToOne.class);
-			// ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
-			JoinColumn join = field.getAnnotation(JoinColumn.class);
-
-			boolean insertable = isInsertable(col, idAnnotation, join);
-			if (insertable) {
-				result.add(field);
-
-			}
-		}
-
-		return result;
-	}
-
-	private boolean isInsertable(Column col, Id idAnnotation, JoinColumn join) {
-		boolean insertable = true;
-		if (join != null) {
-			insertable = join.insertable();
-		} else if (idAnnotation != null && col != null
-				&& col.insertable() == false) {
-			insertable = false;
-		} else if (col != null && col.insertable() == false) {
-			insertable = false;
-		} else if (col != null) {
-			insertable = col.insertable();
-		} else if (idAnnotation != null) {
-			insertable = true;
-		} else {
-			insertable = false;
-		}
-
-		return insertable;
+	/**
+	 * Converts a primary key to the value bound to the :id parameter, with the
+	 * binding of the @Id column
+	 * 
+	 * @param type
+	 *            the entity class
+	 * @param primaryKey
+	 * @return
+	 */
+	public Object getIdParameter(Class<?> type, Object primaryKey) {
+		return EntityMetadata.forClass(type).requireIdColumn().getBinding()
+				.convert(primaryKey);
 	}
 
 	/**
-	 * Returns the Integer value of the JPA @Id annotated field
+	 * Returns the Integer value of the JPA @Id annotated field. The id of a
+	 * {@link LazyReference} is returned without loading the entity.
 	 * 
 	 * @param entity
 	 * @return
@@ -324,11 +521,14 @@ public class JdbcJpaHelper {
 		if (entity == null) {
 			return null;
 		}
+		if (entity instanceof LazyReference) {
+			return ((LazyReference) entity).getReferenceId();
+		}
 
-		Field field = getIDField(entity.getClass());
-		if (field != null) {
-			field.setAccessible(true);
-			Object value = field.get(entity);
+		ColumnMetadata idColumn = EntityMetadata.forClass(entity.getClass())
+				.getIdColumn();
+		if (idColumn != null) {
+			Object value = idColumn.getValue(entity);
 
 			if (value != null) {
 				return value;
@@ -337,87 +537,48 @@ public class JdbcJpaHelper {
 		return null;
 	}
 
-	// /**
-	// * Copies the given id to the JPA @Id annotated field
-	// *
-	// * @param entity
-	// * @param id
-	// * @throws IllegalArgumentException
-	// * @throws IllegalAccessException
-	// */
-	// private void setEntityID(Object entity, Object id, Field idField)
-	// throws IllegalArgumentException, IllegalAccessException {
-	// if (entity == null) {
-	// return;
-	// }
-	//
-	// if (idField != null) {
-	// idField.setAccessible(true);
-	// if (id instanceof Number) {
-	// idField.set(entity, id);
-	// }
-	// if (idField.getType() == UUID.class) {
-	// idField.set(entity, UUID.fromString(id.toString()));
-	// } else if (idField.getType() == Integer.class) {
-	// idField.set(entity, Integer.parseInt(id.toString()));
-	// } else if (idField.getType() == Long.class) {
-	// idField.set(entity, Long.parseLong(id.toString()));
-	// }
-	// }
-	// }
-
 	/**
-	 * Gets the first field with an ID annotation
+	 * Copies the given id, such as a generated key, to the JPA @Id annotated
+	 * field, converting it to the type of the field
 	 * 
 	 * @param entity
 	 * @param id
-	 * @throws IllegalArgumentException
-	 * @throws IllegalAccessException
 	 */
-	private Field getIDField(Class<?> cl) throws IllegalArgumentException,
-			IllegalAccessException {
-		if (cl == null) {
-			return null;
-		}
-
-		Field[] fields = cl.getDeclaredFields();
-		for (int i = 0; i < fields.length; i++) {
-			Field field = fields[i];
-			Id idAnnotation = field.getAnnotation(Id.class);
-
-			if (idAnnotation != null) {
-				return field;
-			}
-		}
-		return null;
+	public void setEntityID(Object entity, Object id) {
+		ColumnMetadata idColumn = EntityMetadata.forClass(entity.getClass())
+				.requireIdColumn();
+		idColumn.setValue(entity, convertId(id, idColumn.getType()));
 	}
 
 	/**
-	 * Returns the first field with an Id annotation and Column annotation with
-	 * insertable set to true
+	 * Converts a key read with <code>getObject</code>, such as a foreign key
+	 * or a generated key, to the type of an @Id field
 	 * 
-	 * @param entity
-	 * @throws IllegalArgumentException
-	 * @throws IllegalAccessException
+	 * @param value
+	 * @param idType
+	 * @return
 	 */
-	private Field hasNonInsertableID(Object entity)
-			throws IllegalArgumentException, IllegalAccessException {
-		if (entity == null) {
-			return null;
-		}
-		Class<?> cl = entity.getClass();
-		Field[] fields = cl.getDeclaredFields();
-		for (int i = 0; i < fields.length; i++) {
-			Field field = fields[i];
-			Id idAnnotation = field.getAnnotation(Id.class);
-			Column col = field.getAnnotation(Column.class);
-
-			if (idAnnotation != null && col != null) {
-				if (col.insertable() == false) {
-					return field;
-				}
+	public static Object convertId(Object value, Class<?> idType) {
+		if (value == null || idType.isInstance(value)) {
+			return value;
+		} else if (idType == UUID.class) {
+			return UUIDConverter.toUUID(value);
+		} else if (idType == String.class) {
+			return value.toString();
+		} else if (value instanceof Number) {
+			Number number = (Number) value;
+			if (idType == Integer.class || idType == int.class) {
+				return Integer.valueOf(number.intValue());
+			} else if (idType == Long.class || idType == long.class) {
+				return Long.valueOf(number.longValue());
+			} else if (idType == Short.class || idType == short.class) {
+				return Short.valueOf(number.shortValue());
+			} else if (idType == BigInteger.class) {
+				return BigInteger.valueOf(number.longValue());
+			} else if (idType == BigDecimal.class) {
+				return new BigDecimal(number.toString());
 			}
 		}
-		return null;
+		return value;
 	}
 }
@@ -0,0 +1,63 @@
+package com.github.simplejpatemplate.util;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.core.SqlTypeValue;
+
+/**
+ * Binds a stream or LOB locator with the matching <code>PreparedStatement</code>
+ * setter, so the content is streamed to the database instead of being copied
+ * into a <code>byte[]</code> or <code>String</code> first. Two parameters are
+ * equal when they wrap the same instance.
+ */
+public final class LobParameter implements SqlTypeValue {
+	private final Object value;
+
+	/**
+	 * @param value
+	 *            an <code>InputStream</code>, <code>Reader</code>,
+	 *            <code>Blob</code> or <code>Clob</code>, not null
+	 */
+	public LobParameter(Object value) {
+		if (value instanceof InputStream == false
+				&& value instanceof Reader == false
+				&& value instanceof Blob == false
+				&& value instanceof Clob == false) {
+			throw new IllegalArgumentException("Not a stream or LOB: " + value);
+		}
+		this.value = value;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public void setTypeValue(PreparedStatement ps, int paramIndex,
+			int sqlType, String typeName) throws SQLException {
+		if (value instanceof InputStream) {
+			ps.setBinaryStream(paramIndex, (InputStream) value);
+		} else if (value instanceof Reader) {
+			ps.setCharacterStream(paramIndex, (Reader) value);
+		} else if (value instanceof Blob) {
+			ps.setBlob(paramIndex, (Blob) value);
+		} else {
+			ps.setClob(paramIndex, (Clob) value);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(value);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof LobParameter
+				&& ((LobParameter) obj).value == value;
+	}
+}
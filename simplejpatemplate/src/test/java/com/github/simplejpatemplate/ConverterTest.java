@@ -0,0 +1,67 @@
+package com.github.simplejpatemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.simplejpatemplate.convert.Converter;
+import com.github.simplejpatemplate.convert.Converters;
+import com.github.simplejpatemplate.convert.TemporalConverters;
+import com.github.simplejpatemplate.convert.UUIDConverter;
+
+public class ConverterTest {
+	@Test
+	public void testUUIDString() {
+		for (int i = 0; i < 100; i++) {
+			UUID uuid = UUID.randomUUID();
+			Assert.assertEquals(uuid.toString(), UUIDConverter.format(uuid));
+			Assert.assertEquals(uuid, UUIDConverter.parse(uuid.toString()));
+		}
+		UUID upper = UUID.fromString("00112233-4455-6677-8899-AABBCCDDEEFF");
+		Assert.assertEquals(upper, UUIDConverter.parse(upper.toString()
+				.toUpperCase()));
+
+		try {
+			UUIDConverter.parse("0011-2233");
+			Assert.fail("Invalid UUID accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUUIDBinary() {
+		UUID uuid = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+		byte[] bytes = (byte[]) new UUIDConverter(UUIDConverter.Storage.BINARY)
+				.write(uuid);
+		Assert.assertEquals(16, bytes.length);
+		Assert.assertEquals(0x00, bytes[0]);
+		Assert.assertEquals((byte) 0xFF, bytes[15]);
+		Assert.assertEquals(uuid, UUIDConverter.fromBytes(bytes));
+		Assert.assertEquals(uuid, UUIDConverter.toUUID(bytes));
+		Assert.assertEquals(uuid, UUIDConverter.toUUID(uuid.toString()));
+		Assert.assertTrue(Arrays.equals(bytes, UUIDConverter.toBytes(uuid)));
+	}
+
+	@Test
+	public void testTemporalZone() {
+		Instant instant = Instant.parse("2020-06-01T12:00:00Z");
+		try {
+			TemporalConverters.register(ZoneId.of("Asia/Tokyo"), false);
+			Converter<Instant> converter = Converters.get(Instant.class);
+			Assert.assertEquals(
+					Timestamp.valueOf(LocalDateTime.of(2020, 6, 1, 21, 0)),
+					converter.write(instant));
+		} finally {
+			TemporalConverters.register(ZoneId.systemDefault(), false);
+		}
+		Assert.assertEquals(Timestamp.from(instant),
+				Converters.get(Instant.class).write(instant));
+	}
+}
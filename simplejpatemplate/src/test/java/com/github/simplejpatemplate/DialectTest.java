@@ -0,0 +1,89 @@
+package com.github.simplejpatemplate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.simplejpatemplate.dialect.DerbyDialect;
+import com.github.simplejpatemplate.dialect.Dialects;
+import com.github.simplejpatemplate.dialect.GenericDialect;
+import com.github.simplejpatemplate.dialect.MySQLDialect;
+import com.github.simplejpatemplate.dialect.PostgreSQLDialect;
+import com.github.simplejpatemplate.dialect.SQLServerDialect;
+import com.github.simplejpatemplate.util.JdbcJpaHelper;
+
+public class DialectTest {
+	@Test
+	public void testForDatabaseProductName() {
+		Assert.assertEquals(new DerbyDialect(),
+				Dialects.forDatabaseProductName("Apache Derby"));
+		Assert.assertEquals(new PostgreSQLDialect(),
+				Dialects.forDatabaseProductName("PostgreSQL"));
+		Assert.assertEquals(new GenericDialect(),
+				Dialects.forDatabaseProductName("Unknown"));
+	}
+
+	@Test
+	public void testUpsertQueries() {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		Assert.assertEquals(
+				"MERGE INTO tablename t USING SYSIBM.SYSDUMMY1 ON t.idCol = :idCol"
+						+ " WHEN MATCHED THEN UPDATE SET colone = :colone"
+						+ " WHEN NOT MATCHED THEN INSERT ( idCol, colone ) VALUES ( :idCol, :colone )",
+				helper.createUpsertQuery(EntityParent.class, null,
+						new DerbyDialect()));
+		Assert.assertEquals(
+				"INSERT INTO tablename ( idCol, colone ) VALUES ( :idCol, :colone )"
+						+ " ON CONFLICT ( idCol ) DO UPDATE SET colone = EXCLUDED.colone",
+				helper.createUpsertQuery(EntityParent.class, null,
+						new PostgreSQLDialect()));
+		Assert.assertEquals(
+				"INSERT INTO tablename ( idCol, colone ) VALUES ( :idCol, :colone )"
+						+ " ON DUPLICATE KEY UPDATE colone = VALUES(colone)",
+				helper.createUpsertQuery(EntityParent.class, null,
+						new MySQLDialect()));
+	}
+
+	@Test
+	public void testPageQueries() {
+		String sql = "SELECT * FROM t ORDER BY id";
+		Assert.assertEquals(sql
+				+ " OFFSET :pageOffset_ ROWS FETCH NEXT :pageLimit_ ROWS ONLY",
+				new DerbyDialect().createPageQuery(sql, true, true));
+		Assert.assertEquals(sql + " FETCH FIRST :pageLimit_ ROWS ONLY",
+				new GenericDialect().createPageQuery(sql, false, true));
+		Assert.assertEquals(sql
+				+ " OFFSET :pageOffset_ ROWS FETCH NEXT :pageLimit_ ROWS ONLY",
+				new SQLServerDialect().createPageQuery(sql, false, true));
+		Assert.assertEquals(sql + " LIMIT :pageLimit_ OFFSET :pageOffset_",
+				new PostgreSQLDialect().createPageQuery(sql, true, true));
+		Assert.assertEquals(sql + " LIMIT :pageOffset_, 18446744073709551615",
+				new MySQLDialect().createPageQuery(sql, true, false));
+		Assert.assertEquals(sql, new MySQLDialect().createPageQuery(sql,
+				false, false));
+	}
+
+	@Test
+	public void testLockQueries() {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		Assert.assertEquals(
+				"SELECT ver FROM versioned WHERE idCol = :id FOR UPDATE WITH RS",
+				helper.createLockQuery(EntityVersioned.class, null,
+						new DerbyDialect()));
+		Assert.assertEquals(
+				"SELECT idCol FROM tablename WHERE idCol = :id FOR UPDATE",
+				helper.createLockQuery(EntityParent.class, null,
+						new PostgreSQLDialect()));
+		Assert.assertEquals("SELECT ver FROM versioned WITH (UPDLOCK, ROWLOCK)"
+				+ " WHERE idCol = :id", helper.createLockQuery(
+				EntityVersioned.class, null, new SQLServerDialect()));
+		Assert.assertEquals("UPDATE versioned SET name = :name , ver = ver + 1"
+				+ " WHERE idCol = :idCol AND ver = :ver",
+				helper.createUpdateQuery(EntityVersioned.class, null));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testGenericDialectHasNoUpsert() {
+		new JdbcJpaHelper().createUpsertQuery(EntityParent.class, null,
+				new GenericDialect());
+	}
+}
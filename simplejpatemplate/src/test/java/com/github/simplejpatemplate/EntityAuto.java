@@ -0,0 +1,35 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "autoid")
+public class EntityAuto {
+	@Id
+	@GeneratedValue
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Column(name = "name")
+	private String name;
+
+	public EntityAuto() {
+	}
+
+	public EntityAuto(Integer id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,114 @@
+package com.github.simplejpatemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.simplejpatemplate.cache.CacheRegionConfig;
+import com.github.simplejpatemplate.cache.CacheStatistics;
+import com.github.simplejpatemplate.cache.EntityCache;
+import com.github.simplejpatemplate.cache.EvictionPolicy;
+
+public class EntityCacheTest {
+	@Test
+	public void testCopiesState() {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(10));
+
+		EntityParent parent = newParent(1, "one");
+		cache.put(parent, parent.getId());
+		parent.setFieldOne("changed");
+
+		EntityParent cached = cache.get(EntityParent.class, 1);
+		Assert.assertNotSame(parent, cached);
+		Assert.assertEquals("one", cached.getFieldOne());
+		Assert.assertNull(cache.get(EntityChild.class, 1));
+	}
+
+	@Test
+	public void testLruEviction() {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(2));
+		cache.put(newParent(1, "one"), 1);
+		cache.put(newParent(2, "two"), 2);
+		Assert.assertNotNull(cache.get(EntityParent.class, 1));
+		cache.put(newParent(3, "three"), 3);
+
+		Assert.assertNull(cache.get(EntityParent.class, 2));
+		Assert.assertNotNull(cache.get(EntityParent.class, 1));
+		Assert.assertNotNull(cache.get(EntityParent.class, 3));
+
+		CacheStatistics statistics = cache.getStatistics(EntityParent.class);
+		Assert.assertEquals(3, statistics.getHitCount());
+		Assert.assertEquals(1, statistics.getMissCount());
+		Assert.assertEquals(1, statistics.getEvictionCount());
+	}
+
+	@Test
+	public void testLfuEviction() {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, new CacheRegionConfig(2, 0,
+				TimeUnit.SECONDS, EvictionPolicy.LFU));
+		cache.put(newParent(1, "one"), 1);
+		cache.put(newParent(2, "two"), 2);
+		cache.get(EntityParent.class, 1);
+		cache.put(newParent(3, "three"), 3);
+
+		Assert.assertNotNull(cache.get(EntityParent.class, 1));
+		Assert.assertNull(cache.get(EntityParent.class, 2));
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, new CacheRegionConfig(10, 1,
+				TimeUnit.MILLISECONDS, EvictionPolicy.LRU));
+		cache.put(newParent(1, "one"), 1);
+		Thread.sleep(5);
+
+		Assert.assertNull(cache.get(EntityParent.class, 1));
+		Assert.assertEquals(1, cache.getStatistics().getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidate() {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(10));
+		cache.put(newParent(1, "one"), 1);
+		cache.invalidate(EntityParent.class, 1);
+
+		Assert.assertNull(cache.get(EntityParent.class, 1));
+		Assert.assertEquals(1, cache.getStatistics().getInvalidationCount());
+	}
+
+	@Test
+	public void testStalePut() {
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(1));
+		long version = cache.getVersion(EntityParent.class);
+		cache.invalidate(EntityParent.class, 1);
+		cache.put(newParent(1, "stale"), 1, null, version);
+		Assert.assertNull(cache.get(EntityParent.class, 1));
+
+		cache.put(newParent(2, "two"), 2, null, version);
+		Assert.assertNotNull(cache.get(EntityParent.class, 2));
+
+		// Only one invalidation is remembered, older reads are not cached
+		cache.invalidate(EntityParent.class, 3);
+		cache.put(newParent(4, "four"), 4, null, version);
+		Assert.assertNull(cache.get(EntityParent.class, 4));
+
+		version = cache.getVersion(EntityParent.class);
+		cache.put(newParent(1, "fresh"), 1, null, version);
+		Assert.assertEquals("fresh", cache.get(EntityParent.class, 1)
+				.getFieldOne());
+	}
+
+	private EntityParent newParent(int id, String fieldOne) {
+		EntityParent entity = new EntityParent();
+		entity.setId(id);
+		entity.setFieldOne(fieldOne);
+		return entity;
+	}
+}
@@ -0,0 +1,47 @@
+package com.github.simplejpatemplate;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "document")
+public class EntityDocument {
+	@Id
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Column(name = "content")
+	private InputStream content;
+
+	@Column(name = "body")
+	private Reader body;
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public InputStream getContent() {
+		return content;
+	}
+
+	public void setContent(InputStream content) {
+		this.content = content;
+	}
+
+	public Reader getBody() {
+		return body;
+	}
+
+	public void setBody(Reader body) {
+		this.body = body;
+	}
+}
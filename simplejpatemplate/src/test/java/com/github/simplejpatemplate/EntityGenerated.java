@@ -0,0 +1,35 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "generated")
+public class EntityGenerated {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Column(name = "name")
+	private String name;
+
+	public EntityGenerated() {
+	}
+
+	public EntityGenerated(String name) {
+		this.name = name;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
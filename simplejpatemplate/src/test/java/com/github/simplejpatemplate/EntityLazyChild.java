@@ -0,0 +1,62 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "lazychild")
+public class EntityLazyChild {
+	@Id
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Basic(fetch = FetchType.LAZY)
+	@Column(name = "payload")
+	private byte[] payload;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "parent")
+	private EntityParent parent;
+
+	@ManyToOne(fetch = FetchType.LAZY, targetEntity = EntityParent.class)
+	@JoinColumn(name = "viewId")
+	private ParentView view;
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public void setPayload(byte[] payload) {
+		this.payload = payload;
+	}
+
+	public EntityParent getParent() {
+		return parent;
+	}
+
+	public void setParent(EntityParent parent) {
+		this.parent = parent;
+	}
+
+	public ParentView getView() {
+		return view;
+	}
+
+	public void setView(ParentView view) {
+		this.view = view;
+	}
+}
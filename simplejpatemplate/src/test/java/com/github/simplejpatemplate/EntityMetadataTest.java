@@ -0,0 +1,64 @@
+package com.github.simplejpatemplate;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
+import com.github.simplejpatemplate.metadata.EntityMetadata;
+
+public class EntityMetadataTest {
+	@Test
+	public void testCachedPerClass() {
+		EntityMetadata metadata = EntityMetadata.forClass(EntityParent.class);
+		Assert.assertSame(metadata,
+				EntityMetadata.forClass(EntityParent.class));
+		Assert.assertNotSame(metadata,
+				EntityMetadata.forClass(EntityChild.class));
+	}
+
+	@Test
+	public void testParentMetadata() {
+		EntityMetadata metadata = EntityMetadata.forClass(EntityParent.class);
+		Assert.assertTrue(metadata.isEntity());
+		Assert.assertEquals("tablename", metadata.getQualifiedTableName(null));
+		Assert.assertEquals("db.tablename",
+				metadata.getQualifiedTableName("db"));
+		Assert.assertEquals("idCol", metadata.getIdColumn().getColumnName());
+
+		List<ColumnMetadata> insertable = metadata.getInsertableColumns();
+		Assert.assertEquals(2, insertable.size());
+		Assert.assertEquals("idCol", insertable.get(0).getColumnName());
+		Assert.assertEquals("colone", insertable.get(1).getColumnName());
+
+		Assert.assertEquals(1, metadata.getRelations().size());
+		Assert.assertEquals(ColumnMetadata.RelationType.ONE_TO_MANY, metadata
+				.getRelations().get(0).getRelationType());
+	}
+
+	@Test
+	public void testChildMetadata() {
+		EntityMetadata metadata = EntityMetadata.forClass(EntityChild.class);
+		ColumnMetadata id = metadata.getIdColumn();
+		Assert.assertEquals("idField", id.getColumnName());
+		Assert.assertTrue(id.isInsertable());
+		Assert.assertFalse(id.isUpdatable());
+
+		ColumnMetadata parent = metadata.getColumnByField("parent");
+		Assert.assertTrue(parent.isReference());
+		Assert.assertFalse(parent.isMappedColumn());
+
+		Assert.assertEquals(2, metadata.getMappedColumns().size());
+	}
+
+	@Test
+	public void testAutoId() {
+		EntityMetadata metadata = EntityMetadata.forClass(EntityAuto.class);
+		Assert.assertTrue(metadata.isIdAuto());
+		Assert.assertTrue(metadata.getIdColumn().isInsertable());
+		Assert.assertFalse(metadata.isIdGeneratedOnInsert());
+		Assert.assertFalse(metadata.isIdFromSequence());
+		Assert.assertEquals("autoid_SEQ", metadata.getSequenceName());
+	}
+}
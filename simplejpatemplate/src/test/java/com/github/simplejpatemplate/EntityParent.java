@@ -10,7 +10,7 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "tablename")
-public class EntityParent {
+public class EntityParent implements ParentView {
 	@Id
 	@Column(name="idCol")
 	private Integer id;
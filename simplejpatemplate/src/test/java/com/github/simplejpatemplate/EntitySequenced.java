@@ -0,0 +1,37 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "sequenced")
+@SequenceGenerator(name = "sequenced", sequenceName = "sequenced_seq", allocationSize = 10)
+public class EntitySequenced {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenced")
+	@Column(name = "idCol")
+	private long id;
+
+	@Column(name = "name")
+	private String name;
+
+	public EntitySequenced() {
+	}
+
+	public EntitySequenced(String name) {
+		this.name = name;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
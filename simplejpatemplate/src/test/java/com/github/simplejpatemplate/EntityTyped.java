@@ -0,0 +1,156 @@
+package com.github.simplejpatemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "typed")
+public class EntityTyped {
+	public enum Status {
+		NEW, ACTIVE, CLOSED
+	}
+
+	/**
+	 * A value type stored by a converter registered in the test
+	 */
+	public static final class Code {
+		private final String value;
+
+		public Code(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		@Override
+		public int hashCode() {
+			return value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Code && value.equals(((Code) obj).value);
+		}
+	}
+
+	@Id
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Column(name = "amount")
+	private int amount;
+
+	@Column(name = "total")
+	private long total;
+
+	@Column(name = "ratio")
+	private double ratio;
+
+	@Column(name = "active")
+	private boolean active;
+
+	@Column(name = "price")
+	private BigDecimal price;
+
+	@Column(name = "day")
+	private LocalDate day;
+
+	@Column(name = "status")
+	private Status status;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "kind")
+	private Status kind;
+
+	@Column(name = "code")
+	private Code code;
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public int getAmount() {
+		return amount;
+	}
+
+	public void setAmount(int amount) {
+		this.amount = amount;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public double getRatio() {
+		return ratio;
+	}
+
+	public void setRatio(double ratio) {
+		this.ratio = ratio;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public void setActive(boolean active) {
+		this.active = active;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public void setPrice(BigDecimal price) {
+		this.price = price;
+	}
+
+	public LocalDate getDay() {
+		return day;
+	}
+
+	public void setDay(LocalDate day) {
+		this.day = day;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public void setStatus(Status status) {
+		this.status = status;
+	}
+
+	public Status getKind() {
+		return kind;
+	}
+
+	public void setKind(Status kind) {
+		this.kind = kind;
+	}
+
+	public Code getCode() {
+		return code;
+	}
+
+	public void setCode(Code code) {
+		this.code = code;
+	}
+}
@@ -0,0 +1,46 @@
+package com.github.simplejpatemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+@Entity
+@Table(name = "versioned")
+public class EntityVersioned {
+	@Id
+	@Column(name = "idCol")
+	private Integer id;
+
+	@Column(name = "name")
+	private String name;
+
+	@Version
+	@Column(name = "ver")
+	private Integer version;
+
+	public EntityVersioned() {
+	}
+
+	public EntityVersioned(Integer id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getVersion() {
+		return version;
+	}
+}
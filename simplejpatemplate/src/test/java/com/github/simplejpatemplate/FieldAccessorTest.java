@@ -0,0 +1,74 @@
+package com.github.simplejpatemplate;
+
+import java.lang.reflect.Field;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.simplejpatemplate.accessor.FieldAccessor;
+import com.github.simplejpatemplate.accessor.FieldAccessorFactory;
+import com.github.simplejpatemplate.accessor.MethodHandleFieldAccessorFactory;
+import com.github.simplejpatemplate.accessor.ReflectionFieldAccessorFactory;
+
+public class FieldAccessorTest {
+	@Test
+	public void testMethodHandleAccessor() throws Exception {
+		checkAccessor(new MethodHandleFieldAccessorFactory());
+	}
+
+	@Test
+	public void testReflectionAccessor() throws Exception {
+		checkAccessor(new ReflectionFieldAccessorFactory());
+	}
+
+	private void checkAccessor(FieldAccessorFactory factory) throws Exception {
+		Field field = EntityParent.class.getDeclaredField("fieldOne");
+		field.setAccessible(true);
+		FieldAccessor accessor = factory.createAccessor(field);
+
+		EntityParent parent = new EntityParent();
+		accessor.set(parent, "value");
+		Assert.assertEquals("value", parent.getFieldOne());
+		Assert.assertEquals("value", accessor.get(parent));
+
+		try {
+			accessor.set(parent, Integer.valueOf(1));
+			Assert.fail("Wrong value type accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testPrimitiveSetters() throws Exception {
+		checkPrimitiveSetters(new MethodHandleFieldAccessorFactory());
+		checkPrimitiveSetters(new ReflectionFieldAccessorFactory());
+	}
+
+	private void checkPrimitiveSetters(FieldAccessorFactory factory)
+			throws Exception {
+		EntityTyped typed = new EntityTyped();
+		accessor(factory, "amount").setInt(typed, 7);
+		accessor(factory, "total").setLong(typed, 8L);
+		accessor(factory, "ratio").setDouble(typed, 0.25);
+		accessor(factory, "active").setBoolean(typed, true);
+		Assert.assertEquals(7, typed.getAmount());
+		Assert.assertEquals(8L, typed.getTotal());
+		Assert.assertEquals(0.25, typed.getRatio(), 0);
+		Assert.assertTrue(typed.isActive());
+
+		try {
+			accessor(factory, "day").setInt(typed, 1);
+			Assert.fail("int accepted by a LocalDate field");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static FieldAccessor accessor(FieldAccessorFactory factory,
+			String name) throws Exception {
+		Field field = EntityTyped.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return factory.createAccessor(field);
+	}
+}
@@ -1,10 +1,12 @@
 package com.github.simplejpatemplate;
 
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.github.simplejpatemplate.metadata.ColumnMetadata;
 import com.github.simplejpatemplate.util.JdbcJpaHelper;
 
 public class JdbcJpaHelperTest {
@@ -19,6 +21,15 @@ public class JdbcJpaHelperTest {
 		Assert.assertEquals(1, values.get("idCol"));
 	}
 
+	@Test
+	public void testNullBytesAreWrittenEmpty() throws Exception {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		EntityLazyChild child = new EntityLazyChild();
+		child.setId(1);
+		Map<String, Object> values = helper.getInsertParameters(child);
+		Assert.assertArrayEquals(new byte[0], (byte[]) values.get("payload"));
+	}
+
 	@Test
 	public void testDeleteQuery() throws Exception {
 		JdbcJpaHelper helper = new JdbcJpaHelper();
@@ -28,7 +39,7 @@ public class JdbcJpaHelperTest {
 				parent.getId(), null);
 		Assert.assertNotNull(deleteQuery);
 		Assert.assertEquals(
-				"DELETE FROM catalog.schema.name WHERE idCol = :id",
+				"DELETE FROM tablename WHERE idCol = :id",
 				deleteQuery);
 	}
 
@@ -48,7 +59,7 @@ public class JdbcJpaHelperTest {
 		String insertQuery = helper.createInsertQuery(null, parent, values);
 		Assert.assertNotNull(insertQuery);
 		Assert.assertEquals(
-				"INSERT INTO catalog.schema.name ( idCol , colone  ) VALUES ( :idCol , :colone  )",
+				"INSERT INTO tablename ( idCol , colone  ) VALUES ( :idCol , :colone  )",
 				insertQuery);
 
 		values = helper.getInsertParameters(child);
@@ -57,7 +68,70 @@ public class JdbcJpaHelperTest {
 		insertQuery = helper.createInsertQuery(null, child, values);
 		Assert.assertNotNull(insertQuery);
 		Assert.assertEquals(
-				"INSERT INTO child ( somecol , idField  ) VALUES ( :somecol , :idField  )",
+				"INSERT INTO child ( idField , somecol  ) VALUES ( :idField , :somecol  )",
 				insertQuery);
 	}
+
+	@Test
+	public void testStatementsAreCached() throws Exception {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		EntityParent parent = new EntityParent();
+		parent.setId(1);
+		Map<String, Object> values = helper.getInsertParameters(parent);
+		Assert.assertSame(helper.createInsertQuery(null, parent, values),
+				helper.createInsertQuery(null, parent, values));
+		Assert.assertSame(
+				helper.createSelectQuery(EntityParent.class, 1, null),
+				helper.createSelectQuery(EntityParent.class, 2, null));
+		Assert.assertEquals(
+				"SELECT idCol, colone FROM db.tablename WHERE idCol = :id",
+				helper.createSelectQuery(EntityParent.class, 1, "db"));
+		Assert.assertEquals(
+				"UPDATE tablename SET colone = :colone WHERE idCol = :idCol",
+				helper.createUpdateQuery(EntityParent.class, null));
+	}
+
+	@Test
+	public void testMultiRowInsertQuery() throws Exception {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		String sql = helper.createMultiRowInsertQuery(EntityParent.class, null,
+				2);
+		Assert.assertEquals(
+				"INSERT INTO tablename ( idCol , colone  ) VALUES ( :r0_idCol , :r0_colone  ), ( :r1_idCol , :r1_colone  )",
+				sql);
+		Assert.assertSame(sql,
+				helper.createMultiRowInsertQuery(EntityParent.class, null, 2));
+	}
+
+	@Test
+	public void testMultiIdSelectQuery() throws Exception {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		String sql = helper.createSelectQuery(EntityParent.class, null, 2);
+		Assert.assertEquals(
+				"SELECT idCol, colone FROM tablename WHERE idCol IN ( :id0 , :id1 )",
+				sql);
+		Assert.assertSame(sql,
+				helper.createSelectQuery(EntityParent.class, null, 2));
+	}
+
+	@Test
+	public void testDirtyColumns() throws Exception {
+		JdbcJpaHelper helper = new JdbcJpaHelper();
+		EntityParent parent = new EntityParent();
+		parent.setId(1);
+		parent.setFieldOne("one");
+		Object[] snapshot = helper.getUpdatableState(parent);
+		Assert.assertTrue(helper.getDirtyColumns(parent, snapshot).isEmpty());
+		Assert.assertNull(helper.createUpdateQuery(EntityParent.class, null,
+				helper.getDirtyColumns(parent, snapshot)));
+
+		parent.setFieldOne("two");
+		List<ColumnMetadata> dirty = helper.getDirtyColumns(parent, snapshot);
+		Assert.assertEquals(1, dirty.size());
+		Assert.assertEquals("colone", dirty.get(0).getColumnName());
+
+		Map<String, Object> values = helper.getUpdateParameters(parent, dirty);
+		Assert.assertEquals("two", values.get("colone"));
+		Assert.assertEquals(1, values.get("idCol"));
+	}
 }
@@ -0,0 +1,7 @@
+package com.github.simplejpatemplate;
+
+public interface ParentView {
+	Integer getId();
+
+	String getFieldOne();
+}
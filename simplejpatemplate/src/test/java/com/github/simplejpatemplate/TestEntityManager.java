@@ -1,8 +1,33 @@
 package com.github.simplejpatemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.LockModeType;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Query;
+import javax.persistence.RollbackException;
 import javax.sql.DataSource;
 
 import org.apache.derby.jdbc.EmbeddedDataSource;
@@ -10,12 +35,30 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.simplejpatemplate.batch.BatchPersistException;
+import com.github.simplejpatemplate.batch.BatchResult;
+import com.github.simplejpatemplate.cache.CacheRegionConfig;
+import com.github.simplejpatemplate.cache.EntityCache;
+import com.github.simplejpatemplate.convert.Converter;
+import com.github.simplejpatemplate.convert.Converters;
+import com.github.simplejpatemplate.dialect.DerbyDialect;
+import com.github.simplejpatemplate.query.CloseableIterator;
+import com.github.simplejpatemplate.query.NativeQuery;
+import com.github.simplejpatemplate.query.ResultSetIterator;
+import com.github.simplejpatemplate.rowmapper.JpaRowMapper;
 
 public class TestEntityManager {
 	private EntityManager entityManager;
+	private NamedParameterJdbcTemplate template;
 
 	@Before
 	public void setUp() {
@@ -25,8 +68,7 @@ public class TestEntityManager {
 						.getName());
 		dataSource.setUrl("jdbc:derby:memory:InMemoryDb;create=true");
 
-		NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(
-				dataSource);
+		template = new NamedParameterJdbcTemplate(dataSource);
 
 		template.update(
 				"create table tablename (idCol int, colone varchar(25) )",
@@ -35,6 +77,11 @@ public class TestEntityManager {
 		entityManager = new SimpleJpaEntityManager(template);
 	}
 
+	@After
+	public void tearDown() {
+		template.update("drop table tablename", new MapSqlParameterSource());
+	}
+
 	@Test
 	public void testPersist() {
 		EntityParent entity = new EntityParent();
@@ -50,4 +97,1110 @@ public class TestEntityManager {
 		Assert.assertEquals(entity.getFieldOne(), found.getFieldOne());
 	}
 
+	@Test
+	public void testMapRowWithMissingColumns() {
+		template.update("insert into tablename values (1, 'one')",
+				new MapSqlParameterSource());
+		template.update("insert into tablename values (2, 'two')",
+				new MapSqlParameterSource());
+
+		List<EntityParent> found = template.query(
+				"select idCol from tablename order by idCol",
+				new MapSqlParameterSource(), new JpaRowMapper<EntityParent>(
+						EntityParent.class));
+		Assert.assertEquals(2, found.size());
+		Assert.assertEquals(Integer.valueOf(2), found.get(1).getId());
+		Assert.assertNull(found.get(1).getFieldOne());
+	}
+
+	@Test
+	public void testPersistAll() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setBatchSize(2);
+
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		for (int i = 0; i < 5; i++) {
+			entities.add(newParent(i, "value" + i));
+		}
+		BatchResult result = manager.persistAll(entities);
+		Assert.assertEquals(3, result.getBatches().size());
+		Assert.assertEquals(5, result.getEntityCount());
+
+		EntityParent found = entityManager.find(EntityParent.class, 4);
+		Assert.assertSame(entities.get(4), found);
+		Assert.assertTrue(entityManager.contains(entities.get(0)));
+	}
+
+	@Test
+	public void testPersistAllPartialFailure() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setBatchSize(2);
+
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		entities.add(newParent(1, "one"));
+		entities.add(newParent(2, "two"));
+		entities.add(newParent(3, "this value is too long for the column"));
+		entities.add(newParent(4, "four"));
+		entities.add(newParent(5, "five"));
+		try {
+			manager.persistAll(entities);
+			Assert.fail("Expected a BatchPersistException");
+		} catch (BatchPersistException e) {
+			Assert.assertEquals(1, e.getCompleted().getBatches().size());
+			List<Object> failed = e.getFailedEntities();
+			Assert.assertTrue(failed.contains(entities.get(2)));
+			Assert.assertTrue(failed.contains(entities.get(4)));
+			Assert.assertFalse(failed.contains(entities.get(0)));
+		}
+	}
+
+	@Test
+	public void testPersistAllMultiRow() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setInsertMode(InsertMode.MULTI_ROW_VALUES);
+		manager.setBatchSize(4);
+
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		for (int i = 0; i < 7; i++) {
+			entities.add(newParent(i, "value" + i));
+		}
+		BatchResult result = manager.persistAll(entities);
+		Assert.assertEquals(3, result.getBatches().size());
+		Assert.assertEquals(4, result.getBatches().get(0).getEntities().size());
+		Assert.assertEquals(2, result.getBatches().get(1).getEntities().size());
+		Assert.assertEquals(1, result.getBatches().get(2).getEntities().size());
+		Assert.assertEquals(7, result.getTotalUpdateCount());
+
+		EntityParent found = entityManager.find(EntityParent.class, 6);
+		Assert.assertEquals("value6", found.getFieldOne());
+	}
+
+	@Test
+	public void testMerge() {
+		EntityParent entity = newParent(20, "first");
+		entityManager.merge(entity);
+		Assert.assertEquals("first",
+				entityManager.find(EntityParent.class, 20).getFieldOne());
+
+		EntityParent detached = newParent(20, "second");
+		entityManager.merge(detached);
+		EntityParent found = entityManager.find(EntityParent.class, 20);
+		Assert.assertEquals("second", found.getFieldOne());
+
+		found.setFieldOne("third");
+		entityManager.merge(found);
+		entityManager.clear();
+		Assert.assertEquals("third",
+				entityManager.find(EntityParent.class, 20).getFieldOne());
+	}
+
+	@Test
+	public void testIdentityMap() {
+		template.update("insert into tablename values (50, 'fifty')",
+				new MapSqlParameterSource());
+
+		EntityParent found = entityManager.find(EntityParent.class, 50);
+		Assert.assertTrue(entityManager.contains(found));
+		Assert.assertSame(found, entityManager.find(EntityParent.class, 50));
+		Assert.assertFalse(entityManager.contains(newParent(50, "fifty")));
+
+		entityManager.clear();
+		Assert.assertFalse(entityManager.contains(found));
+		EntityParent reloaded = entityManager.find(EntityParent.class, 50);
+		Assert.assertNotSame(found, reloaded);
+
+		entityManager.remove(reloaded);
+		Assert.assertFalse(entityManager.contains(reloaded));
+		Assert.assertNull(entityManager.find(EntityParent.class, 50));
+	}
+
+	@Test
+	public void testFindConvertsPrimaryKey() {
+		EntityParent entity = newParent(11, "eleven");
+		entityManager.persist(entity);
+		Assert.assertSame(entity, entityManager.find(EntityParent.class, 11L));
+		entityManager.clear();
+
+		EntityParent found = entityManager.find(EntityParent.class, 11L);
+		Assert.assertEquals(Integer.valueOf(11), found.getId());
+		Assert.assertSame(found, entityManager.find(EntityParent.class, 11));
+	}
+
+	@Test
+	public void testUpdate() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.persist(newParent(30, "first"));
+
+		manager.update(newParent(30, "second"));
+		Assert.assertEquals("second",
+				entityManager.find(EntityParent.class, 30).getFieldOne());
+
+		try {
+			manager.update(newParent(31, "missing"));
+			Assert.fail("Expected an EntityNotFoundException");
+		} catch (EntityNotFoundException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUpsert() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setMergeMode(MergeMode.UPSERT);
+		Assert.assertTrue(manager.getDialect() instanceof DerbyDialect);
+
+		manager.merge(newParent(40, "first"));
+		manager.merge(newParent(40, "second"));
+		Assert.assertEquals("second",
+				entityManager.find(EntityParent.class, 40).getFieldOne());
+
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		entities.add(newParent(40, "third"));
+		entities.add(newParent(41, "fourth"));
+		BatchResult result = manager.mergeAll(entities);
+		Assert.assertEquals(2, result.getTotalUpdateCount());
+		Assert.assertEquals("third",
+				entityManager.find(EntityParent.class, 40).getFieldOne());
+		Assert.assertSame(entities.get(1),
+				entityManager.find(EntityParent.class, 41));
+		Assert.assertFalse(entityManager.contains(entities.get(0)));
+		Assert.assertEquals(Integer.valueOf(2), template.queryForObject(
+				"select count(*) from tablename", new MapSqlParameterSource(),
+				Integer.class));
+	}
+
+	@Test
+	public void testSecondLevelCache() {
+		SimpleJpaEntityManagerFactory factory = new SimpleJpaEntityManagerFactory(
+				template);
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(100));
+		factory.setEntityCache(cache);
+
+		factory.createEntityManager().persist(newParent(60, "sixty"));
+		Assert.assertNotNull(factory.createEntityManager().find(
+				EntityParent.class, 60));
+		EntityParent cached = factory.createEntityManager().find(
+				EntityParent.class, 60);
+		Assert.assertEquals("sixty", cached.getFieldOne());
+		Assert.assertEquals(1, cache.getStatistics().getHitCount());
+
+		EntityManager writer = factory.createEntityManager();
+		writer.merge(newParent(60, "changed"));
+		Assert.assertEquals("changed", factory.createEntityManager()
+				.find(EntityParent.class, 60).getFieldOne());
+		Assert.assertEquals(1, cache.getStatistics().getInvalidationCount());
+
+		Assert.assertEquals(1, factory.createEntityManager()
+				.createNativeQuery(
+						"update tablename set colone = 'native' where idCol = 60")
+				.executeUpdate());
+		Assert.assertEquals("native", factory.createEntityManager()
+				.find(EntityParent.class, 60).getFieldOne());
+	}
+
+	@Test
+	public void testSecondLevelCacheTransaction() {
+		SimpleJpaEntityManagerFactory factory = new SimpleJpaEntityManagerFactory(
+				template);
+		final EntityCache cache = new EntityCache();
+		cache.configure(EntityParent.class, CacheRegionConfig.lru(100));
+		factory.setEntityCache(cache);
+		factory.createEntityManager().persist(newParent(70, "committed"));
+
+		final SimpleJpaEntityManager writer = (SimpleJpaEntityManager) factory
+				.createEntityManager();
+		final EntityManager reader = factory.createEntityManager();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(
+				writer.getTransactionManager());
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				writer.merge(newParent(70, "uncommitted"));
+				writer.clear();
+				long puts = cache.getStatistics().getPutCount();
+				Assert.assertEquals("uncommitted",
+						writer.find(EntityParent.class, 70).getFieldOne());
+				Assert.assertEquals(puts, cache.getStatistics().getPutCount());
+
+				// Another entity manager caches the uncommitted row
+				Assert.assertEquals("uncommitted",
+						reader.find(EntityParent.class, 70).getFieldOne());
+				Assert.assertEquals(puts + 1, cache.getStatistics()
+						.getPutCount());
+				status.setRollbackOnly();
+			}
+		});
+		Assert.assertEquals("committed", factory.createEntityManager()
+				.find(EntityParent.class, 70).getFieldOne());
+	}
+
+	@Test
+	public void testSecondLevelCacheReferences() {
+		SimpleJpaEntityManagerFactory factory = new SimpleJpaEntityManagerFactory(
+				template);
+		EntityCache cache = new EntityCache();
+		cache.configure(EntityChild.class, CacheRegionConfig.lru(100));
+		factory.setEntityCache(cache);
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update(
+				"create table child (idField varchar(10), somecol varchar(25), parent int)",
+				none);
+		try {
+			entityManager.persist(newParent(1, "one"));
+			template.update("insert into child values ('a', 'x', 1)", none);
+			template.update("insert into child values ('b', 'x', null)", none);
+
+			SimpleJpaEntityManager loader = (SimpleJpaEntityManager) factory
+					.createEntityManager();
+			loader.findAll(EntityChild.class, Arrays.asList("a", "b"));
+			Assert.assertEquals(2, cache.getStatistics().getPutCount());
+
+			SimpleJpaEntityManager reader = (SimpleJpaEntityManager) factory
+					.createEntityManager();
+			reader.setFetchReferences(true);
+			EntityChild a = reader.find(EntityChild.class, "a");
+			Assert.assertEquals(1, cache.getStatistics().getHitCount());
+			Assert.assertEquals("one", a.getParent().getFieldOne());
+			Assert.assertSame(reader.find(EntityParent.class, 1), a
+					.getParent());
+			Map<Object, EntityChild> found = reader.findAll(EntityChild.class,
+					Arrays.asList("b"));
+			Assert.assertEquals(2, cache.getStatistics().getHitCount());
+			Assert.assertNull(found.get("b").getParent());
+		} finally {
+			template.update("drop table child", none);
+		}
+	}
+
+	@Test
+	public void testStream() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setFetchSize(2);
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		for (int i = 0; i < 5; i++) {
+			entities.add(newParent(i, "value" + i));
+		}
+		manager.persistAll(entities);
+
+		try (Stream<EntityParent> stream = manager.stream(EntityParent.class,
+				"select * from tablename where idCol >= :min order by idCol",
+				Collections.singletonMap("min", 1))) {
+			List<String> values = stream.map(EntityParent::getFieldOne)
+					.collect(Collectors.toList());
+			Assert.assertEquals(4, values.size());
+			Assert.assertEquals("value1", values.get(0));
+		}
+
+		CloseableIterator<EntityParent> iterator = manager.iterate(
+				EntityParent.class, "select * from tablename order by idCol",
+				null);
+		Assert.assertEquals(Integer.valueOf(0), iterator.next().getId());
+		iterator.close();
+		Assert.assertFalse(iterator.hasNext());
+
+		iterator = ResultSetIterator.open((JdbcTemplate) template
+				.getJdbcOperations(), "select * from tablename",
+				new MapSqlParameterSource(), new RowMapper<EntityParent>() {
+					public EntityParent mapRow(ResultSet rs, int rowNum) {
+						throw new IllegalStateException("mapping failed");
+					}
+				}, 0, 0, 0);
+		try {
+			iterator.hasNext();
+			Assert.fail("Mapping failure ignored");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// The failure closed the iterator
+		Assert.assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testNativeQuery() {
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		for (int i = 0; i < 10; i++) {
+			entities.add(newParent(i, "value" + i));
+		}
+		((SimpleJpaEntityManager) entityManager).persistAll(entities);
+
+		Query query = entityManager
+				.createNativeQuery(
+						"select * from tablename where idCol >= :min order by idCol",
+						EntityParent.class).setParameter("min", 2)
+				.setFirstResult(3).setMaxResults(4)
+				.setHint(NativeQuery.HINT_FETCH_SIZE, 2);
+		List<?> page = query.getResultList();
+		Assert.assertEquals(4, page.size());
+		Assert.assertEquals(Integer.valueOf(5),
+				((EntityParent) page.get(0)).getId());
+
+		Assert.assertEquals(3, entityManager
+				.createNativeQuery("select count(*) from tablename where idCol < :1")
+				.setParameter(1, 3).getSingleResult());
+		Assert.assertEquals(2, entityManager
+				.createNativeQuery("delete from tablename where idCol > :max")
+				.setParameter("max", 7).executeUpdate());
+		try {
+			entityManager.createNativeQuery("select idCol from tablename")
+					.getSingleResult();
+			Assert.fail("More than one result");
+		} catch (NonUniqueResultException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFindAll() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setIdChunkSize(4);
+		List<EntityParent> entities = new ArrayList<EntityParent>();
+		for (int i = 0; i < 10; i++) {
+			entities.add(newParent(i, "value" + i));
+		}
+		manager.persistAll(entities);
+		EntityParent managed = manager.find(EntityParent.class, 7);
+
+		Map<Object, EntityParent> found = manager.findAll(EntityParent.class,
+				Arrays.asList(7, 1, 2, 3, 4, 5, 6, 42, 1));
+		Assert.assertEquals(Arrays.asList(7, 1, 2, 3, 4, 5, 6),
+				new ArrayList<Object>(found.keySet()));
+		Assert.assertSame(managed, found.get(7));
+		Assert.assertEquals("value5", found.get(5).getFieldOne());
+		Assert.assertSame(found.get(5), manager.find(EntityParent.class, 5));
+
+		// Keys are converted to the id type
+		found = manager.findAll(EntityParent.class, Arrays.asList(1L, 1, 8L));
+		Assert.assertEquals(Arrays.asList(1, 8),
+				new ArrayList<Object>(found.keySet()));
+		Assert.assertSame(managed, manager.findAll(EntityParent.class,
+				Arrays.asList(7L)).get(7));
+
+		// The state of references is loaded into them
+		manager.clear();
+		EntityParent reference = manager.getReference(EntityParent.class, 3);
+		EntityParent absent = manager.getReference(EntityParent.class, 42);
+		found = manager.findAll(EntityParent.class, Arrays.asList(3, 42));
+		Assert.assertSame(reference, found.get(3));
+		Assert.assertEquals("value3", reference.getFieldOne());
+		Assert.assertFalse(found.containsKey(42));
+		Assert.assertFalse(manager.contains(absent));
+		Assert.assertSame(reference, manager.find(EntityParent.class, 3));
+		Assert.assertSame(reference,
+				manager.getReference(EntityParent.class, 3L));
+	}
+
+	@Test
+	public void testFetchReferences() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setFetchReferences(true);
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update(
+				"create table child (idField varchar(10), somecol varchar(25), parent int)",
+				none);
+		try {
+			manager.persist(newParent(1, "one"));
+			manager.persist(newParent(2, "two"));
+			template.update("insert into child values ('a', 'x', 1)", none);
+			template.update("insert into child values ('b', 'x', 1)", none);
+			template.update("insert into child values ('c', 'x', 2)", none);
+			template.update("insert into child values ('d', 'x', null)", none);
+			manager.clear();
+
+			List<?> children = manager.createNativeQuery(
+					"select * from child order by idField", EntityChild.class)
+					.getResultList();
+			EntityChild a = (EntityChild) children.get(0);
+			EntityChild b = (EntityChild) children.get(1);
+			Assert.assertEquals("one", a.getParent().getFieldOne());
+			Assert.assertSame(a.getParent(), b.getParent());
+			Assert.assertEquals(Integer.valueOf(2),
+					((EntityChild) children.get(2)).getParent().getId());
+			Assert.assertNull(((EntityChild) children.get(3)).getParent());
+
+			EntityChild found = manager.find(EntityChild.class, "c");
+			Assert.assertSame(manager.find(EntityParent.class, 2),
+					found.getParent());
+		} finally {
+			template.update("drop table child", none);
+		}
+	}
+
+	@Test
+	public void testLazyReferences() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update(
+				"create table lazychild (idCol int, payload varchar(100) for bit data, parent int, viewId int)",
+				none);
+		try {
+			manager.persist(newParent(1, "one"));
+			manager.persist(newParent(2, "two"));
+			EntityLazyChild child = new EntityLazyChild();
+			child.setId(1);
+			child.setParent(manager.getReference(EntityParent.class, 1));
+			child.setView(newParent(2, "two"));
+			manager.persist(child);
+			manager.clear();
+
+			EntityLazyChild found = manager.find(EntityLazyChild.class, 1);
+			EntityParent parent = found.getParent();
+			Assert.assertEquals(Integer.valueOf(1), parent.getId());
+			Assert.assertNull(parent.getFieldOne());
+			Assert.assertFalse(manager.isLoaded(parent));
+			Assert.assertSame(parent, manager.find(EntityParent.class, 1));
+			Assert.assertEquals("one", parent.getFieldOne());
+
+			ParentView view = found.getView();
+			Assert.assertEquals(Integer.valueOf(2), view.getId());
+			Assert.assertFalse(manager.isLoaded(view));
+			Assert.assertEquals("two", view.getFieldOne());
+			Assert.assertTrue(manager.isLoaded(view));
+
+			try {
+				manager.initialize(manager.getReference(EntityParent.class, 3));
+				Assert.fail("Reference to a missing row loaded");
+			} catch (EntityNotFoundException e) {
+				// expected
+			}
+		} finally {
+			template.update("drop table lazychild", none);
+		}
+	}
+
+	@Test
+	public void testProjections() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update(
+				"create table lazychild (idCol int, payload varchar(100) for bit data, parent int, viewId int)",
+				none);
+		try {
+			EntityLazyChild child = new EntityLazyChild();
+			child.setId(1);
+			child.setPayload(new byte[] { 1, 2, 3 });
+			manager.persist(child);
+			manager.clear();
+
+			EntityLazyChild found = manager.find(EntityLazyChild.class, 1);
+			Assert.assertNull(found.getPayload());
+			Assert.assertArrayEquals(new byte[] { 1, 2, 3 },
+					(byte[]) manager.initialize(found, "payload"));
+			Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, found.getPayload());
+
+			EntityLazyChild partial = manager.findFields(EntityLazyChild.class,
+					1, "payload");
+			Assert.assertEquals(3, partial.getPayload().length);
+			Assert.assertFalse(manager.contains(partial));
+		} finally {
+			template.update("drop table lazychild", none);
+		}
+
+		manager.persist(newParent(1, "one"));
+		List<?> dtos = manager.createNativeQuery(
+				"select idCol as id, colone as field_one from tablename",
+				ParentDto.class).getResultList();
+		Assert.assertEquals("one", ((ParentDto) dtos.get(0)).fieldOne);
+		List<?> values = manager.createNativeQuery(
+				"select colone, idCol from tablename", ParentValue.class)
+				.getResultList();
+		Assert.assertEquals(Long.valueOf(1), ((ParentValue) values.get(0)).id);
+	}
+
+	@Test
+	public void testStreamingLobs() throws Exception {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update(
+				"create table document (idCol int, content blob, body clob)",
+				none);
+		try {
+			EntityDocument document = new EntityDocument();
+			document.setId(1);
+			document.setContent(new ByteArrayInputStream("binary"
+					.getBytes("UTF-8")));
+			document.setBody(new StringReader("text"));
+			manager.persist(document);
+			EntityDocument empty = new EntityDocument();
+			empty.setId(2);
+			manager.persist(empty);
+
+			CloseableIterator<EntityDocument> iterator = manager.iterate(
+					EntityDocument.class,
+					"select content, idCol from document order by idCol", null);
+			try {
+				EntityDocument found = iterator.next();
+				Assert.assertEquals("binary", new String(
+						readFully(found.getContent()), "UTF-8"));
+				found = iterator.next();
+				Assert.assertEquals(Integer.valueOf(2), found.getId());
+				Assert.assertNull(found.getContent());
+			} finally {
+				iterator.close();
+			}
+
+			iterator = manager.iterate(EntityDocument.class,
+					"select idCol, body from document where idCol = 1", null);
+			try {
+				char[] chars = new char[10];
+				int read = iterator.next().getBody().read(chars);
+				Assert.assertEquals("text", new String(chars, 0, read));
+			} finally {
+				iterator.close();
+			}
+		} finally {
+			template.update("drop table document", none);
+		}
+	}
+
+	@Test
+	public void testConverters() throws Exception {
+		Converters.register(EntityTyped.Code.class,
+				new Converter<EntityTyped.Code>() {
+					public EntityTyped.Code read(ResultSet rs, int index)
+							throws SQLException {
+						String value = rs.getString(index);
+						return value != null ? new EntityTyped.Code(value
+								.substring(5)) : null;
+					}
+
+					public Object write(EntityTyped.Code value) {
+						return "code-" + value.getValue();
+					}
+
+					public int getSqlType() {
+						return Types.VARCHAR;
+					}
+				});
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table typed (idCol int, amount int, "
+				+ "total bigint, ratio double, active boolean, "
+				+ "price decimal(10,2), day date, status int, "
+				+ "kind varchar(10), code varchar(20))", none);
+		try {
+			EntityTyped typed = new EntityTyped();
+			typed.setId(1);
+			typed.setAmount(42);
+			typed.setTotal(1L << 40);
+			typed.setRatio(0.5);
+			typed.setActive(true);
+			typed.setPrice(new BigDecimal("12.34"));
+			typed.setDay(LocalDate.of(2020, 2, 29));
+			typed.setStatus(EntityTyped.Status.ACTIVE);
+			typed.setKind(EntityTyped.Status.CLOSED);
+			typed.setCode(new EntityTyped.Code("abc"));
+			entityManager.persist(typed);
+			EntityTyped empty = new EntityTyped();
+			empty.setId(2);
+			entityManager.persist(empty);
+
+			Assert.assertEquals(Integer.valueOf(1), template.queryForObject(
+					"select status from typed where idCol = 1", none,
+					Integer.class));
+			Assert.assertEquals("CLOSED", template.queryForObject(
+					"select kind from typed where idCol = 1", none,
+					String.class));
+			Assert.assertEquals("code-abc", template.queryForObject(
+					"select code from typed where idCol = 1", none,
+					String.class));
+
+			entityManager.clear();
+			EntityTyped found = entityManager.find(EntityTyped.class, 1);
+			Assert.assertEquals(42, found.getAmount());
+			Assert.assertEquals(1L << 40, found.getTotal());
+			Assert.assertEquals(0.5, found.getRatio(), 0);
+			Assert.assertTrue(found.isActive());
+			Assert.assertEquals(new BigDecimal("12.34"), found.getPrice());
+			Assert.assertEquals(LocalDate.of(2020, 2, 29), found.getDay());
+			Assert.assertEquals(EntityTyped.Status.ACTIVE, found.getStatus());
+			Assert.assertEquals(EntityTyped.Status.CLOSED, found.getKind());
+			Assert.assertEquals(new EntityTyped.Code("abc"), found.getCode());
+
+			found = entityManager.find(EntityTyped.class, 2);
+			Assert.assertEquals(0, found.getAmount());
+			Assert.assertFalse(found.isActive());
+			Assert.assertNull(found.getPrice());
+			Assert.assertNull(found.getStatus());
+			Assert.assertNull(found.getCode());
+		} finally {
+			template.update("drop table typed", none);
+		}
+	}
+
+	@Test
+	public void testIdentityIds() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table generated (idCol int generated always "
+				+ "as identity, name varchar(25))", none);
+		try {
+			EntityGenerated first = new EntityGenerated("first");
+			manager.persist(first);
+			Assert.assertNotNull(first.getId());
+
+			List<EntityGenerated> more = Arrays.asList(new EntityGenerated(
+					"second"), new EntityGenerated("third"));
+			manager.setInsertMode(InsertMode.MULTI_ROW_VALUES);
+			manager.persistAll(more);
+			Assert.assertEquals(first.getId() + 1, more.get(0).getId()
+					.intValue());
+			Assert.assertEquals(first.getId() + 2, more.get(1).getId()
+					.intValue());
+
+			manager.clear();
+			Assert.assertEquals("third", manager.find(EntityGenerated.class,
+					more.get(1).getId()).getName());
+		} finally {
+			template.update("drop table generated", none);
+		}
+	}
+
+	@Test
+	public void testAutoIds() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table autoid (idCol int, name varchar(25))",
+				none);
+		template.update("create sequence autoid_seq start with 1", none);
+		try {
+			EntityAuto assigned = new EntityAuto(10, "assigned");
+			manager.persist(assigned);
+			Assert.assertEquals(Integer.valueOf(10), assigned.getId());
+			// Derby has sequences, so unset AUTO ids are allocated from one
+			EntityAuto generated = new EntityAuto(null, "generated");
+			manager.persist(generated);
+			Assert.assertEquals(Integer.valueOf(1), generated.getId());
+
+			manager.clear();
+			Assert.assertEquals("assigned",
+					manager.find(EntityAuto.class, 10).getName());
+			Assert.assertEquals("generated",
+					manager.find(EntityAuto.class, 1).getName());
+		} finally {
+			template.update("drop table autoid", none);
+			template.update("drop sequence autoid_seq restrict", none);
+		}
+	}
+
+	@Test
+	public void testSequenceIds() {
+		SimpleJpaEntityManagerFactory factory = new SimpleJpaEntityManagerFactory(
+				template);
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) factory
+				.createEntityManager();
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table sequenced (idCol bigint, name varchar(25))",
+				none);
+		template.update("create sequence sequenced_seq as bigint "
+				+ "start with 1 increment by 10", none);
+		try {
+			EntitySequenced first = new EntitySequenced("first");
+			manager.persist(first);
+			List<EntitySequenced> more = new ArrayList<EntitySequenced>();
+			for (int i = 0; i < 10; i++) {
+				more.add(new EntitySequenced("more" + i));
+			}
+			manager.persistAll(more);
+			Assert.assertEquals(1, first.getId());
+			Assert.assertEquals(2, more.get(0).getId());
+			Assert.assertEquals(10, more.get(8).getId());
+			// The second block starts at the next sequence value
+			Assert.assertEquals(11, more.get(9).getId());
+
+			// Entity managers of one factory share the allocated blocks
+			EntityManager other = factory.createEntityManager();
+			EntitySequenced next = new EntitySequenced("next");
+			other.persist(next);
+			Assert.assertEquals(12, next.getId());
+			Assert.assertSame(manager.getDialect(),
+					((SimpleJpaEntityManager) other).getDialect());
+
+			SimpleJpaEntityManager standalone = new SimpleJpaEntityManager(
+					template);
+			EntitySequenced last = new EntitySequenced("last");
+			standalone.persist(last);
+			Assert.assertEquals(21, last.getId());
+			Assert.assertEquals(13, template.queryForInt(
+					"select count(*) from sequenced", none));
+		} finally {
+			template.update("drop table sequenced", none);
+			template.update("drop sequence sequenced_seq restrict", none);
+		}
+	}
+
+	@Test
+	public void testOptimisticLocking() {
+		final SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table versioned (idCol int primary key, "
+				+ "name varchar(25), ver int)", none);
+		try {
+			EntityVersioned one = new EntityVersioned(1, "one");
+			manager.persistAll(Arrays.asList(one,
+					new EntityVersioned(2, "two"), new EntityVersioned(3,
+							"three")));
+			Assert.assertEquals(Integer.valueOf(0), one.getVersion());
+
+			SimpleJpaEntityManager other = new SimpleJpaEntityManager(template);
+			EntityVersioned stale = other.find(EntityVersioned.class, 1);
+			one.setName("first");
+			one = manager.merge(one);
+			Assert.assertEquals(Integer.valueOf(1), one.getVersion());
+			Assert.assertEquals(1, template.queryForInt(
+					"select ver from versioned where idCol = 1", none));
+
+			stale.setName("stale");
+			try {
+				other.merge(stale);
+				Assert.fail("Stale entity updated");
+			} catch (OptimisticLockException e) {
+				Assert.assertSame(stale, e.getEntity());
+			}
+			try {
+				other.remove(stale);
+				Assert.fail("Stale entity deleted");
+			} catch (OptimisticLockException e) {
+				// expected
+			}
+
+			manager.lock(one, LockModeType.READ);
+			manager.lock(one, LockModeType.WRITE);
+			Assert.assertEquals(Integer.valueOf(2), one.getVersion());
+			template.update("update versioned set ver = 5 where idCol = 1",
+					none);
+			try {
+				manager.lock(one, LockModeType.READ);
+				Assert.fail("Stale entity locked");
+			} catch (OptimisticLockException e) {
+				// expected
+			}
+
+			// Every update count of a batch is checked
+			manager.setWriteBehind(true);
+			EntityVersioned two = manager.find(EntityVersioned.class, 2);
+			EntityVersioned three = manager.find(EntityVersioned.class, 3);
+			two.setName("second");
+			three.setName("third");
+			manager.merge(two);
+			manager.merge(three);
+			template.update("update versioned set ver = 5 where idCol = 3",
+					none);
+			try {
+				manager.flush();
+				Assert.fail("Stale entity flushed");
+			} catch (OptimisticLockException e) {
+				Assert.assertSame(three, e.getEntity());
+			}
+			// The failed flush discarded the persistence context
+			Assert.assertFalse(manager.contains(two));
+			two = manager.find(EntityVersioned.class, 2);
+			Assert.assertEquals(Integer.valueOf(1), two.getVersion());
+			manager.setWriteBehind(false);
+
+			try {
+				manager.lock(two, "PESSIMISTIC_WRITE");
+				Assert.fail("Pessimistic lock without transaction");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			final EntityVersioned locked = two;
+			new TransactionTemplate(manager.getTransactionManager())
+					.execute(new TransactionCallbackWithoutResult() {
+						@Override
+						protected void doInTransactionWithoutResult(
+								TransactionStatus status) {
+							manager.lock(locked, "PESSIMISTIC_FORCE_INCREMENT");
+						}
+					});
+			Assert.assertEquals(Integer.valueOf(2), two.getVersion());
+			Assert.assertEquals(2, template.queryForInt(
+					"select ver from versioned where idCol = 2", none));
+			manager.remove(two);
+			Assert.assertEquals(2, template.queryForInt(
+					"select count(*) from versioned", none));
+		} finally {
+			template.update("drop table versioned", none);
+		}
+	}
+
+	@Test
+	public void testWriteBehind() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("alter table tablename alter column idCol not null",
+				none);
+		template.update("alter table tablename add primary key (idCol)", none);
+		template.update("create table lazychild (idCol int, payload "
+				+ "varchar(100) for bit data, parent int references tablename, "
+				+ "viewId int)", none);
+		try {
+			manager.persist(newParent(1, "one"));
+			manager.setWriteBehind(true);
+			manager.setFlushMode(FlushModeType.COMMIT);
+
+			// The child is queued before the parent it references
+			EntityParent two = newParent(2, "two");
+			EntityLazyChild child = new EntityLazyChild();
+			child.setId(1);
+			child.setParent(two);
+			manager.persist(child);
+			manager.persist(two);
+			EntityParent three = newParent(3, "three");
+			manager.persist(three);
+			manager.remove(three);
+			EntityParent one = manager.find(EntityParent.class, 1);
+			one.setFieldOne("first");
+			one = manager.merge(one);
+			manager.remove(one);
+
+			Assert.assertNull(manager.find(EntityParent.class, 1));
+			Assert.assertEquals(1, template.queryForInt(
+					"select count(*) from tablename", none));
+			Assert.assertEquals(0, template.queryForInt(
+					"select count(*) from lazychild", none));
+
+			manager.flush();
+			Assert.assertEquals(2, template.queryForInt(
+					"select idCol from tablename", none));
+			Assert.assertEquals(2, template.queryForInt(
+					"select parent from lazychild", none));
+
+			// AUTO flushes before the query; the child is deleted first
+			manager.setFlushMode(FlushModeType.AUTO);
+			manager.remove(two);
+			manager.remove(child);
+			Assert.assertEquals(1, template.queryForInt(
+					"select count(*) from lazychild", none));
+			Assert.assertEquals(0, ((Number) manager.createNativeQuery(
+					"select count(*) from tablename").getSingleResult())
+					.intValue());
+			Assert.assertEquals(0, template.queryForInt(
+					"select count(*) from lazychild", none));
+		} finally {
+			template.update("drop table lazychild", none);
+		}
+	}
+
+	@Test
+	public void testWriteBehindReinsert() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table versioned (idCol int primary key, "
+				+ "name varchar(25), ver int)", none);
+		try {
+			manager.persist(newParent(1, "one"));
+			EntityVersioned versioned = new EntityVersioned(1, "one");
+			manager.persist(versioned);
+			versioned.setName("first");
+			manager.merge(versioned);
+			manager.setWriteBehind(true);
+			manager.setFlushMode(FlushModeType.COMMIT);
+
+			// The old rows are deleted before the new ones are inserted
+			manager.remove(manager.find(EntityParent.class, 1));
+			manager.persist(newParent(1, "new"));
+			manager.remove(versioned);
+			manager.persist(new EntityVersioned(1, "replacement"));
+			manager.flush();
+			Assert.assertEquals("new", template.queryForObject(
+					"select colone from tablename", none, String.class));
+			Assert.assertEquals("replacement", template.queryForObject(
+					"select name from versioned", none, String.class));
+			Assert.assertEquals(0, template.queryForInt(
+					"select ver from versioned", none));
+
+			// Removing the new entity deletes the row again
+			manager.remove(manager.find(EntityVersioned.class, 1));
+			EntityVersioned again = new EntityVersioned(1, "again");
+			manager.persist(again);
+			manager.remove(again);
+			manager.flush();
+			Assert.assertEquals(0, template.queryForInt(
+					"select count(*) from versioned", none));
+		} finally {
+			template.update("drop table versioned", none);
+		}
+	}
+
+	@Test
+	public void testFlushFailure() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("alter table tablename alter column idCol not null",
+				none);
+		template.update("alter table tablename add primary key (idCol)", none);
+		manager.persist(newParent(1, "one"));
+		EntityParent two = newParent(2, "two");
+		manager.persist(two);
+		manager.setWriteBehind(true);
+		manager.setFlushMode(FlushModeType.COMMIT);
+
+		two.setFieldOne("changed");
+		manager.merge(two);
+		manager.persist(newParent(1, "duplicate"));
+		try {
+			manager.flush();
+			Assert.fail("Duplicate row inserted");
+		} catch (BatchPersistException e) {
+			// expected
+		}
+		// The update was discarded with the persistence context
+		Assert.assertFalse(manager.contains(two));
+		manager.flush();
+		Assert.assertEquals("two", template.queryForObject(
+				"select colone from tablename where idCol = 2", none,
+				String.class));
+	}
+
+	@Test
+	public void testPersistFlushFailure() {
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		template.update("create table generated (idCol int generated always "
+				+ "as identity, name varchar(25))", none);
+		try {
+			EntityParent two = newParent(2, "two");
+			manager.persist(two);
+			manager.setWriteBehind(true);
+			two.setFieldOne("changed");
+			manager.merge(two);
+			template.update("delete from tablename where idCol = 2", none);
+			try {
+				// The IDENTITY insert flushes the queued update first
+				manager.persist(new EntityGenerated("first"));
+				Assert.fail("Update of a deleted row flushed");
+			} catch (EntityNotFoundException e) {
+				// expected, not wrapped
+			}
+		} finally {
+			template.update("drop table generated", none);
+		}
+	}
+
+	@Test
+	public void testTransaction() {
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		EntityTransaction transaction = entityManager.getTransaction();
+		transaction.begin();
+		Assert.assertTrue(transaction.isActive());
+		entityManager.persist(newParent(1, "one"));
+		Assert.assertEquals(1, template.queryForInt(
+				"select count(*) from tablename", none));
+		transaction.rollback();
+		Assert.assertFalse(transaction.isActive());
+		Assert.assertNull(entityManager.find(EntityParent.class, 1));
+		Assert.assertEquals(0, template.queryForInt(
+				"select count(*) from tablename", none));
+
+		// The queued writes are flushed on commit
+		SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		manager.setWriteBehind(true);
+		manager.setFlushMode(FlushModeType.COMMIT);
+		transaction.begin();
+		manager.persist(newParent(2, "two"));
+		manager.persist(newParent(3, "three"));
+		transaction.commit();
+		Assert.assertEquals(2, template.queryForInt(
+				"select count(*) from tablename", none));
+
+		transaction.begin();
+		manager.persist(newParent(4, "four"));
+		transaction.setRollbackOnly();
+		Assert.assertTrue(transaction.getRollbackOnly());
+		try {
+			transaction.commit();
+			Assert.fail("Rollback only transaction committed");
+		} catch (RollbackException e) {
+			// expected
+		}
+		Assert.assertFalse(transaction.isActive());
+		Assert.assertEquals(2, template.queryForInt(
+				"select count(*) from tablename", none));
+
+		// A failed flush rolls back
+		transaction.begin();
+		manager.persist(newParent(5, "five"));
+		manager.persist(newParent(6, "longer than the twenty-five characters"));
+		try {
+			transaction.commit();
+			Assert.fail("Failed flush committed");
+		} catch (RollbackException e) {
+			Assert.assertNotNull(e.getCause());
+		}
+		Assert.assertFalse(transaction.isActive());
+		Assert.assertEquals(2, template.queryForInt(
+				"select count(*) from tablename", none));
+	}
+
+	@Test
+	public void testJoinTransaction() {
+		final SimpleJpaEntityManager manager = (SimpleJpaEntityManager) entityManager;
+		MapSqlParameterSource none = new MapSqlParameterSource();
+		try {
+			manager.joinTransaction();
+			Assert.fail("Joined without transaction");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		manager.setWriteBehind(true);
+		manager.setFlushMode(FlushModeType.COMMIT);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(
+				manager.getTransactionManager());
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				manager.joinTransaction();
+				manager.persist(newParent(1, "one"));
+			}
+		});
+		Assert.assertEquals(1, template.queryForInt(
+				"select count(*) from tablename", none));
+
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				manager.joinTransaction();
+				manager.persist(newParent(2, "two"));
+				status.setRollbackOnly();
+			}
+		});
+		Assert.assertEquals(1, template.queryForInt(
+				"select count(*) from tablename", none));
+		manager.flush();
+		Assert.assertEquals(1, template.queryForInt(
+				"select count(*) from tablename", none));
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	public static class ParentDto {
+		private Integer id;
+		private String fieldOne;
+	}
+
+	public static class ParentValue {
+		private final String fieldOne;
+		private final Long id;
+
+		public ParentValue(String fieldOne, Long id) {
+			this.fieldOne = fieldOne;
+			this.id = id;
+		}
+	}
+
+	private EntityParent newParent(int id, String fieldOne) {
+		EntityParent entity = new EntityParent();
+		entity.setId(id);
+		entity.setFieldOne(fieldOne);
+		return entity;
+	}
 }